@@ -1,44 +1,18 @@
 package suit.halo.suitcontrolleraudiotospeaker;
 
-import android.os.Environment;
-
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import com.haloproject.config.ConfigKey;
+import com.haloproject.config.SuitConfig;
+import com.haloproject.config.SuitConfigFile;
 
 public class Constants
 {
-    public static  String audioDeviceUuid;
-    private static final String configFileName = "suitConfig";
-    public static final void initializeConstants()
-    {
-        File sdcard = Environment.getExternalStorageDirectory();
-        File settingsFile = new File(sdcard,"Pictures"+File.separator+configFileName);
-        try
-        {
-            BufferedReader fileContentsReader = new BufferedReader(new FileReader(settingsFile));
-            StringBuilder text = new StringBuilder();
+    //the uuid this app always listened on, used until suitConfig names another
+    private static final ConfigKey<String> AUDIO_DEVICE_UUID = ConfigKey.string(SuitConfig.AUDIO_DEVICE_UUID.getName(),
+            "393b63ac-9a0d-4331-8670-c8b53b298af7");
 
-            String line;
-            while ((line = fileContentsReader.readLine()) != null) {
-                text.append(line);
-            }
-            fileContentsReader.close();
-
-            JSONObject jsonObject = new JSONObject(text.toString());
-            audioDeviceUuid = jsonObject.getString("uuid");
-        }
-        catch (IOException e)
-        {
-            throw new RuntimeException(e);
-        }
-        catch (JSONException e)
-        {
-            throw new RuntimeException(e);
-        }
+    //the same Pictures/suitConfig ProjectSpartanV2 reads, through the same store
+    public static String getAudioDeviceUuid()
+    {
+        return SuitConfigFile.get().get(AUDIO_DEVICE_UUID);
     }
 }
@@ -55,7 +55,7 @@ public class MainActivity extends Activity
                 {
                     BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
                     bluetoothAdapter.enable();
-                    BluetoothServerSocket bluetoothServerSocket = bluetoothAdapter.listenUsingRfcommWithServiceRecord("SuitControllerAudio", UUID.fromString("393b63ac-9a0d-4331-8670-c8b53b298af7"));
+                    BluetoothServerSocket bluetoothServerSocket = bluetoothAdapter.listenUsingRfcommWithServiceRecord("SuitControllerAudio", UUID.fromString(Constants.getAudioDeviceUuid()));
                     synchronized (this)
                     {
                         bluetoothSocket = bluetoothServerSocket.accept();
@@ -149,7 +149,6 @@ public class MainActivity extends Activity
     {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        //Constants.initializeConstants();
         tv  = (TextView)findViewById(R.id.mainTextView);
         handleNextConnectionThread = new HandleVoiceConnections();
         handleNextConnectionThread.start();
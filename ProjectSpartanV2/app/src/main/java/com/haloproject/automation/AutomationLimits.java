@@ -0,0 +1,26 @@
+package com.haloproject.automation;
+
+/**
+ * The cooling thresholds hard coded in the suit's include/halosuit/automation.h. The suit reads
+ * none of them from beaglebone.conf, so the phone doesn't either; change both ends together.
+ */
+public final class AutomationLimits
+{
+    //degrees celsius
+    public static final double BODY_MAX_TEMP = 40.0;
+    public static final double BODY_HIGH_TEMP = 37.6;
+    public static final double BODY_LOW_TEMP = 29.0;
+    public static final double WATER_MAX_TEMP = 22.0;
+    public static final double WATER_MIN_TEMP = 1.0;
+
+    //what the sensors read when they have nothing, automation.c skips these readings
+    public static final double BODY_SENSOR_DEFAULT = -5;
+    public static final double WATER_SENSOR_DEFAULT = 85;
+
+    //weight automation.c gives the previous smoothed value over a new reading
+    public static final double SMOOTH_WEIGHT = 0.8;
+
+    private AutomationLimits()
+    {
+    }
+}
@@ -0,0 +1,69 @@
+package com.haloproject.automation;
+
+import com.haloproject.telemetry.TelemetryChannel;
+
+/**
+ * One compiled automation rule: when the mean of its source channels, as filtered by the suit,
+ * crosses the threshold, the target switch should be in the commanded state. Rules are immutable.
+ */
+public class Rule
+{
+    public final String name;
+    private final TelemetryChannel[] mSources;
+    private final boolean mAbove;
+    private final double mThreshold;
+    public final TelemetryChannel target;
+    public final String command;
+    //what the suit reports for target once the command took effect, auto turns the relay on
+    //and hold switches it off for a while
+    final double state;
+
+    private Rule(String name, TelemetryChannel[] sources, boolean above, double threshold, TelemetryChannel target, String command)
+    {
+        this.name = name;
+        mSources = sources;
+        mAbove = above;
+        mThreshold = threshold;
+        this.target = target;
+        this.command = command;
+        state = "off".equals(command) || "hold".equals(command) ? TelemetryChannel.OFF : TelemetryChannel.ON;
+    }
+
+    //matches at or above threshold, like the suit's automation
+    public static Rule above(String name, TelemetryChannel[] sources, double threshold, TelemetryChannel target, String command)
+    {
+        return new Rule(name, sources, true, threshold, target, command);
+    }
+
+    //matches at or below threshold
+    public static Rule below(String name, TelemetryChannel[] sources, double threshold, TelemetryChannel target, String command)
+    {
+        return new Rule(name, sources, false, threshold, target, command);
+    }
+
+    double value(SensorFilter readings)
+    {
+        double sum = 0;
+        int count = 0;
+        for (TelemetryChannel source : mSources)
+        {
+            double value = readings.get(source);
+            if(!Double.isNaN(value))
+            {
+                sum += value;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    boolean matches(SensorFilter readings)
+    {
+        double value = value(readings);
+        if(Double.isNaN(value))
+        {
+            return false;
+        }
+        return mAbove ? value >= mThreshold : value <= mThreshold;
+    }
+}
@@ -0,0 +1,175 @@
+package com.haloproject.automation;
+
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.Histogram;
+import com.haloproject.metrics.MetricsRegistry;
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+
+/**
+ * Runs a copy of the suit's cooling automation on the phone so it can step in when the suit's own
+ * automation lags or has been turned off.
+ *
+ * The thresholds from {@link AutomationLimits} are compiled into a fixed list of rules, ordered
+ * by priority: for every switch the first matching rule wins, so protecting the water loop always
+ * beats cooling the wearer. Every suit message updates a {@link SensorFilter} and is checked
+ * against every rule, which costs the same whatever the history. A rule only acts once it has matched for HOLD milliseconds, nothing
+ * is sent while the suit already reports the wanted state, and the same command is not repeated
+ * within RETRY_INTERVAL. A manual command on a switch keeps the rules off it for OVERRIDE_TIME.
+ */
+public class RulesEngine
+{
+    public interface Actuator
+    {
+        //queue command for target, false if it could not be queued
+        boolean send(TelemetryChannel target, String command);
+    }
+
+    public static final long HOLD = 2000;
+    public static final long RETRY_INTERVAL = 10 * 1000;
+    public static final long OVERRIDE_TIME = 5 * 60 * 1000;
+
+    private static final TelemetryChannel[] BODY = {TelemetryChannel.ARMPITS_TEMPERATURE, TelemetryChannel.CROTCH_TEMPERATURE};
+    private static final TelemetryChannel[] HEAD = {TelemetryChannel.HEAD_TEMPERATURE};
+    private static final TelemetryChannel[] WATER = {TelemetryChannel.WATER_TEMPERATURE};
+
+    private final Actuator mActuator;
+    private final Rule[] mRules = compile();
+    private final long[] mMatchedSince = new long[mRules.length];
+    private final SensorFilter mReadings = new SensorFilter();
+    //per target channel, indexed by ordinal
+    private final Rule[] mWinners = new Rule[TelemetryChannel.COUNT];
+    private final boolean[] mHeld = new boolean[TelemetryChannel.COUNT];
+    private final String[] mLastCommand = new String[TelemetryChannel.COUNT];
+    private final long[] mLastSent = new long[TelemetryChannel.COUNT];
+    private final long[] mOverrideUntil = new long[TelemetryChannel.COUNT];
+    private volatile boolean mEnabled;
+    private final Histogram mLatency;
+    private final Counter mCommands;
+    private final Counter mRejected;
+    private final Counter mOverrides;
+
+    public RulesEngine(Actuator actuator, MetricsRegistry metrics)
+    {
+        mActuator = actuator;
+        mLatency = metrics.histogram("rule evaluation ns");
+        mCommands = metrics.counter("rule commands");
+        mRejected = metrics.counter("rule commands rejected");
+        mOverrides = metrics.counter("rule overrides");
+    }
+
+    /**
+     * The same decisions the suit's automation.c makes, highest priority first. Body temperature is
+     * the mean of the armpit and crotch sensors; the head is handled on its own by the fans.
+     */
+    public static Rule[] compile()
+    {
+        return new Rule[]{
+                //cold water would freeze the loop, warm water doesn't cool anything. hold only
+                //pauses a switch like the suit's own pump lock, off would end its automation
+                Rule.below("water too cold", WATER, AutomationLimits.WATER_MIN_TEMP, TelemetryChannel.PELTIER, "hold"),
+                Rule.below("water too cold", WATER, AutomationLimits.WATER_MIN_TEMP, TelemetryChannel.WATER_PUMP, "hold"),
+                Rule.above("water too warm", WATER, AutomationLimits.WATER_MAX_TEMP, TelemetryChannel.PELTIER, "auto"),
+                Rule.above("water too warm", WATER, AutomationLimits.WATER_MAX_TEMP, TelemetryChannel.WATER_PUMP, "hold"),
+                Rule.above("body warm", BODY, AutomationLimits.BODY_HIGH_TEMP, TelemetryChannel.WATER_PUMP, "auto"),
+                Rule.below("body cool", BODY, AutomationLimits.BODY_LOW_TEMP, TelemetryChannel.WATER_PUMP, "hold"),
+                Rule.above("head warm", HEAD, AutomationLimits.BODY_HIGH_TEMP, TelemetryChannel.HEAD_FANS, "on"),
+                Rule.below("head cool", HEAD, AutomationLimits.BODY_LOW_TEMP, TelemetryChannel.HEAD_FANS, "off")
+        };
+    }
+
+    //off by default, the suit's own automation stays in charge until this is turned on
+    public void setEnabled(boolean enabled)
+    {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+    //the wearer switched target by hand, leave it alone for a while
+    public synchronized void override(TelemetryChannel target, long now)
+    {
+        mOverrideUntil[target.ordinal()] = now + OVERRIDE_TIME;
+        mLastCommand[target.ordinal()] = null;
+        mOverrides.increment();
+    }
+
+    //call once per suit message, the filter tracks the readings even while the rules are off
+    public synchronized void evaluate(TelemetryFrame frame, long now)
+    {
+        long start = System.nanoTime();
+        mReadings.update(frame);
+        if(!mEnabled)
+        {
+            return;
+        }
+        Rule[] rules = mRules;
+        for (int i = 0; i < rules.length; i++)
+        {
+            Rule rule = rules[i];
+            if(!rule.matches(mReadings))
+            {
+                mMatchedSince[i] = 0;
+                continue;
+            }
+            if(mMatchedSince[i] == 0)
+            {
+                mMatchedSince[i] = now;
+            }
+            //a matching rule claims its target even before it has held, so a lower priority
+            //rule can't sneak in the opposite command meanwhile
+            int target = rule.target.ordinal();
+            if(mWinners[target] == null)
+            {
+                mWinners[target] = rule;
+                mHeld[target] = now - mMatchedSince[i] >= HOLD;
+            }
+        }
+        for (int target = 0; target < mWinners.length; target++)
+        {
+            Rule rule = mWinners[target];
+            if(rule == null)
+            {
+                continue;
+            }
+            mWinners[target] = null;
+            if(mHeld[target])
+            {
+                act(rule, frame.get(rule.target), now);
+            }
+        }
+        mLatency.record(System.nanoTime() - start);
+    }
+
+    private void act(Rule rule, double reported, long now)
+    {
+        int target = rule.target.ordinal();
+        if(now < mOverrideUntil[target])
+        {
+            return;
+        }
+        if(reported == rule.state)
+        {
+            //the suit got there by itself, a later change has to be sent again
+            mLastCommand[target] = null;
+            return;
+        }
+        if(rule.command.equals(mLastCommand[target]) && now - mLastSent[target] < RETRY_INTERVAL)
+        {
+            return;
+        }
+        if(mActuator.send(rule.target, rule.command))
+        {
+            mLastCommand[target] = rule.command;
+            mLastSent[target] = now;
+            mCommands.increment();
+        }
+        else
+        {
+            mRejected.increment();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.haloproject.automation;
+
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+
+import java.util.Arrays;
+
+/**
+ * The temperatures as automation.c sees them: sentinel readings are dropped and the rest are
+ * smoothed with SMOOTH_WEIGHT, starting from the middle of each range like the suit does. One
+ * update per suit message, which the suit sends as often as its automation reads the sensors.
+ */
+class SensorFilter
+{
+    private final double[] mValues = new double[TelemetryChannel.COUNT];
+
+    SensorFilter()
+    {
+        reset();
+    }
+
+    void reset()
+    {
+        Arrays.fill(mValues, Double.NaN);
+        double body = (AutomationLimits.BODY_HIGH_TEMP + AutomationLimits.BODY_LOW_TEMP) / 2;
+        mValues[TelemetryChannel.WATER_TEMPERATURE.ordinal()] = (AutomationLimits.WATER_MAX_TEMP + AutomationLimits.WATER_MIN_TEMP) / 2;
+        mValues[TelemetryChannel.HEAD_TEMPERATURE.ordinal()] = body;
+        mValues[TelemetryChannel.ARMPITS_TEMPERATURE.ordinal()] = body;
+        mValues[TelemetryChannel.CROTCH_TEMPERATURE.ordinal()] = body;
+    }
+
+    void update(TelemetryFrame frame)
+    {
+        smooth(frame, TelemetryChannel.WATER_TEMPERATURE, AutomationLimits.WATER_SENSOR_DEFAULT);
+        smooth(frame, TelemetryChannel.HEAD_TEMPERATURE, AutomationLimits.BODY_SENSOR_DEFAULT);
+        smooth(frame, TelemetryChannel.ARMPITS_TEMPERATURE, AutomationLimits.BODY_SENSOR_DEFAULT);
+        smooth(frame, TelemetryChannel.CROTCH_TEMPERATURE, AutomationLimits.BODY_SENSOR_DEFAULT);
+    }
+
+    //NaN for channels automation.c doesn't read
+    double get(TelemetryChannel channel)
+    {
+        return mValues[channel.ordinal()];
+    }
+
+    private void smooth(TelemetryFrame frame, TelemetryChannel channel, double sentinel)
+    {
+        double reading = frame.get(channel);
+        if(Double.isNaN(reading) || reading == sentinel)
+        {
+            return;
+        }
+        int i = channel.ordinal();
+        mValues[i] = mValues[i] * AutomationLimits.SMOOTH_WEIGHT + reading * (1 - AutomationLimits.SMOOTH_WEIGHT);
+    }
+}
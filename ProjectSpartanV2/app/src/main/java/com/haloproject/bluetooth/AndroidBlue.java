@@ -3,35 +3,109 @@ package com.haloproject.bluetooth;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Vibrator;
 import android.widget.ArrayAdapter;
 import android.widget.Toast;
 
+import com.haloproject.automation.RulesEngine;
+import com.haloproject.journal.TelemetryJournal;
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.Gauge;
+import com.haloproject.metrics.Histogram;
+import com.haloproject.metrics.MetricsRegistry;
+import com.haloproject.telemetry.DeltaSync;
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetryHistory;
+import com.haloproject.telemetry.TelemetrySnapshot;
+import com.haloproject.telemetry.TelemetrySubscriptions;
+import com.haloproject.telemetry.TelemetryTiming;
+import com.haloproject.warnings.Severity;
+import com.haloproject.warnings.WarningKind;
+import com.haloproject.warnings.WarningsEngine;
+
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.lang.reflect.Method;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Adam Brykajlo on 18/02/15.
  */
 public class AndroidBlue
 {
-    private BluetoothSocket mSocket;
+    private volatile Transport mTransport;
+    //one write error toast per connection, not one per failed flush
+    private volatile boolean mWriteErrorShown;
     private BluetoothAdapter mAdapter;
     private ArrayAdapter<BluetoothDevice> mDevices;
     private final int REQUEST_ENABLE_BT = 13;
+    //vibration patterns for alerts, off then on in milliseconds
+    private static final long[] ALERT = {0, 300};
+    private static final long[] CRITICAL_ALERT = {0, 600, 200, 600, 200, 600};
     private ArrayAdapter<String> mDeviceStrings;
+    //addresses already in mDevices, discovery reports the same device many times
+    private final Set<String> mListed = new HashSet<String>();
+    private static final int MAX_LISTED = 20;
+    //known suits tried at once when no suit has been chosen, and how long they get to answer
+    private static final int MAX_CANDIDATES = 3;
+    private static final long CONNECT_TIMEOUT = 8000;
+    private final DeviceRegistry mRegistry;
+    //discovery results are recorded off the main thread, the first one may load the registry file
+    private final ThreadPoolExecutor mRegistryExecutor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    private boolean mReceiverRegistered;
     private Runnable onConnect;
-    private Runnable onReceive;
-    private BluetoothDevice mBeagleBone;
-    private JSONObject mJSON;
+    private final UpdateDispatcher mDispatcher;
+    private final TelemetrySubscriptions mSubscriptions = new TelemetrySubscriptions();
+    //only used on the main thread by the dispatcher
+    private final TelemetryFrame mUiFrame = new TelemetryFrame();
+    private volatile BluetoothDevice mBeagleBone;
+    //set when the suit is reached over TCP instead of Bluetooth
+    private volatile String mTcpHost;
+    private volatile int mTcpPort;
+    private final TelemetrySnapshot mTelemetry = new TelemetrySnapshot();
+    private final TelemetryHistory mHistory = new TelemetryHistory();
+    private final TelemetryTiming mTiming = new TelemetryTiming();
+    private final DeltaSync mDeltas;
+    private final WarningsEngine mWarnings = new WarningsEngine();
+    private final RulesEngine mRules;
+    private final TelemetryJournal mJournal;
+    private volatile Runnable onWarningsChanged;
     private Handler mHandler;
+    private final MetricsRegistry mMetrics = new MetricsRegistry();
+    private final CommandWriter mWriter = new CommandWriter(mMetrics);
+    private final Counter mBytesIn = mMetrics.counter("bytes in");
+    private final Counter mJsonFramesIn = mMetrics.counter("frames in json");
+    private final Counter mBinaryFramesIn = mMetrics.counter("frames in binary");
+    private final Counter mJsonErrors = mMetrics.counter("decode errors json");
+    private final Counter mCorruptFrames = mMetrics.counter("decode errors corrupt");
+    private final Counter mDroppedBytes = mMetrics.counter("decode errors dropped bytes");
+    private final Counter mEncodeErrors = mMetrics.counter("encode errors");
+    private final Counter mReadErrors = mMetrics.counter("read errors");
+    private final Counter mCloseErrors = mMetrics.counter("close errors");
+    private final Counter mConnects = mMetrics.counter("connects");
+    private final Counter mConnectFailures = mMetrics.counter("connect failures");
+    private final Counter mRegistryErrors = mMetrics.counter("device registry errors");
+    private final Histogram mConnectTime = mMetrics.histogram("connect ms");
+    private volatile long mConnectedAt;
+    private volatile boolean mBinaryProtocol;
+    private final ConnectionSupervisor mSupervisor = new ConnectionSupervisor(new TransportLink());
+    private volatile ConnectionSupervisor.StateListener onConnectionState;
     static private AndroidBlue mAndroidBlue = null;
     static private Context mContext;
     static private Activity mActivity;
@@ -51,36 +125,202 @@ public class AndroidBlue
     protected AndroidBlue()
     {
         mAdapter = BluetoothAdapter.getDefaultAdapter();
-        IntentFilter filter = new IntentFilter(BluetoothDevice.ACTION_FOUND);
-        mContext.registerReceiver(mReceiver, filter);
         mDevices = new ArrayAdapter<BluetoothDevice>(mContext, android.R.layout.simple_list_item_1);
         mDeviceStrings = new ArrayAdapter<String>(mContext, android.R.layout.simple_list_item_1);
-        headTemperature = new Temperature("head temperature");
-        crotchTemperature = new Temperature("crotch temperature");
-        armpitsTemperature = new Temperature("armpits temperature");
-        waterTemperature = new Temperature("water temperature");
-        redHeadLight = new Switch("head lights red");
-        whiteHeadLight = new Switch("head lights white");
-        peltier = new Switch("peltier");
-        waterPump = new Switch("water pump");
-        headFans = new Switch("head fans");
-        mainLights = new Switch("lights")
+        mRegistry = new DeviceRegistry(new File(mContext.getFilesDir(), "devices.json"));
+        mRegistryExecutor.allowCoreThreadTimeOut(true);
+        headTemperature = new Temperature(TelemetryChannel.HEAD_TEMPERATURE);
+        crotchTemperature = new Temperature(TelemetryChannel.CROTCH_TEMPERATURE);
+        armpitsTemperature = new Temperature(TelemetryChannel.ARMPITS_TEMPERATURE);
+        waterTemperature = new Temperature(TelemetryChannel.WATER_TEMPERATURE);
+        redHeadLight = new Switch("head lights red", CommandWriter.Priority.COSMETIC);
+        whiteHeadLight = new Switch("head lights white", CommandWriter.Priority.COSMETIC);
+        peltier = new Switch("peltier", CommandWriter.Priority.CRITICAL);
+        waterPump = new Switch("water pump", CommandWriter.Priority.CRITICAL);
+        headFans = new Switch("head fans", CommandWriter.Priority.NORMAL);
+        mainLights = new Switch("lights", CommandWriter.Priority.NORMAL)
         {
             public void auto()
             {
-                try
+                send("auto");
+            }
+        };
+
+        mHandler = new Handler(Looper.getMainLooper());
+        mDispatcher = new UpdateDispatcher();
+        mDispatcher.setListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mTelemetry.read(mUiFrame);
+                mSubscriptions.dispatch(mUiFrame);
+            }
+        });
+        mWriter.setErrorListener(new CommandWriter.ErrorListener()
+        {
+            @Override
+            public void onWriteError(IOException e)
+            {
+                final Transport transport = mTransport;
+                if(transport == null || mWriteErrorShown)
                 {
-                    JSONObject switchObject = new JSONObject();
-                    switchObject.put(this.location, "auto");
-                    mSocket.getOutputStream().write(switchObject.toString().getBytes());
-                } catch (Exception e)
+                    return;
+                }
+                mWriteErrorShown = true;
+                mActivity.runOnUiThread(new Runnable()
                 {
+                    @Override
+                    public void run()
+                    {
+                        Toast.makeText(mContext, "Could Not Send to " + transport, Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+        mRules = new RulesEngine(new RulesEngine.Actuator()
+        {
+            @Override
+            public boolean send(TelemetryChannel target, String command)
+            {
+                Switch targetSwitch = switchFor(target);
+                return targetSwitch != null && mWriter.submit(targetSwitch.location, command, targetSwitch.priority);
+            }
+        }, mMetrics);
+        //app private storage, the journal thread creates and recovers it off the main thread
+        mJournal = new TelemetryJournal(new File(mContext.getFilesDir(), "journal"), mMetrics);
+        mDeltas = new DeltaSync(mMetrics);
+        registerMetrics();
+        mWarnings.setListener(new WarningsEngine.Listener()
+        {
+            @Override
+            public void onWarningsChanged(int active)
+            {
+                Runnable listener = onWarningsChanged;
+                if(listener != null)
+                {
+                    mHandler.post(listener);
+                }
+            }
 
+            @Override
+            public void onAlert(WarningKind kind)
+            {
+                //already rate limited by the engine
+                Vibrator vibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
+                if(vibrator != null)
+                {
+                    vibrator.vibrate(kind.severity == Severity.CRITICAL ? CRITICAL_ALERT : ALERT, -1);
                 }
             }
-        };
+        });
+        mSupervisor.setStateListener(new ConnectionSupervisor.StateListener()
+        {
+            @Override
+            public void onStateChanged(final ConnectionSupervisor.State state)
+            {
+                mHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        ConnectionSupervisor.StateListener listener = onConnectionState;
+                        if(listener != null)
+                        {
+                            listener.onStateChanged(state);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        mHandler = new Handler(Looper.getMainLooper());
+    private void registerMetrics()
+    {
+        mMetrics.register("warnings active", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return Integer.bitCount(mWarnings.getActive());
+            }
+        });
+        mMetrics.register("alerts", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mWarnings.getAlerts();
+            }
+        });
+        mMetrics.register("alerts suppressed", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mWarnings.getSuppressedAlerts();
+            }
+        });
+        mMetrics.register("connection uptime ms", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                long connectedAt = mConnectedAt;
+                return connectedAt == 0 ? 0 : System.currentTimeMillis() - connectedAt;
+            }
+        });
+        mMetrics.register("last recovery ms", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mSupervisor.getLastRecoveryMillis();
+            }
+        });
+        mMetrics.register("heartbeat timeouts", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mSupervisor.getHeartbeatTimeouts();
+            }
+        });
+        mMetrics.register("frames dropped", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mTiming.getDropped();
+            }
+        });
+        mMetrics.register("frames duplicate", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mTiming.getDuplicates();
+            }
+        });
+        mMetrics.register("clock offset ms", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mTiming.getClock().getOffset();
+            }
+        });
+        mMetrics.register("ui dispatches", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mDispatcher.getDispatches();
+            }
+        });
+        mMetrics.register("sensor to decode ms", mTiming.getSensorToDecode());
+        mMetrics.register("decode to ui ms", mTiming.getDecodeToUi());
+        mMetrics.register("sensor to ui ms", mTiming.getSensorToUi());
     }
 
     static public void setContext(Context context)
@@ -106,6 +346,16 @@ public class AndroidBlue
         return null;
     }
 
+    //discovered devices are only listed once this has been called, any thread will do
+    public synchronized void registerDiscoveryReceiver()
+    {
+        if(!mReceiverRegistered)
+        {
+            mContext.registerReceiver(mReceiver, new IntentFilter(BluetoothDevice.ACTION_FOUND));
+            mReceiverRegistered = true;
+        }
+    }
+
     public boolean isEnabled()
     {
         return mAdapter.isEnabled();
@@ -130,11 +380,14 @@ public class AndroidBlue
 
     public boolean isConnected()
     {
-        if(mSocket != null)
-        {
-            return mSocket.isConnected();
-        }
-        return false;
+        Transport transport = mTransport;
+        return transport != null && transport.isConnected();
+    }
+
+    //true once the suit has agreed to send binary telemetry, otherwise it is still sending JSON
+    public boolean isBinaryProtocol()
+    {
+        return mBinaryProtocol;
     }
 
     public ArrayAdapter<String> getDeviceStrings()
@@ -142,6 +395,7 @@ public class AndroidBlue
         return mDeviceStrings;
     }
 
+    //call on the main thread, suits that connected before are listed straight away
     public boolean startDiscovery()
     {
         if(isEnabled())
@@ -149,14 +403,33 @@ public class AndroidBlue
             if(mAdapter.isDiscovering())
             {
                 mAdapter.cancelDiscovery();
-                mDevices.clear();
-                mDeviceStrings.clear();
+            }
+            mDevices.clear();
+            mDeviceStrings.clear();
+            mListed.clear();
+            for (DeviceRegistry.Device known : mRegistry.known(MAX_LISTED))
+            {
+                list(mAdapter.getRemoteDevice(known.getAddress()), known.getName());
             }
             return mAdapter.startDiscovery();
         }
         return false;
     }
 
+    private void list(BluetoothDevice device, String name)
+    {
+        if(mListed.size() < MAX_LISTED && mListed.add(device.getAddress()))
+        {
+            mDeviceStrings.add(name + "\n" + device.getAddress());
+            mDevices.add(device);
+        }
+    }
+
+    public DeviceRegistry getRegistry()
+    {
+        return mRegistry;
+    }
+
     public boolean setBeagleBone(int pos)
     {
         if(pos < mDevices.getCount())
@@ -184,130 +457,470 @@ public class AndroidBlue
         return mBeagleBone;
     }
 
+    /**
+     * Drops any current link and keeps reconnecting to the beaglebone until disconnect is called.
+     * Without a chosen beaglebone the suits that connected before are tried, all at once. Reads
+     * the device registry, so call it off the main thread the first time.
+     */
     public void connect()
     {
-        new Thread(new ConnectRunnable()).start();
+        if(mBeagleBone != null || !mRegistry.known(1).isEmpty())
+        {
+            mTcpHost = null;
+            mSupervisor.stop();
+            mSupervisor.start();
+        }
+    }
+
+    //same as connect() but over TCP, for a suit on Wi-Fi or the emulator
+    public void connect(String host, int port)
+    {
+        mTcpHost = host;
+        mTcpPort = port;
+        mSupervisor.stop();
+        mSupervisor.start();
     }
 
+    public void disconnect()
+    {
+        mSupervisor.stop();
+    }
+
+    public ConnectionSupervisor getSupervisor()
+    {
+        return mSupervisor;
+    }
+
+    //the configuration is queued on the command writer, true means it was accepted for sending
     public boolean sendConfiguration()
     {
         if(isConnected())
         {
             try
             {
-                if(mBeagleBone != null)
-                {
-                    JSONObject configuration = new JSONObject();
-
-                    JSONObject android = new JSONObject();
-                    android.put("android", mAdapter.getAddress());
-                    configuration.put("configuration", android);
-
-                    mSocket.getOutputStream().write(configuration.toString().getBytes());
-                }
-            } catch (Exception e)
+                JSONObject android = new JSONObject();
+                android.put("android", mAdapter.getAddress());
+                //repeats the handshake, a newer configuration replaces one still queued on the writer
+                android.put("protocol", BinaryCodec.PROTOCOL);
+                //suits that understand deltas only send the channels that changed, older ones ignore the key
+                android.put("delta", true);
+                return mWriter.submit("configuration", android, CommandWriter.Priority.NORMAL);
+            } catch (JSONException e)
             {
+                mEncodeErrors.increment();
                 return false;
             }
-            return true;
         }
         return false;
     }
 
+    //sent on every connect, the suit answers with the protocol it will send in a configuration reply
+    private void sendHandshake()
+    {
+        try
+        {
+            JSONObject handshake = new JSONObject();
+            //suits that understand the binary protocol switch to it, older ones ignore the key
+            handshake.put("protocol", BinaryCodec.PROTOCOL);
+            //the suit forgets delta mode on every connection, so ask again
+            handshake.put("delta", true);
+            mWriter.submit("configuration", handshake, CommandWriter.Priority.CRITICAL);
+        } catch (JSONException e)
+        {
+            mEncodeErrors.increment();
+        }
+    }
+
     public boolean sendDeConfiguration()
     {
         if(isConnected())
         {
             try
             {
-                if(mBeagleBone != null)
-                {
-                    JSONObject deconfiguration = new JSONObject();
-                    JSONObject android = new JSONObject();
-                    android.put("android", "delete");
-                    deconfiguration.put("configuration", android);
-                    mSocket.getOutputStream().write(deconfiguration.toString().getBytes());
-                }
-            } catch (Exception e)
+                JSONObject android = new JSONObject();
+                android.put("android", "delete");
+                return mWriter.submit("configuration", android, CommandWriter.Priority.NORMAL);
+            } catch (JSONException e)
             {
+                mEncodeErrors.increment();
                 return false;
             }
-            return true;
         }
         return false;
     }
 
-    private class ConnectRunnable implements Runnable
+    //the chosen beaglebone, or the best known suits, the suit always listens on channel 3
+    private List<Transport> newTransports()
+    {
+        List<Transport> transports = new ArrayList<Transport>();
+        String host = mTcpHost;
+        if(host != null)
+        {
+            transports.add(new SocketTransport(host, mTcpPort));
+            return transports;
+        }
+        BluetoothDevice chosen = mBeagleBone;
+        if(chosen != null)
+        {
+            transports.add(new RfcommTransport(chosen, mAdapter));
+            return transports;
+        }
+        for (DeviceRegistry.Device known : mRegistry.known(MAX_CANDIDATES))
+        {
+            transports.add(new RfcommTransport(mAdapter.getRemoteDevice(known.getAddress()), mAdapter));
+        }
+        return transports;
+    }
+
+    private void saveRegistry()
+    {
+        try
+        {
+            mRegistry.save();
+        } catch (IOException e)
+        {
+            mRegistryErrors.increment();
+        }
+    }
+
+    private class TransportLink implements ConnectionSupervisor.Link
     {
+        private long mFailedSession;
+        private long mOpenSession;
+
         @Override
-        public void run()
+        public synchronized void open(long session) throws IOException
         {
-            if(mBeagleBone != null)
+            List<Transport> candidates = newTransports();
+            if(candidates.isEmpty())
             {
-                try
+                throw new IOException("no suit to connect to");
+            }
+            long start = System.currentTimeMillis();
+            Transport transport;
+            try
+            {
+                transport = ParallelConnector.connect(candidates, CONNECT_TIMEOUT);
+            } catch (InterruptedIOException e)
+            {
+                //stopped, not a failure
+                throw e;
+            } catch (IOException e)
+            {
+                mConnectFailures.increment();
+                Set<String> failed = new HashSet<String>();
+                for (Transport candidate : candidates)
                 {
-                    Method m = mBeagleBone.getClass().getMethod("createRfcommSocket", new Class[]{int.class});
-                    mSocket = (BluetoothSocket) m.invoke(mBeagleBone, 3);
-
-                    mSocket.connect();
-
-                    mHandler.post(onConnect);
-                    new Thread(new ConnectedRunnable()).start();
-                } catch (Exception e)
+                    if(candidate instanceof RfcommTransport && failed.add(((RfcommTransport) candidate).getDevice().getAddress()))
+                    {
+                        mRegistry.failed(((RfcommTransport) candidate).getDevice().getAddress());
+                    }
+                }
+                saveRegistry();
+                //one toast per outage, not one per retry
+                if(mFailedSession != session - 1)
                 {
+                    showCouldNotConnect(candidates.get(0));
+                }
+                mFailedSession = session;
+                throw e;
+            }
+            long now = System.currentTimeMillis();
+            mConnectTime.record(now - start);
+            if(transport instanceof RfcommTransport)
+            {
+                RfcommTransport rfcomm = (RfcommTransport) transport;
+                BluetoothDevice device = rfcomm.getDevice();
+                mBeagleBone = device;
+                mRegistry.connected(device.getAddress(), device.getName(), rfcomm.getChannel(), now - start, now);
+                saveRegistry();
+            }
+            mConnects.increment();
+            mConnectedAt = System.currentTimeMillis();
+            mTransport = transport;
+            mOpenSession = session;
+            mBinaryProtocol = false;
+            mTiming.reset();
+            mDeltas.reset();
+            mWriteErrorShown = false;
+            mWriter.setTransport(transport);
+            sendHandshake();
+            if(onConnect != null)
+            {
+                mHandler.post(onConnect);
+            }
+            new Thread(new ConnectedRunnable(transport, session), "AndroidBlueReader").start();
+        }
 
-                    mActivity.runOnUiThread(new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            Toast.makeText(mContext, "Could Not Connect to " + mBeagleBone, Toast.LENGTH_LONG).show();
-                        }
-                    });
+        @Override
+        public synchronized void close(long session)
+        {
+            if(session != mOpenSession)
+            {
+                return;
+            }
+            Transport transport = mTransport;
+            mTransport = null;
+            mConnectedAt = 0;
+            mWriter.setTransport(null);
+            closeQuietly(transport);
+        }
 
+        private void showCouldNotConnect(final Transport transport)
+        {
+            mActivity.runOnUiThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Toast.makeText(mContext, "Could Not Connect to " + transport, Toast.LENGTH_LONG).show();
                 }
+            });
+        }
+    }
+
+    private void closeQuietly(Transport transport)
+    {
+        if(transport != null)
+        {
+            try
+            {
+                transport.close();
+            } catch (IOException e)
+            {
+                mCloseErrors.increment();
             }
         }
     }
 
-    private class ConnectedRunnable implements Runnable
+    private class ConnectedRunnable implements Runnable, FrameDecoder.FrameListener
     {
-        private byte[] mBytes;
+        private final FrameDecoder mDecoder = new FrameDecoder(this);
+        private final TelemetryFrame mFrame = new TelemetryFrame();
+        private final Transport mLinkTransport;
+        private final long mSession;
+
+        ConnectedRunnable(Transport transport, long session)
+        {
+            mLinkTransport = transport;
+            mSession = session;
+        }
 
         @Override
         public void run()
         {
+            long dropped = 0;
+            long corrupt = 0;
+            try
+            {
+                int read;
+                while ((read = mDecoder.readFrom(mLinkTransport)) >= 0)
+                {
+                    mSupervisor.onHeard(mSession);
+                    mBytesIn.add(read);
+                    if(mDecoder.getDroppedBytes() != dropped || mDecoder.getCorruptFrames() != corrupt)
+                    {
+                        mDroppedBytes.add(mDecoder.getDroppedBytes() - dropped);
+                        mCorruptFrames.add(mDecoder.getCorruptFrames() - corrupt);
+                        dropped = mDecoder.getDroppedBytes();
+                        corrupt = mDecoder.getCorruptFrames();
+                    }
+                }
+            } catch (IOException e)
+            {
+                //also how a read ends when the supervisor closes the transport
+                mReadErrors.increment();
+            }
+            mSupervisor.onLost(mSession);
+        }
 
-            while (isConnected())
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length)
+        {
+            mJsonFramesIn.increment();
+            try
             {
-                try
+                long receivedAt = System.currentTimeMillis();
+                JSONObject json = new JSONObject(new String(buffer, offset, length));
+                JSONObject timeSync = json.optJSONObject("time sync");
+                if(timeSync != null)
                 {
-                    mBytes = new byte[528];
-                    mSocket.getInputStream().read(mBytes);
-                    mJSON = new JSONObject(new String(mBytes));
-                    mHandler.post(onReceive);
-                } catch (Exception e)
+                    //the suit echoes our t0 with its own receive and send times
+                    mTiming.getClock().addExchange(timeSync.getLong("t0"), timeSync.getLong("t1"), timeSync.getLong("t2"), receivedAt);
+                }
+                JSONObject warnings = json.optJSONObject("warnings");
+                if(warnings != null)
                 {
-
+                    mWarnings.update(WarningsEngine.parse(warnings), receivedAt);
+                }
+                JSONObject configuration = json.optJSONObject("configuration");
+                if(configuration != null)
+                {
+                    //the suit answers the configuration handshake with the protocol it will send
+                    mBinaryProtocol = BinaryCodec.PROTOCOL.equals(configuration.optString("protocol", null));
                 }
+                received(mTelemetry.publish(json), json.optBoolean("delta", false));
+            } catch (JSONException e)
+            {
+                mJsonErrors.increment();
+            }
+        }
+
+        @Override
+        public void onBinaryFrame(byte[] buffer, int offset, int length)
+        {
+            mBinaryFramesIn.increment();
+            mBinaryProtocol = true;
+            received(BinaryCodec.decode(buffer, offset, length, mTelemetry), BinaryCodec.isDelta(buffer, offset, length));
+        }
+
+        private void received(long updated, boolean delta)
+        {
+            mTelemetry.read(mFrame);
+            if(mTiming.onDecoded(mFrame) && updated != 0)
+            {
+                mHistory.record(mFrame.getReceivedTime(), mFrame, updated);
+                mJournal.append(mFrame, updated);
+            }
+            long now = System.currentTimeMillis();
+            if(mFrame.getSequence() >= 0 && mDeltas.onFrame(mFrame.getSequence(), delta, now))
+            {
+                //a delta was lost, channels it changed are stale until the suit sends everything again
+                mWriter.submit("keyframe", true, CommandWriter.Priority.CRITICAL);
+            }
+            mRules.evaluate(mFrame, now);
+            if(mTiming.getClock().shouldRequest(now))
+            {
+                //critical so it goes out straight away, t0 has to be close to the real send time
+                mWriter.submit("time sync", now, CommandWriter.Priority.CRITICAL);
+            }
+            if(!mSubscriptions.isEmpty())
+            {
+                mDispatcher.dataChanged();
             }
         }
     }
 
 
+    public TelemetrySnapshot getTelemetry()
+    {
+        return mTelemetry;
+    }
+
+    public TelemetryHistory getHistory()
+    {
+        return mHistory;
+    }
+
+    //counters, gauges and histograms for the link, snapshot() exports them all
+    public MetricsRegistry getMetrics()
+    {
+        return mMetrics;
+    }
+
+    //every frame of every session, replay it with a JournalReader on the journal's directory
+    public TelemetryJournal getJournal()
+    {
+        return mJournal;
+    }
+
+    //false while a lost delta may have left some channels out of date
+    public boolean isTelemetrySynced()
+    {
+        return mDeltas.isSynced();
+    }
+
+    //frame ages, latency histograms and dropped or duplicate frame counts
+    public TelemetryTiming getTiming()
+    {
+        return mTiming;
+    }
+
+    //fills frame with the latest telemetry, all values are guaranteed to come from the same message
+    public void readTelemetry(TelemetryFrame frame)
+    {
+        mTelemetry.read(frame);
+    }
+
     public void setOnConnect(Runnable onConnect)
     {
         this.onConnect = onConnect;
     }
 
-    public void setOnReceive(Runnable onReceive)
+    //delivered on the main thread
+    public void setOnConnectionState(ConnectionSupervisor.StateListener onConnectionState)
+    {
+        this.onConnectionState = onConnectionState;
+    }
+
+    /**
+     * Calls listener on the main thread whenever channel moves by at least deadband, starting with
+     * its current value. Must be called on the main thread; the listener is held weakly, so keep
+     * it in a field and cancel the subscription when the view goes away.
+     */
+    public TelemetrySubscriptions.Subscription subscribe(TelemetryChannel channel, double deadband, TelemetrySubscriptions.ValueListener listener)
+    {
+        TelemetrySubscriptions.Subscription subscription = mSubscriptions.subscribe(channel, deadband, listener);
+        mDispatcher.dataChanged();
+        return subscription;
+    }
+
+    public TelemetrySubscriptions.Subscription subscribeSwitch(TelemetryChannel channel, TelemetrySubscriptions.SwitchListener listener)
+    {
+        TelemetrySubscriptions.Subscription subscription = mSubscriptions.subscribeSwitch(channel, listener);
+        mDispatcher.dataChanged();
+        return subscription;
+    }
+
+    public WarningsEngine getWarnings()
+    {
+        return mWarnings;
+    }
+
+    //runs on the main thread whenever the set of active warnings changes
+    public void setOnWarningsChanged(Runnable onWarningsChanged)
+    {
+        this.onWarningsChanged = onWarningsChanged;
+    }
+
+    //every frame that reaches the screen, for things like ages that need the whole frame
+    public TelemetrySubscriptions.Subscription subscribeFrames(TelemetrySubscriptions.FrameListener listener)
     {
-        this.onReceive = onReceive;
+        TelemetrySubscriptions.Subscription subscription = mSubscriptions.subscribeFrames(listener);
+        mDispatcher.dataChanged();
+        return subscription;
     }
 
-    public void destroyOnReceive()
+    public UpdateDispatcher getDispatcher()
     {
-        this.onReceive = null;
+        return mDispatcher;
+    }
+
+    //phone side copy of the suit's cooling automation, disabled until the wearer turns it on
+    public RulesEngine getRules()
+    {
+        return mRules;
+    }
+
+    private Switch switchFor(TelemetryChannel channel)
+    {
+        switch (channel)
+        {
+            case PELTIER:
+                return peltier;
+            case WATER_PUMP:
+                return waterPump;
+            case HEAD_FANS:
+                return headFans;
+            case LIGHTS:
+                return mainLights;
+            case HEAD_LIGHTS_RED:
+                return redHeadLight;
+            case HEAD_LIGHTS_WHITE:
+                return whiteHeadLight;
+            default:
+                return null;
+        }
     }
 
     private final BroadcastReceiver mReceiver = new BroadcastReceiver()
@@ -319,69 +932,73 @@ public class AndroidBlue
             if(BluetoothDevice.ACTION_FOUND.equals(action))
             {
                 // Get the BluetoothDevice object from the Intent
-                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                mDeviceStrings.add(device.getName() + "\n" + device.getAddress());
+                final BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                final long now = System.currentTimeMillis();
+                mRegistryExecutor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        mRegistry.seen(device.getAddress(), device.getName(), now);
+                    }
+                });
                 // Add the name and address to an array adapter to show in a ListView
-                mDevices.add(device);
+                list(device, device.getName());
             }
         }
     };
 
     public class Temperature
     {
-        public Temperature(String location)
+        public Temperature(TelemetryChannel channel)
         {
-            this.location = location;
+            this.channel = channel;
         }
 
-        protected String location;
+        protected final TelemetryChannel channel;
 
         public double getValue()
         {
-            try
-            {
-                return mJSON.getDouble(location);
-            } catch (Exception e)
+            double value = mTelemetry.get(channel);
+            if(Double.isNaN(value))
             {
                 return -1000.0;
             }
+            return value;
         }
     }
 
-    //used for turning things on or off on the beaglebone
+    //used for turning things on or off on the beaglebone, never blocks the calling thread
     public class Switch
     {
-        public Switch(String location)
+        public Switch(String location, CommandWriter.Priority priority)
         {
             this.location = location;
+            this.priority = priority;
         }
 
-        protected String location;
+        protected final String location;
+        protected final CommandWriter.Priority priority;
 
         public void on()
         {
-            try
-            {
-                JSONObject switchObject = new JSONObject();
-                switchObject.put(location, "on");
-                mSocket.getOutputStream().write(switchObject.toString().getBytes());
-            } catch (Exception e)
-            {
-
-            }
+            send("on");
         }
 
         public void off()
         {
-            try
-            {
-                JSONObject switchObject = new JSONObject();
-                switchObject.put(location, "off");
-                mSocket.getOutputStream().write(switchObject.toString().getBytes());
-            } catch (Exception e)
-            {
+            send("off");
+        }
 
+        protected boolean send(String state)
+        {
+            TelemetryChannel channel = TelemetryChannel.fromKey(location);
+            if(channel != null)
+            {
+                //a manual command beats the phone's automation for a while
+                mRules.override(channel, System.currentTimeMillis());
             }
+            return mWriter.submit(location, state, priority);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+package com.haloproject.bluetooth;
+
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+/**
+ * Compact binary encoding of a telemetry message, used instead of JSON once the suit has agreed
+ * to it during the configuration handshake.
+ *
+ * A frame is two magic bytes, a big endian u16 payload length, the payload and a CRC-32C of the
+ * length and payload. The payload is a list of records: one byte channel id followed by the value
+ * as a big endian int32 in hundredths. Records with an unknown id are skipped. The frame sequence
+ * number and the suit timestamp travel as records too, with ids above every channel id and raw
+ * instead of scaled values; the timestamp is split into a high and a low record. A delta frame,
+ * which only holds the channels that changed, carries an extra delta record.
+ */
+public final class BinaryCodec
+{
+    public static final String PROTOCOL = "binary/1";
+
+    public static final int MAGIC_0 = 0xA5;
+    public static final int MAGIC_1 = 0x5A;
+    public static final int HEADER_SIZE = 4;
+    public static final int TRAILER_SIZE = 4;
+    public static final int RECORD_SIZE = 5;
+    public static final int MAX_PAYLOAD = 1024;
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + MAX_PAYLOAD + TRAILER_SIZE;
+    private static final double SCALE = 100.0;
+    static final int SEQUENCE_ID = 0xF0;
+    static final int TIME_HIGH_ID = 0xF1;
+    static final int TIME_LOW_ID = 0xF2;
+    static final int DELTA_ID = 0xF3;
+
+    private BinaryCodec()
+    {
+    }
+
+    //encodes every channel set in channels that has a value, returns the frame length
+    public static int encode(TelemetryFrame frame, long channels, byte[] out, int offset)
+    {
+        return encode(frame, channels, false, out, offset);
+    }
+
+    //same, marked as a delta when channels only holds what changed since the previous frame
+    public static int encode(TelemetryFrame frame, long channels, boolean delta, byte[] out, int offset)
+    {
+        int position = offset + HEADER_SIZE;
+        if(delta)
+        {
+            position = writeRecord(out, position, DELTA_ID, 1);
+        }
+        if(frame.getSequence() >= 0)
+        {
+            position = writeRecord(out, position, SEQUENCE_ID, (int) frame.getSequence());
+        }
+        if(frame.getSourceTime() != 0)
+        {
+            position = writeRecord(out, position, TIME_HIGH_ID, (int) (frame.getSourceTime() >>> 32));
+            position = writeRecord(out, position, TIME_LOW_ID, (int) frame.getSourceTime());
+        }
+        for (int i = 0; i < TelemetryChannel.COUNT; i++)
+        {
+            TelemetryChannel channel = TelemetryChannel.get(i);
+            if((channels & (1L << i)) == 0 || !frame.has(channel))
+            {
+                continue;
+            }
+            position = writeRecord(out, position, channel.id, (int) Math.round(frame.get(channel) * SCALE));
+        }
+        int payload = position - offset - HEADER_SIZE;
+        out[offset] = (byte) MAGIC_0;
+        out[offset + 1] = (byte) MAGIC_1;
+        out[offset + 2] = (byte) (payload >>> 8);
+        out[offset + 3] = (byte) payload;
+        int crc = Crc32c.compute(out, offset + 2, payload + 2);
+        out[position] = (byte) (crc >>> 24);
+        out[position + 1] = (byte) (crc >>> 16);
+        out[position + 2] = (byte) (crc >>> 8);
+        out[position + 3] = (byte) crc;
+        return position + TRAILER_SIZE - offset;
+    }
+
+    /**
+     * Checks the frame starting at offset. Returns the full frame length if it is valid, 0 if more
+     * bytes are needed and -1 if the frame is corrupt.
+     */
+    public static int check(byte[] buffer, int offset, int available)
+    {
+        if(available < HEADER_SIZE)
+        {
+            return 0;
+        }
+        if((buffer[offset] & 0xFF) != MAGIC_0 || (buffer[offset + 1] & 0xFF) != MAGIC_1)
+        {
+            return -1;
+        }
+        int payload = ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+        if(payload > MAX_PAYLOAD || payload % RECORD_SIZE != 0)
+        {
+            return -1;
+        }
+        int length = HEADER_SIZE + payload + TRAILER_SIZE;
+        if(available < length)
+        {
+            return 0;
+        }
+        int crc = readInt(buffer, offset + HEADER_SIZE + payload);
+        if(crc != Crc32c.compute(buffer, offset + 2, payload + 2))
+        {
+            return -1;
+        }
+        return length;
+    }
+
+    //publishes a frame already accepted by check, returns a bit per channel that was set
+    public static long decode(byte[] buffer, int offset, int length, TelemetrySnapshot snapshot)
+    {
+        long updated = 0;
+        long sequence = -1;
+        long timeHigh = 0;
+        long timeLow = 0;
+        int end = offset + length - TRAILER_SIZE;
+        snapshot.beginWrite();
+        try
+        {
+            for (int position = offset + HEADER_SIZE; position + RECORD_SIZE <= end; position += RECORD_SIZE)
+            {
+                int id = buffer[position] & 0xFF;
+                int value = readInt(buffer, position + 1);
+                if(id == SEQUENCE_ID)
+                {
+                    sequence = value & 0xFFFFFFFFL;
+                    continue;
+                }
+                if(id == TIME_HIGH_ID)
+                {
+                    timeHigh = value;
+                    continue;
+                }
+                if(id == TIME_LOW_ID)
+                {
+                    timeLow = value & 0xFFFFFFFFL;
+                    continue;
+                }
+                TelemetryChannel channel = TelemetryChannel.fromId(id);
+                if(channel == null)
+                {
+                    continue;
+                }
+                snapshot.set(channel, value / SCALE);
+                updated |= 1L << channel.ordinal();
+            }
+            snapshot.setSource(sequence, (timeHigh << 32) | timeLow);
+        } finally
+        {
+            snapshot.endWrite();
+        }
+        return updated;
+    }
+
+    //true for a frame accepted by check that only holds changed channels
+    public static boolean isDelta(byte[] buffer, int offset, int length)
+    {
+        int end = offset + length - TRAILER_SIZE;
+        for (int position = offset + HEADER_SIZE; position + RECORD_SIZE <= end; position += RECORD_SIZE)
+        {
+            if((buffer[position] & 0xFF) == DELTA_ID)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int writeRecord(byte[] out, int position, int id, int value)
+    {
+        out[position] = (byte) id;
+        out[position + 1] = (byte) (value >>> 24);
+        out[position + 2] = (byte) (value >>> 16);
+        out[position + 3] = (byte) (value >>> 8);
+        out[position + 4] = (byte) value;
+        return position + RECORD_SIZE;
+    }
+
+    private static int readInt(byte[] buffer, int offset)
+    {
+        return ((buffer[offset] & 0xFF) << 24)
+                | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8)
+                | (buffer[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,294 @@
+package com.haloproject.bluetooth;
+
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.Gauge;
+import com.haloproject.metrics.Histogram;
+import com.haloproject.metrics.MetricsRegistry;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends commands to the BeagleBone from one dedicated thread so callers never block on the socket.
+ *
+ * Commands are keyed by location: a newer command for the same location replaces the pending one,
+ * so quick toggles collapse to the latest state. Everything pending is packed into a single JSON
+ * object per flush, highest priority keys first. Critical commands flush straight away, the rest
+ * wait out a short coalescing window.
+ */
+public class CommandWriter
+{
+    public enum Priority
+    {
+        CRITICAL,
+        NORMAL,
+        COSMETIC
+    }
+
+    public interface ErrorListener
+    {
+        void onWriteError(IOException e);
+    }
+
+    public static final int MAX_PENDING = 16;
+    public static final long COALESCE_WINDOW = 100;
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final Object mLock = new Object();
+    private final String[] mLocations = new String[MAX_PENDING];
+    private final Object[] mValues = new Object[MAX_PENDING];
+    private final Priority[] mPriorities = new Priority[MAX_PENDING];
+    private final long[] mQueuedAt = new long[MAX_PENDING];
+    private int mCount;
+    private volatile Transport mTransport;
+    private final ByteBuffer[] mMessage = new ByteBuffer[1];
+    private volatile ErrorListener mErrorListener;
+    private volatile boolean mRunning = true;
+    private final Thread mThread;
+    private final Counter mCoalesced;
+    private final Counter mRejected;
+    private final Counter mFramesOut;
+    private final Counter mBytesOut;
+    private final Counter mWriteErrors;
+    private final Counter mEncodeErrors;
+    private final Histogram mWriteLatency;
+
+    public CommandWriter()
+    {
+        this(new MetricsRegistry());
+    }
+
+    public CommandWriter(MetricsRegistry metrics)
+    {
+        mCoalesced = metrics.counter("commands coalesced");
+        mRejected = metrics.counter("commands rejected");
+        mFramesOut = metrics.counter("frames out");
+        mBytesOut = metrics.counter("bytes out");
+        mWriteErrors = metrics.counter("write errors");
+        mEncodeErrors = metrics.counter("encode errors");
+        //microseconds spent writing a batch, mostly waiting for the link
+        mWriteLatency = metrics.histogram("write latency us");
+        metrics.register("command queue", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return getPendingCount();
+            }
+        });
+        mThread = new Thread(new WriterRunnable(), "CommandWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    //null while disconnected, which drops everything pending for the old link
+    public void setTransport(Transport transport)
+    {
+        synchronized (mLock)
+        {
+            mTransport = transport;
+            if(transport == null)
+            {
+                for (int i = mCount - 1; i >= 0; i--)
+                {
+                    removeAt(i);
+                }
+            }
+        }
+    }
+
+    public void setOutputStream(OutputStream output)
+    {
+        setTransport(output == null ? null : new StreamTransport(null, output));
+    }
+
+    public void setErrorListener(ErrorListener listener)
+    {
+        mErrorListener = listener;
+    }
+
+    /**
+     * Queues value for location, replacing anything still pending for the same location.
+     * Returns false while disconnected, or if the queue is full of commands at least as important
+     * as this one.
+     */
+    public boolean submit(String location, Object value, Priority priority)
+    {
+        synchronized (mLock)
+        {
+            if(mTransport == null)
+            {
+                mRejected.increment();
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < mCount; i++)
+            {
+                if(mLocations[i].equals(location))
+                {
+                    mValues[i] = value;
+                    if(priority.ordinal() < mPriorities[i].ordinal())
+                    {
+                        mPriorities[i] = priority;
+                    }
+                    mCoalesced.increment();
+                    mLock.notify();
+                    return true;
+                }
+            }
+            if(mCount == MAX_PENDING && !evictBelow(priority))
+            {
+                mRejected.increment();
+                return false;
+            }
+            mLocations[mCount] = location;
+            mValues[mCount] = value;
+            mPriorities[mCount] = priority;
+            mQueuedAt[mCount] = now;
+            mCount++;
+            mLock.notify();
+            return true;
+        }
+    }
+
+    public int getPendingCount()
+    {
+        synchronized (mLock)
+        {
+            return mCount;
+        }
+    }
+
+    public void shutdown()
+    {
+        mRunning = false;
+        mThread.interrupt();
+    }
+
+    //drops the newest command of the lowest priority that is below priority
+    private boolean evictBelow(Priority priority)
+    {
+        int victim = -1;
+        for (int i = 0; i < mCount; i++)
+        {
+            if(mPriorities[i].ordinal() > priority.ordinal()
+                    && (victim == -1 || mPriorities[i].ordinal() >= mPriorities[victim].ordinal()))
+            {
+                victim = i;
+            }
+        }
+        if(victim == -1)
+        {
+            return false;
+        }
+        removeAt(victim);
+        mRejected.increment();
+        return true;
+    }
+
+    private void removeAt(int index)
+    {
+        int moved = mCount - index - 1;
+        System.arraycopy(mLocations, index + 1, mLocations, index, moved);
+        System.arraycopy(mValues, index + 1, mValues, index, moved);
+        System.arraycopy(mPriorities, index + 1, mPriorities, index, moved);
+        System.arraycopy(mQueuedAt, index + 1, mQueuedAt, index, moved);
+        mCount--;
+        mLocations[mCount] = null;
+        mValues[mCount] = null;
+        mPriorities[mCount] = null;
+    }
+
+    //waits until something is due, then moves every pending command into one frame
+    private JSONObject takeBatch() throws InterruptedException, JSONException
+    {
+        synchronized (mLock)
+        {
+            while (true)
+            {
+                if(mCount == 0)
+                {
+                    mLock.wait();
+                    continue;
+                }
+                long due = Long.MAX_VALUE;
+                for (int i = 0; i < mCount; i++)
+                {
+                    long itemDue = mPriorities[i] == Priority.CRITICAL ? mQueuedAt[i] : mQueuedAt[i] + COALESCE_WINDOW;
+                    due = Math.min(due, itemDue);
+                }
+                long wait = due - System.currentTimeMillis();
+                if(wait <= 0)
+                {
+                    break;
+                }
+                mLock.wait(wait);
+            }
+
+            JSONObject batch = new JSONObject();
+            for (Priority priority : PRIORITIES)
+            {
+                for (int i = 0; i < mCount; i++)
+                {
+                    if(mPriorities[i] == priority)
+                    {
+                        batch.put(mLocations[i], mValues[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < mCount; i++)
+            {
+                mLocations[i] = null;
+                mValues[i] = null;
+                mPriorities[i] = null;
+            }
+            mCount = 0;
+            return batch;
+        }
+    }
+
+    private class WriterRunnable implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            while (mRunning)
+            {
+                try
+                {
+                    JSONObject batch = takeBatch();
+                    Transport transport = mTransport;
+                    if(transport == null)
+                    {
+                        throw new IOException("not connected");
+                    }
+                    byte[] bytes = batch.toString().getBytes();
+                    mMessage[0] = ByteBuffer.wrap(bytes);
+                    long start = System.nanoTime();
+                    transport.write(mMessage);
+                    mWriteLatency.record((System.nanoTime() - start) / 1000);
+                    mFramesOut.increment();
+                    mBytesOut.add(bytes.length);
+                } catch (InterruptedException e)
+                {
+                    return;
+                } catch (JSONException e)
+                {
+                    mEncodeErrors.increment();
+                } catch (IOException e)
+                {
+                    mWriteErrors.increment();
+                    ErrorListener listener = mErrorListener;
+                    if(listener != null)
+                    {
+                        listener.onWriteError(e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.haloproject.bluetooth;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Keeps one link to the suit up for as long as it is wanted.
+ *
+ * Failed attempts are retried with exponential backoff and full jitter, so a phone that walks out
+ * of range does not hammer the radio and several phones do not retry in lockstep. The link counts
+ * as alive while frames keep arriving; if nothing is heard for the heartbeat timeout the link is
+ * treated as half open, closed and reconnected. How long each outage lasted, from losing the link
+ * to having it back, is kept as time to recover.
+ */
+public class ConnectionSupervisor
+{
+    public enum State
+    {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        RECONNECTING
+    }
+
+    //opened and closed only from the supervisor thread
+    public interface Link
+    {
+        //session identifies this connection in onHeard and onLost calls made by its reader
+        void open(long session) throws IOException;
+
+        //must leave any newer session alone
+        void close(long session);
+    }
+
+    public interface StateListener
+    {
+        //called on the supervisor thread
+        void onStateChanged(State state);
+    }
+
+    public static final long DEFAULT_HEARTBEAT_TIMEOUT = 5000;
+    private static final long BASE_BACKOFF = 500;
+    private static final long MAX_BACKOFF = 30 * 1000;
+    private static final int MAX_BACKOFF_SHIFT = 16;
+
+    private final Link mLink;
+    private final Object mLock = new Object();
+    private final Random mRandom = new Random();
+    private volatile StateListener mListener;
+    private volatile long mHeartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+    private volatile State mState = State.DISCONNECTED;
+    private volatile long mLastHeard;
+    private Thread mThread;
+    private volatile long mSession;
+    private boolean mLost;
+    private int mAttempts;
+    private long mDroppedAt;
+    private long mLastRecovery = -1;
+    private long mMaxRecovery;
+    private long mTotalRecovery;
+    private int mRecoveries;
+    private int mHeartbeatTimeouts;
+
+    public ConnectionSupervisor(Link link)
+    {
+        mLink = link;
+    }
+
+    public void setStateListener(StateListener listener)
+    {
+        mListener = listener;
+    }
+
+    public void setHeartbeatTimeout(long millis)
+    {
+        mHeartbeatTimeout = millis;
+    }
+
+    public State getState()
+    {
+        return mState;
+    }
+
+    //starts supervising, or retries straight away if it is already waiting out a backoff
+    public void start()
+    {
+        synchronized (mLock)
+        {
+            mAttempts = 0;
+            if(mThread == null)
+            {
+                mThread = new Thread(new SupervisorRunnable(), "ConnectionSupervisor");
+                mThread.setDaemon(true);
+                mThread.start();
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    public void stop()
+    {
+        Thread thread;
+        synchronized (mLock)
+        {
+            thread = mThread;
+            mThread = null;
+            mLock.notifyAll();
+        }
+        if(thread != null)
+        {
+            thread.interrupt();
+        }
+    }
+
+    //any frame from the suit counts as a heartbeat
+    public void onHeard(long session)
+    {
+        if(session == mSession)
+        {
+            mLastHeard = System.currentTimeMillis();
+        }
+    }
+
+    //the reader of session hit the end of the stream or an error
+    public void onLost(long session)
+    {
+        synchronized (mLock)
+        {
+            if(session == mSession)
+            {
+                mLost = true;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    //how long the last outage took to recover from in milliseconds, -1 before the first one
+    public long getLastRecoveryMillis()
+    {
+        synchronized (mLock)
+        {
+            return mLastRecovery;
+        }
+    }
+
+    public long getMaxRecoveryMillis()
+    {
+        synchronized (mLock)
+        {
+            return mMaxRecovery;
+        }
+    }
+
+    public long getMeanRecoveryMillis()
+    {
+        synchronized (mLock)
+        {
+            return mRecoveries == 0 ? -1 : mTotalRecovery / mRecoveries;
+        }
+    }
+
+    public int getRecoveries()
+    {
+        synchronized (mLock)
+        {
+            return mRecoveries;
+        }
+    }
+
+    public int getHeartbeatTimeouts()
+    {
+        synchronized (mLock)
+        {
+            return mHeartbeatTimeouts;
+        }
+    }
+
+    //full jitter: anywhere between nothing and the exponential ceiling
+    long backoff(int attempts)
+    {
+        long ceiling = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempts, MAX_BACKOFF_SHIFT));
+        return (long) (mRandom.nextDouble() * ceiling);
+    }
+
+    private boolean isRunning()
+    {
+        return mThread == Thread.currentThread();
+    }
+
+    private void setState(State state)
+    {
+        if(mState == state)
+        {
+            return;
+        }
+        mState = state;
+        StateListener listener = mListener;
+        if(listener != null)
+        {
+            listener.onStateChanged(state);
+        }
+    }
+
+    private class SupervisorRunnable implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            long session = 0;
+            try
+            {
+                while (true)
+                {
+                    synchronized (mLock)
+                    {
+                        if(!isRunning())
+                        {
+                            break;
+                        }
+                        session = ++mSession;
+                        mLost = false;
+                    }
+                    setState(mDroppedAt == 0 ? State.CONNECTING : State.RECONNECTING);
+                    try
+                    {
+                        mLastHeard = System.currentTimeMillis();
+                        mLink.open(session);
+                    } catch (IOException e)
+                    {
+                        waitBackoff();
+                        continue;
+                    }
+                    connected();
+                    supervise();
+                    mLink.close(session);
+                }
+            } catch (InterruptedException e)
+            {
+                mLink.close(session);
+            }
+            synchronized (mLock)
+            {
+                if(mThread != null)
+                {
+                    //restarted while this thread was winding down, the new thread owns the state
+                    return;
+                }
+            }
+            setState(State.DISCONNECTED);
+        }
+
+        private void connected()
+        {
+            synchronized (mLock)
+            {
+                mAttempts = 0;
+                if(mDroppedAt != 0)
+                {
+                    long recovery = System.currentTimeMillis() - mDroppedAt;
+                    mLastRecovery = recovery;
+                    mMaxRecovery = Math.max(mMaxRecovery, recovery);
+                    mTotalRecovery += recovery;
+                    mRecoveries++;
+                    mDroppedAt = 0;
+                }
+            }
+            setState(State.CONNECTED);
+        }
+
+        //returns once the link is lost, has gone quiet for too long or supervision was stopped
+        private void supervise() throws InterruptedException
+        {
+            synchronized (mLock)
+            {
+                while (isRunning() && !mLost)
+                {
+                    long silent = System.currentTimeMillis() - mLastHeard;
+                    long timeout = mHeartbeatTimeout;
+                    if(silent >= timeout)
+                    {
+                        mHeartbeatTimeouts++;
+                        break;
+                    }
+                    mLock.wait(timeout - silent);
+                }
+                if(isRunning())
+                {
+                    mDroppedAt = System.currentTimeMillis();
+                }
+            }
+        }
+
+        private void waitBackoff() throws InterruptedException
+        {
+            synchronized (mLock)
+            {
+                int attempts = mAttempts++;
+                long until = System.currentTimeMillis() + backoff(attempts);
+                //start() resets the attempts to ask for an immediate retry
+                while (isRunning() && mAttempts != 0)
+                {
+                    long wait = until - System.currentTimeMillis();
+                    if(wait <= 0)
+                    {
+                        break;
+                    }
+                    mLock.wait(wait);
+                }
+            }
+        }
+    }
+}
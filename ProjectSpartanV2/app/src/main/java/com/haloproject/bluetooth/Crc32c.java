@@ -0,0 +1,37 @@
+package com.haloproject.bluetooth;
+
+/**
+ * CRC-32C (Castagnoli) used to check binary frames, java.util.zip.CRC32C is not available on Android.
+ */
+public final class Crc32c
+{
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[] TABLE = new int[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++)
+            {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private Crc32c()
+    {
+    }
+
+    public static int compute(byte[] bytes, int offset, int length)
+    {
+        int crc = 0xFFFFFFFF;
+        for (int i = offset; i < offset + length; i++)
+        {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ bytes[i]) & 0xFF];
+        }
+        return ~crc;
+    }
+}
@@ -0,0 +1,292 @@
+package com.haloproject.bluetooth;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every suit the phone has seen or connected to, keyed by MAC address and kept in a small JSON
+ * file so known suits can be reconnected to at startup without discovery. Each entry keeps when
+ * it was last seen and connected, the RFCOMM channel that last worked, a smoothed connect latency
+ * and how many attempts have failed since the last success.
+ *
+ * The file is read on first use, which shouldn't be on the main thread, and written by save().
+ * Changes from discovery are only kept in memory until the next save. The registry is bounded,
+ * once full the lowest ranked entry makes room.
+ */
+public class DeviceRegistry
+{
+    public static final int MAX_DEVICES = 32;
+    public static final int UNKNOWN_CHANNEL = -1;
+
+    public static final class Device
+    {
+        private final String mAddress;
+        private final String mName;
+        private final long mLastSeen;
+        private final long mLastConnected;
+        private final int mChannel;
+        private final long mConnectMillis;
+        private final int mFailures;
+
+        Device(String address, String name, long lastSeen, long lastConnected, int channel, long connectMillis, int failures)
+        {
+            mAddress = address;
+            mName = name;
+            mLastSeen = lastSeen;
+            mLastConnected = lastConnected;
+            mChannel = channel;
+            mConnectMillis = connectMillis;
+            mFailures = failures;
+        }
+
+        public String getAddress()
+        {
+            return mAddress;
+        }
+
+        //null if the device never told us
+        public String getName()
+        {
+            return mName;
+        }
+
+        public long getLastSeen()
+        {
+            return mLastSeen;
+        }
+
+        //0 if it has never been connected to
+        public long getLastConnected()
+        {
+            return mLastConnected;
+        }
+
+        public int getChannel()
+        {
+            return mChannel;
+        }
+
+        public long getConnectMillis()
+        {
+            return mConnectMillis;
+        }
+
+        public int getFailures()
+        {
+            return mFailures;
+        }
+    }
+
+    //suits that connected before first, most recent first, then fewer failures and faster connects
+    private static final Comparator<Device> RANK = new Comparator<Device>()
+    {
+        @Override
+        public int compare(Device a, Device b)
+        {
+            if(a.mLastConnected != b.mLastConnected)
+            {
+                return a.mLastConnected > b.mLastConnected ? -1 : 1;
+            }
+            if(a.mFailures != b.mFailures)
+            {
+                return a.mFailures < b.mFailures ? -1 : 1;
+            }
+            if(a.mConnectMillis != b.mConnectMillis)
+            {
+                return a.mConnectMillis < b.mConnectMillis ? -1 : 1;
+            }
+            return a.mLastSeen > b.mLastSeen ? -1 : a.mLastSeen < b.mLastSeen ? 1 : 0;
+        }
+    };
+
+    private final File mFile;
+    private final Map<String, Device> mDevices = new HashMap<String, Device>();
+    private boolean mLoaded;
+    private boolean mDirty;
+
+    public DeviceRegistry(File file)
+    {
+        mFile = file;
+    }
+
+    public synchronized Device get(String address)
+    {
+        load();
+        return mDevices.get(address);
+    }
+
+    //true the first time an address is seen
+    public synchronized boolean seen(String address, String name, long now)
+    {
+        load();
+        Device old = mDevices.get(address);
+        if(old == null)
+        {
+            put(new Device(address, name, now, 0, UNKNOWN_CHANNEL, 0, 0));
+            return true;
+        }
+        put(new Device(address, name != null ? name : old.mName, now, old.mLastConnected, old.mChannel, old.mConnectMillis, old.mFailures));
+        return false;
+    }
+
+    public synchronized void connected(String address, String name, int channel, long millis, long now)
+    {
+        load();
+        Device old = mDevices.get(address);
+        long smoothed = old == null || old.mConnectMillis == 0 ? millis : (old.mConnectMillis * 3 + millis) / 4;
+        if(name == null && old != null)
+        {
+            name = old.mName;
+        }
+        put(new Device(address, name, now, now, channel, smoothed, 0));
+    }
+
+    public synchronized void failed(String address)
+    {
+        load();
+        Device old = mDevices.get(address);
+        if(old != null)
+        {
+            put(new Device(address, old.mName, old.mLastSeen, old.mLastConnected, old.mChannel, old.mConnectMillis, old.mFailures + 1));
+        }
+    }
+
+    //the best candidates for reconnecting without discovery, only suits that have connected before
+    public synchronized List<Device> known(int max)
+    {
+        load();
+        List<Device> known = new ArrayList<Device>();
+        for (Device device : ranked())
+        {
+            if(known.size() == max || device.mLastConnected == 0)
+            {
+                break;
+            }
+            known.add(device);
+        }
+        return known;
+    }
+
+    //everything in the registry, best first
+    public synchronized List<Device> ranked()
+    {
+        load();
+        List<Device> ranked = new ArrayList<Device>(mDevices.values());
+        Collections.sort(ranked, RANK);
+        return ranked;
+    }
+
+    //writes the registry if it changed, through a temporary file so a crash can't leave half of it
+    public synchronized void save() throws IOException
+    {
+        if(!mDirty)
+        {
+            return;
+        }
+        JSONArray devices = new JSONArray();
+        try
+        {
+            for (Device device : mDevices.values())
+            {
+                JSONObject json = new JSONObject();
+                json.put("address", device.mAddress);
+                json.putOpt("name", device.mName);
+                json.put("last seen", device.mLastSeen);
+                json.put("last connected", device.mLastConnected);
+                json.put("channel", device.mChannel);
+                json.put("connect ms", device.mConnectMillis);
+                json.put("failures", device.mFailures);
+                devices.put(json);
+            }
+        } catch (JSONException e)
+        {
+            throw new IOException(e);
+        }
+        File temporary = new File(mFile.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(temporary);
+        try
+        {
+            out.write(devices.toString().getBytes("UTF-8"));
+        } finally
+        {
+            out.close();
+        }
+        if(!temporary.renameTo(mFile))
+        {
+            throw new IOException("could not replace " + mFile);
+        }
+        mDirty = false;
+    }
+
+    private void put(Device device)
+    {
+        mDevices.put(device.mAddress, device);
+        if(mDevices.size() > MAX_DEVICES)
+        {
+            List<Device> ranked = ranked();
+            mDevices.remove(ranked.get(ranked.size() - 1).mAddress);
+        }
+        mDirty = true;
+    }
+
+    //a missing or unreadable file leaves the registry empty, it fills up again as suits are found
+    private void load()
+    {
+        if(mLoaded)
+        {
+            return;
+        }
+        mLoaded = true;
+        if(!mFile.exists())
+        {
+            return;
+        }
+        try
+        {
+            InputStream in = new FileInputStream(mFile);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try
+            {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) >= 0)
+                {
+                    bytes.write(buffer, 0, read);
+                }
+            } finally
+            {
+                in.close();
+            }
+            JSONArray devices = new JSONArray(bytes.toString("UTF-8"));
+            for (int i = 0; i < devices.length() && i < MAX_DEVICES; i++)
+            {
+                JSONObject json = devices.getJSONObject(i);
+                Device device = new Device(json.getString("address"), json.optString("name", null),
+                        json.optLong("last seen"), json.optLong("last connected"), json.optInt("channel", UNKNOWN_CHANNEL),
+                        json.optLong("connect ms"), json.optInt("failures"));
+                mDevices.put(device.mAddress, device);
+            }
+        } catch (IOException e)
+        {
+            mDevices.clear();
+        } catch (JSONException e)
+        {
+            mDevices.clear();
+        }
+    }
+}
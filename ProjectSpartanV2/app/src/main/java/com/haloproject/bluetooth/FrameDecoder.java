@@ -0,0 +1,237 @@
+package com.haloproject.bluetooth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the byte stream coming from the BeagleBone into complete top level JSON objects and
+ * binary frames. State is kept between reads, so a message split over several reads or several
+ * messages packed into one read are still delivered one whole frame at a time.
+ */
+public class FrameDecoder
+{
+    public interface FrameListener
+    {
+        //the slice is only valid until onFrame returns, copy it if it has to be kept
+        void onFrame(byte[] buffer, int offset, int length);
+
+        //a complete binary frame that already passed its checksum, see BinaryCodec
+        void onBinaryFrame(byte[] buffer, int offset, int length);
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MIN_READ_SIZE = 256;
+    static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    private final FrameListener mListener;
+    private byte[] mBuffer;
+    //wraps mBuffer for transports, replaced whenever the buffer grows
+    private ByteBuffer mWrapped;
+    private int mStart;
+    private int mEnd;
+    private int mScan;
+    private int mDepth;
+    private boolean mInString;
+    private boolean mEscaped;
+    private long mDroppedBytes;
+    private long mCorruptFrames;
+
+    public FrameDecoder(FrameListener listener)
+    {
+        mListener = listener;
+        mBuffer = new byte[INITIAL_CAPACITY];
+    }
+
+    //reads straight into the decode buffer so bytes are never copied before they are scanned
+    public int readFrom(InputStream in) throws IOException
+    {
+        ensureWritable(MIN_READ_SIZE);
+        int read = in.read(mBuffer, mEnd, mBuffer.length - mEnd);
+        if(read > 0)
+        {
+            mEnd += read;
+            scan();
+        }
+        return read;
+    }
+
+    //same as readFrom(InputStream), the transport reads into the decode buffer through a wrapper
+    public int readFrom(Transport transport) throws IOException
+    {
+        ensureWritable(MIN_READ_SIZE);
+        if(mWrapped == null || mWrapped.array() != mBuffer)
+        {
+            mWrapped = ByteBuffer.wrap(mBuffer);
+        }
+        mWrapped.limit(mBuffer.length).position(mEnd);
+        int read = transport.read(mWrapped);
+        if(read > 0)
+        {
+            mEnd += read;
+            scan();
+        }
+        return read;
+    }
+
+    public void feed(byte[] bytes, int offset, int length)
+    {
+        ensureWritable(length);
+        System.arraycopy(bytes, offset, mBuffer, mEnd, length);
+        mEnd += length;
+        scan();
+    }
+
+    public void reset()
+    {
+        mStart = 0;
+        mEnd = 0;
+        mScan = 0;
+        resetFrameState();
+    }
+
+    public long getDroppedBytes()
+    {
+        return mDroppedBytes;
+    }
+
+    public long getCorruptFrames()
+    {
+        return mCorruptFrames;
+    }
+
+    private void scan()
+    {
+        byte[] buffer = mBuffer;
+        boolean waitingForBinary = false;
+        int i = mScan;
+        while (i < mEnd)
+        {
+            byte b = buffer[i];
+            if(mDepth == 0)
+            {
+                //anything between frames (padding, whitespace, noise) is skipped
+                if(b == '{')
+                {
+                    mDroppedBytes += i - mStart;
+                    mStart = i;
+                    mDepth = 1;
+                }
+                else if((b & 0xFF) == BinaryCodec.MAGIC_0)
+                {
+                    int length = BinaryCodec.check(buffer, i, mEnd - i);
+                    if(length == 0)
+                    {
+                        mDroppedBytes += i - mStart;
+                        mStart = i;
+                        waitingForBinary = true;
+                        break;
+                    }
+                    if(length > 0)
+                    {
+                        mDroppedBytes += i - mStart;
+                        mListener.onBinaryFrame(buffer, i, length);
+                        i += length;
+                        mStart = i;
+                        continue;
+                    }
+                    //bad header or checksum, resync on the next byte
+                    mCorruptFrames++;
+                }
+                i++;
+                continue;
+            }
+            if(mInString)
+            {
+                if(mEscaped)
+                {
+                    mEscaped = false;
+                }
+                else if(b == '\\')
+                {
+                    mEscaped = true;
+                }
+                else if(b == '"')
+                {
+                    mInString = false;
+                }
+            }
+            else if(b == '"')
+            {
+                mInString = true;
+            }
+            else if(b == '{')
+            {
+                mDepth++;
+            }
+            else if(b == '}')
+            {
+                mDepth--;
+                if(mDepth == 0)
+                {
+                    mListener.onFrame(buffer, mStart, i + 1 - mStart);
+                    mStart = i + 1;
+                }
+            }
+            i++;
+        }
+
+        if(waitingForBinary)
+        {
+            //the binary header is checked again once the rest of the frame arrives
+            mScan = mStart;
+        }
+        else if(mDepth == 0)
+        {
+            mDroppedBytes += mEnd - mStart;
+            mStart = 0;
+            mEnd = 0;
+            mScan = 0;
+        }
+        else if(mEnd - mStart > MAX_FRAME_SIZE)
+        {
+            //a frame this big is corrupt, throw it away and look for the next frame start
+            mDroppedBytes += mEnd - mStart;
+            mCorruptFrames++;
+            reset();
+        }
+        else
+        {
+            mScan = mEnd;
+        }
+    }
+
+    private void ensureWritable(int length)
+    {
+        if(mBuffer.length - mEnd >= length)
+        {
+            return;
+        }
+        int pending = mEnd - mStart;
+        if(mStart > 0)
+        {
+            System.arraycopy(mBuffer, mStart, mBuffer, 0, pending);
+            mScan -= mStart;
+            mStart = 0;
+            mEnd = pending;
+        }
+        if(mBuffer.length - mEnd < length)
+        {
+            int capacity = mBuffer.length;
+            while (capacity - mEnd < length)
+            {
+                capacity *= 2;
+            }
+            byte[] grown = new byte[capacity];
+            System.arraycopy(mBuffer, 0, grown, 0, mEnd);
+            mBuffer = grown;
+        }
+    }
+
+    private void resetFrameState()
+    {
+        mDepth = 0;
+        mInString = false;
+        mEscaped = false;
+    }
+}
@@ -0,0 +1,142 @@
+package com.haloproject.bluetooth;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+
+/**
+ * Connects whichever of several transports answers first. Every candidate connects on a thread of
+ * its own; the first one through wins and the others are closed, which aborts a Bluetooth connect
+ * still in progress. Candidates still connecting when the timeout runs out are closed the same
+ * way, a blocking RFCOMM connect has no timeout of its own.
+ */
+class ParallelConnector
+{
+    private final List<? extends Transport> mCandidates;
+    private Transport mWinner;
+    private boolean mDone;
+    private int mFailures;
+    private IOException mLastError;
+
+    private ParallelConnector(List<? extends Transport> candidates)
+    {
+        mCandidates = candidates;
+    }
+
+    //interrupting the caller closes every candidate and throws InterruptedIOException
+    static Transport connect(List<? extends Transport> candidates, long timeout) throws IOException
+    {
+        return new ParallelConnector(candidates).run(timeout);
+    }
+
+    private Transport run(long timeout) throws IOException
+    {
+        for (final Transport candidate : mCandidates)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    attempt(candidate);
+                }
+            }, "AndroidBlueConnect");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Transport winner;
+        try
+        {
+            winner = await(timeout);
+        } catch (InterruptedException e)
+        {
+            closeAllBut(null);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("connect interrupted");
+        }
+        closeAllBut(winner);
+        if(winner != null)
+        {
+            return winner;
+        }
+        synchronized (this)
+        {
+            if(mFailures == mCandidates.size())
+            {
+                throw mLastError;
+            }
+        }
+        throw new IOException("no answer within " + timeout + " ms from " + mCandidates);
+    }
+
+    private synchronized Transport await(long timeout) throws InterruptedException
+    {
+        try
+        {
+            long until = System.currentTimeMillis() + timeout;
+            while (mWinner == null && mFailures < mCandidates.size())
+            {
+                long wait = until - System.currentTimeMillis();
+                if(wait <= 0)
+                {
+                    break;
+                }
+                wait(wait);
+            }
+            return mWinner;
+        } finally
+        {
+            //anything connecting from here on is too late
+            mDone = true;
+        }
+    }
+
+    private void closeAllBut(Transport winner)
+    {
+        for (Transport candidate : mCandidates)
+        {
+            if(candidate != winner)
+            {
+                closeQuietly(candidate);
+            }
+        }
+    }
+
+    private void attempt(Transport candidate)
+    {
+        try
+        {
+            candidate.connect();
+        } catch (IOException e)
+        {
+            synchronized (this)
+            {
+                mFailures++;
+                mLastError = e;
+                notifyAll();
+            }
+            return;
+        }
+        synchronized (this)
+        {
+            if(!mDone && mWinner == null)
+            {
+                mWinner = candidate;
+                notifyAll();
+                return;
+            }
+        }
+        closeQuietly(candidate);
+    }
+
+    private static void closeQuietly(Transport transport)
+    {
+        try
+        {
+            transport.close();
+        } catch (IOException e)
+        {
+            //a loser, nobody is waiting on it
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.haloproject.bluetooth;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * The Bluetooth link to the BeagleBone. The suit listens on RFCOMM channel 3 without an SDP
+ * record, so the socket is made through the hidden createRfcommSocket. Closing the transport
+ * while it connects aborts the connect, which is how ParallelConnector times attempts out.
+ */
+public class RfcommTransport extends StreamTransport
+{
+    public static final int DEFAULT_CHANNEL = 3;
+
+    private final BluetoothDevice mDevice;
+    private final BluetoothAdapter mAdapter;
+    private final int mChannel;
+    private volatile BluetoothSocket mSocket;
+    private volatile boolean mClosed;
+
+    public RfcommTransport(BluetoothDevice device, BluetoothAdapter adapter)
+    {
+        this(device, adapter, DEFAULT_CHANNEL);
+    }
+
+    public RfcommTransport(BluetoothDevice device, BluetoothAdapter adapter, int channel)
+    {
+        mDevice = device;
+        mAdapter = adapter;
+        mChannel = channel;
+    }
+
+    public BluetoothDevice getDevice()
+    {
+        return mDevice;
+    }
+
+    public int getChannel()
+    {
+        return mChannel;
+    }
+
+    @Override
+    public void connect() throws IOException
+    {
+        BluetoothSocket socket;
+        try
+        {
+            Method m = mDevice.getClass().getMethod("createRfcommSocket", new Class[]{int.class});
+            socket = (BluetoothSocket) m.invoke(mDevice, mChannel);
+        } catch (Exception e)
+        {
+            throw new IOException(e);
+        }
+        //published before connecting so close() can abort the connect
+        mSocket = socket;
+        try
+        {
+            if(mClosed)
+            {
+                throw new IOException("closed while connecting");
+            }
+            //discovery slows connecting down a lot
+            mAdapter.cancelDiscovery();
+            socket.connect();
+            setStreams(socket.getInputStream(), socket.getOutputStream());
+        } catch (IOException e)
+        {
+            try
+            {
+                socket.close();
+            } catch (IOException ignored)
+            {
+                //the connect failure is the one worth reporting
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        mClosed = true;
+        BluetoothSocket socket = mSocket;
+        if(socket != null)
+        {
+            socket.close();
+        }
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        BluetoothSocket socket = mSocket;
+        return !mClosed && socket != null && socket.isConnected();
+    }
+
+    @Override
+    public String toString()
+    {
+        return mDevice + " channel " + mChannel;
+    }
+}
@@ -0,0 +1,200 @@
+package com.haloproject.bluetooth;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The suit protocol over TCP, for a suit on Wi-Fi or the emulator. The channel is non-blocking;
+ * the reader and the writer each wait on their own selector, so neither holds the other up and
+ * close() only has to wake both. Writes are gathering writes, a message in several buffers goes
+ * out in as few segments as the kernel allows. Closing the transport while it connects aborts the
+ * connect, like RfcommTransport.
+ */
+public class SocketTransport implements Transport
+{
+    public static final int CONNECT_TIMEOUT = 5000;
+
+    private final String mHost;
+    private final int mPort;
+    private volatile SocketChannel mChannel;
+    private volatile Selector mReadSelector;
+    private volatile Selector mWriteSelector;
+    private volatile boolean mClosed;
+
+    public SocketTransport(String host, int port)
+    {
+        mHost = host;
+        mPort = port;
+    }
+
+    @Override
+    public void connect() throws IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+        //published before connecting so close() can abort the connect
+        mChannel = channel;
+        Selector readSelector = null;
+        Selector writeSelector = null;
+        try
+        {
+            if(mClosed)
+            {
+                throw new ClosedChannelException();
+            }
+            //connect blocking so the timeout applies, everything after is non-blocking
+            channel.socket().connect(new InetSocketAddress(mHost, mPort), CONNECT_TIMEOUT);
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            readSelector = Selector.open();
+            writeSelector = Selector.open();
+            channel.register(readSelector, SelectionKey.OP_READ);
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        } catch (IOException e)
+        {
+            closeAll(channel, readSelector, writeSelector);
+            throw e;
+        }
+        mReadSelector = readSelector;
+        mWriteSelector = writeSelector;
+        if(mClosed)
+        {
+            //closed while the selectors were being set up
+            closeAll(channel, readSelector, writeSelector);
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        SocketChannel channel = connected();
+        Selector selector = mReadSelector;
+        while (true)
+        {
+            int read = channel.read(dst);
+            if(read != 0 || !dst.hasRemaining())
+            {
+                return read;
+            }
+            await(selector);
+        }
+    }
+
+    @Override
+    public long write(ByteBuffer[] buffers) throws IOException
+    {
+        SocketChannel channel = connected();
+        Selector selector = mWriteSelector;
+        long written = 0;
+        int first = 0;
+        while (first < buffers.length)
+        {
+            long count = channel.write(buffers, first, buffers.length - first);
+            written += count;
+            while (first < buffers.length && !buffers[first].hasRemaining())
+            {
+                first++;
+            }
+            if(count == 0 && first < buffers.length)
+            {
+                //the send buffer is full, wait for the suit to catch up
+                await(selector);
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        mClosed = true;
+        SocketChannel channel = mChannel;
+        Selector readSelector = mReadSelector;
+        Selector writeSelector = mWriteSelector;
+        //wake the reader and writer before closing what they wait on
+        if(readSelector != null)
+        {
+            readSelector.wakeup();
+        }
+        if(writeSelector != null)
+        {
+            writeSelector.wakeup();
+        }
+        closeAll(channel, readSelector, writeSelector);
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        SocketChannel channel = mChannel;
+        return !mClosed && channel != null && channel.isConnected();
+    }
+
+    @Override
+    public String toString()
+    {
+        return mHost + ":" + mPort;
+    }
+
+    private SocketChannel connected() throws IOException
+    {
+        SocketChannel channel = mChannel;
+        if(mClosed)
+        {
+            throw new ClosedChannelException();
+        }
+        if(channel == null)
+        {
+            throw new IOException("not connected");
+        }
+        return channel;
+    }
+
+    private void await(Selector selector) throws IOException
+    {
+        try
+        {
+            selector.select();
+            selector.selectedKeys().clear();
+        } catch (ClosedSelectorException e)
+        {
+            //close() got there first
+        }
+        if(mClosed)
+        {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private static void closeAll(SocketChannel channel, Selector readSelector, Selector writeSelector) throws IOException
+    {
+        try
+        {
+            if(channel != null)
+            {
+                channel.close();
+            }
+        } finally
+        {
+            try
+            {
+                if(readSelector != null)
+                {
+                    readSelector.close();
+                }
+            } finally
+            {
+                if(writeSelector != null)
+                {
+                    writeSelector.close();
+                }
+            }
+        }
+    }
+}
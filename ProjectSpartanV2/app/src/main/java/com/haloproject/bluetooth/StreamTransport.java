@@ -0,0 +1,135 @@
+package com.haloproject.bluetooth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A transport over a plain input and output stream pair, which is all a BluetoothSocket offers.
+ * Reads and writes go straight to the buffers' backing arrays, so heap buffers are never copied.
+ */
+public class StreamTransport implements Transport
+{
+    private static final int COPY_SIZE = 1024;
+
+    private volatile InputStream mIn;
+    private volatile OutputStream mOut;
+    private byte[] mReadCopy;
+    private byte[] mWriteCopy;
+
+    //either stream may be null if the transport is only used in one direction
+    public StreamTransport(InputStream in, OutputStream out)
+    {
+        mIn = in;
+        mOut = out;
+    }
+
+    protected StreamTransport()
+    {
+    }
+
+    //for subclasses that only have their streams once connected
+    protected void setStreams(InputStream in, OutputStream out)
+    {
+        mIn = in;
+        mOut = out;
+    }
+
+    @Override
+    public void connect() throws IOException
+    {
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        InputStream in = mIn;
+        if(in == null)
+        {
+            throw new IOException("not connected");
+        }
+        if(dst.hasArray())
+        {
+            int read = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if(read > 0)
+            {
+                dst.position(dst.position() + read);
+            }
+            return read;
+        }
+        if(mReadCopy == null)
+        {
+            mReadCopy = new byte[COPY_SIZE];
+        }
+        int read = in.read(mReadCopy, 0, Math.min(mReadCopy.length, dst.remaining()));
+        if(read > 0)
+        {
+            dst.put(mReadCopy, 0, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long write(ByteBuffer[] buffers) throws IOException
+    {
+        OutputStream out = mOut;
+        if(out == null)
+        {
+            throw new IOException("not connected");
+        }
+        long written = 0;
+        for (ByteBuffer buffer : buffers)
+        {
+            int length = buffer.remaining();
+            if(buffer.hasArray())
+            {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                buffer.position(buffer.limit());
+            }
+            else
+            {
+                if(mWriteCopy == null)
+                {
+                    mWriteCopy = new byte[COPY_SIZE];
+                }
+                while (buffer.hasRemaining())
+                {
+                    int chunk = Math.min(mWriteCopy.length, buffer.remaining());
+                    buffer.get(mWriteCopy, 0, chunk);
+                    out.write(mWriteCopy, 0, chunk);
+                }
+            }
+            written += length;
+        }
+        //one flush per message, RFCOMM sends a packet per flush
+        out.flush();
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        InputStream in = mIn;
+        OutputStream out = mOut;
+        try
+        {
+            if(in != null)
+            {
+                in.close();
+            }
+        } finally
+        {
+            if(out != null)
+            {
+                out.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return mIn != null || mOut != null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.haloproject.bluetooth;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A byte stream to the suit. RFCOMM is the real link; a TCP socket lets the same protocol code run
+ * against the emulator or over Wi-Fi, where Bluetooth's bandwidth is not the bottleneck.
+ *
+ * One thread reads while another writes. close() may come from any thread and makes a blocked
+ * read or write fail with an IOException.
+ */
+public interface Transport
+{
+    //blocks until the link is up
+    void connect() throws IOException;
+
+    /**
+     * Reads what has arrived into dst, waiting only until at least one byte is there. Returns the
+     * number of bytes read, or -1 once the other end has closed the link.
+     */
+    int read(ByteBuffer dst) throws IOException;
+
+    //writes every remaining byte of buffers, in order, as one message
+    long write(ByteBuffer[] buffers) throws IOException;
+
+    void close() throws IOException;
+
+    boolean isConnected();
+}
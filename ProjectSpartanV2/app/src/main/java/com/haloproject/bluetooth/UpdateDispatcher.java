@@ -0,0 +1,81 @@
+package com.haloproject.bluetooth;
+
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands telemetry updates to the UI without letting them queue up.
+ *
+ * However many frames arrive, at most one render is pending at a time, and it runs on a display
+ * frame so it always reads the latest snapshot rather than the one that triggered it. Renders are
+ * spaced at least 1 / maxRate apart, and nothing is scheduled at all while there is no listener,
+ * that is while no fragment showing telemetry is on screen.
+ *
+ * Must be created on the main thread; dataChanged can be called from any thread.
+ */
+public class UpdateDispatcher implements Choreographer.FrameCallback
+{
+    public static final int DEFAULT_MAX_RATE = 30;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    private final AtomicBoolean mPending = new AtomicBoolean();
+    private volatile Runnable mListener;
+    private volatile long mMinInterval = NANOS_PER_SECOND / DEFAULT_MAX_RATE;
+    //only touched on the main thread
+    private long mLastDispatch;
+    private volatile long mDispatches;
+
+    //0 renders on every display frame that has new data
+    public void setMaxRate(int perSecond)
+    {
+        mMinInterval = perSecond <= 0 ? 0 : NANOS_PER_SECOND / perSecond;
+    }
+
+    //null stops dispatching, a new listener gets the current data straight away
+    public void setListener(Runnable listener)
+    {
+        mListener = listener;
+        if(listener != null)
+        {
+            dataChanged();
+        }
+    }
+
+    public void dataChanged()
+    {
+        if(mListener != null && mPending.compareAndSet(false, true))
+        {
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    //renders so far, compare with the frames received to see how much was conflated
+    public long getDispatches()
+    {
+        return mDispatches;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        Runnable listener = mListener;
+        if(listener == null)
+        {
+            mPending.set(false);
+            return;
+        }
+        long wait = mLastDispatch + mMinInterval - frameTimeNanos;
+        if(wait > 0)
+        {
+            mChoreographer.postFrameCallbackDelayed(this, (wait + 999999) / 1000000);
+            return;
+        }
+        mLastDispatch = frameTimeNanos;
+        mDispatches++;
+        //cleared first so data arriving while the listener runs schedules the next render
+        mPending.set(false);
+        listener.run();
+    }
+}
@@ -0,0 +1,40 @@
+package com.haloproject.export;
+
+/**
+ * Reads back what {@link BitWriter} wrote. Reading past the end gives zero bits.
+ */
+class BitReader
+{
+    private final byte[] mBuffer;
+    private final int mLength;
+    private long mBit;
+
+    BitReader(byte[] buffer, int length)
+    {
+        mBuffer = buffer;
+        mLength = length;
+    }
+
+    boolean readBit()
+    {
+        return readBits(1) != 0;
+    }
+
+    //count from 0 to 64
+    long readBits(int count)
+    {
+        long value = 0;
+        while (count > 0)
+        {
+            int index = (int) (mBit >>> 3);
+            int available = 8 - (int) (mBit & 7);
+            int take = Math.min(available, count);
+            int current = index < mLength ? mBuffer[index] & 0xFF : 0;
+            int chunk = (current >>> (available - take)) & ((1 << take) - 1);
+            value = (value << take) | chunk;
+            count -= take;
+            mBit += take;
+        }
+        return value;
+    }
+}
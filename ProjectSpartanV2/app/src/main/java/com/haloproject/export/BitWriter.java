@@ -0,0 +1,66 @@
+package com.haloproject.export;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Appends bits most significant first to a growable buffer, reused from block to block.
+ */
+class BitWriter
+{
+    private byte[] mBuffer = new byte[1024];
+    //bits written so far
+    private long mBits;
+
+    void reset()
+    {
+        mBits = 0;
+    }
+
+    void writeBit(boolean bit)
+    {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    //the low count bits of value, count from 0 to 64
+    void writeBits(long value, int count)
+    {
+        ensureCapacity(count);
+        while (count > 0)
+        {
+            int index = (int) (mBits >>> 3);
+            int free = 8 - (int) (mBits & 7);
+            int take = Math.min(free, count);
+            int chunk = (int) (value >>> (count - take)) & ((1 << take) - 1);
+            if(free == 8)
+            {
+                mBuffer[index] = 0;
+            }
+            mBuffer[index] |= chunk << (free - take);
+            count -= take;
+            mBits += take;
+        }
+    }
+
+    //whole bytes used so far, the last one padded with zero bits
+    int getByteCount()
+    {
+        return (int) ((mBits + 7) >>> 3);
+    }
+
+    void writeTo(DataOutput out) throws IOException
+    {
+        out.write(mBuffer, 0, getByteCount());
+    }
+
+    private void ensureCapacity(int bits)
+    {
+        long needed = (mBits + bits + 7) >>> 3;
+        if(needed > mBuffer.length)
+        {
+            byte[] grown = new byte[(int) Math.max(mBuffer.length * 2L, needed)];
+            System.arraycopy(mBuffer, 0, grown, 0, getByteCount());
+            mBuffer = grown;
+        }
+    }
+}
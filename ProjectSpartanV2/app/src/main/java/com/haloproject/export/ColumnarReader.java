@@ -0,0 +1,287 @@
+package com.haloproject.export;
+
+import com.haloproject.telemetry.TelemetryChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Reads a file written by {@link ColumnarWriter}. Opening only reads the header and the block
+ * index; a block's column statistics are read the first time they are asked for, and read()
+ * decodes just the columns asked for. Columns are matched to channels by key, so a file written
+ * by another version of the app still reads, minus the channels this one doesn't know.
+ */
+public class ColumnarReader implements Closeable
+{
+    private static final int BLOCK_HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int COLUMN_HEADER_SIZE = 8 + 8 + 4 + 4;
+
+    /**
+     * The decoded rows of one block. Channels that were not asked for, or are not in the file,
+     * read as NaN.
+     */
+    public static class Block
+    {
+        private final long[] mTimes;
+        private final double[][] mValues = new double[TelemetryChannel.COUNT][];
+
+        Block(int rows)
+        {
+            mTimes = new long[rows];
+        }
+
+        public int getRowCount()
+        {
+            return mTimes.length;
+        }
+
+        public long getTime(int row)
+        {
+            return mTimes[row];
+        }
+
+        public double get(TelemetryChannel channel, int row)
+        {
+            double[] values = mValues[channel.ordinal()];
+            return values == null ? Double.NaN : values[row];
+        }
+    }
+
+    private final RandomAccessFile mFile;
+    //the channel of each column in the file, null for keys this version doesn't know
+    private final TelemetryChannel[] mColumns;
+    //column index of each channel by ordinal, -1 if the file has no such column
+    private final int[] mColumnOf = new int[TelemetryChannel.COUNT];
+    private final long[] mOffsets;
+    private final int[] mRows;
+    private final long[] mFirstTimes;
+    private final long[] mLastTimes;
+    private final double[][] mMins;
+    private final double[][] mMaxes;
+    private final int[][] mPresent;
+    private final int[][] mSizes;
+    private final int[] mTimeSizes;
+    private long mRowCount;
+
+    public ColumnarReader(File file) throws IOException
+    {
+        mFile = new RandomAccessFile(file, "r");
+        try
+        {
+            if(mFile.readInt() != ColumnarWriter.MAGIC)
+            {
+                throw new IOException(file + " is not a telemetry export");
+            }
+            int version = mFile.readUnsignedByte();
+            if(version != ColumnarWriter.VERSION)
+            {
+                throw new IOException("unsupported export version " + version);
+            }
+            mFile.readShort();
+            mColumns = new TelemetryChannel[mFile.readUnsignedByte()];
+            Arrays.fill(mColumnOf, -1);
+            for (int i = 0; i < mColumns.length; i++)
+            {
+                mColumns[i] = TelemetryChannel.fromKey(mFile.readUTF());
+                if(mColumns[i] != null)
+                {
+                    mColumnOf[mColumns[i].ordinal()] = i;
+                }
+            }
+
+            mFile.seek(mFile.length() - 12);
+            long footer = mFile.readLong();
+            if(mFile.readInt() != ColumnarWriter.FOOTER_MAGIC)
+            {
+                throw new IOException(file + " has no footer, the export did not finish");
+            }
+            mFile.seek(footer);
+            int blocks = mFile.readInt();
+            byte[] index = new byte[blocks * 28];
+            mFile.readFully(index);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            mOffsets = new long[blocks];
+            mRows = new int[blocks];
+            mFirstTimes = new long[blocks];
+            mLastTimes = new long[blocks];
+            for (int i = 0; i < blocks; i++)
+            {
+                mOffsets[i] = in.readLong();
+                mRows[i] = in.readInt();
+                mFirstTimes[i] = in.readLong();
+                mLastTimes[i] = in.readLong();
+                mRowCount += mRows[i];
+            }
+        } catch (IOException e)
+        {
+            mFile.close();
+            throw e;
+        }
+        int blocks = mOffsets.length;
+        mMins = new double[blocks][];
+        mMaxes = new double[blocks][];
+        mPresent = new int[blocks][];
+        mSizes = new int[blocks][];
+        mTimeSizes = new int[blocks];
+    }
+
+    public int getBlockCount()
+    {
+        return mOffsets.length;
+    }
+
+    public long getRowCount()
+    {
+        return mRowCount;
+    }
+
+    //true if the file has a column for channel
+    public boolean has(TelemetryChannel channel)
+    {
+        return mColumnOf[channel.ordinal()] >= 0;
+    }
+
+    public int getRowCount(int block)
+    {
+        return mRows[block];
+    }
+
+    public long getFirstTime(int block)
+    {
+        return mFirstTimes[block];
+    }
+
+    public long getLastTime(int block)
+    {
+        return mLastTimes[block];
+    }
+
+    //first block that may hold rows at or after time, getBlockCount() if none does
+    public int findBlock(long time)
+    {
+        int low = 0;
+        int high = mLastTimes.length;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(mLastTimes[middle] < time)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    //NaN if the block has no value for channel
+    public double getMin(int block, TelemetryChannel channel) throws IOException
+    {
+        int column = mColumnOf[channel.ordinal()];
+        return column < 0 ? Double.NaN : readStats(block).mMins[block][column];
+    }
+
+    public double getMax(int block, TelemetryChannel channel) throws IOException
+    {
+        int column = mColumnOf[channel.ordinal()];
+        return column < 0 ? Double.NaN : readStats(block).mMaxes[block][column];
+    }
+
+    //how many rows of block have a value for channel
+    public int getValueCount(int block, TelemetryChannel channel) throws IOException
+    {
+        int column = mColumnOf[channel.ordinal()];
+        return column < 0 ? 0 : readStats(block).mPresent[block][column];
+    }
+
+    //false when no value of channel in block can lie within low to high, the block can be skipped
+    public boolean mayContain(int block, TelemetryChannel channel, double low, double high) throws IOException
+    {
+        double min = getMin(block, channel);
+        return !Double.isNaN(min) && min <= high && getMax(block, channel) >= low;
+    }
+
+    //decodes the timestamps and every channel set in channels, a bit per ordinal
+    public Block read(int block, long channels) throws IOException
+    {
+        readStats(block);
+        int rows = mRows[block];
+        int columns = mColumns.length;
+        long position = mOffsets[block] + BLOCK_HEADER_SIZE + (long) columns * COLUMN_HEADER_SIZE;
+        Block result = new Block(rows);
+        byte[] buffer = new byte[mTimeSizes[block]];
+        mFile.seek(position);
+        mFile.readFully(buffer);
+        TimeColumn.decode(new BitReader(buffer, buffer.length), result.mTimes, rows);
+        position += mTimeSizes[block];
+        for (int column = 0; column < columns; column++)
+        {
+            int size = mSizes[block][column];
+            TelemetryChannel channel = mColumns[column];
+            if(channel != null && (channels & (1L << channel.ordinal())) != 0)
+            {
+                if(buffer.length < size)
+                {
+                    buffer = new byte[size];
+                }
+                mFile.seek(position);
+                mFile.readFully(buffer, 0, size);
+                double[] values = new double[rows];
+                ValueColumn.decode(new BitReader(buffer, size), values, rows);
+                result.mValues[channel.ordinal()] = values;
+            }
+            position += size;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        mFile.close();
+    }
+
+    private ColumnarReader readStats(int block) throws IOException
+    {
+        if(mSizes[block] != null)
+        {
+            return this;
+        }
+        int columns = mColumns.length;
+        byte[] header = new byte[BLOCK_HEADER_SIZE + columns * COLUMN_HEADER_SIZE];
+        mFile.seek(mOffsets[block]);
+        mFile.readFully(header);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+        if(in.readInt() != ColumnarWriter.BLOCK_MAGIC)
+        {
+            throw new IOException("block " + block + " is corrupt");
+        }
+        in.readInt();
+        in.readLong();
+        in.readLong();
+        mTimeSizes[block] = in.readInt();
+        double[] mins = new double[columns];
+        double[] maxes = new double[columns];
+        int[] present = new int[columns];
+        int[] sizes = new int[columns];
+        for (int i = 0; i < columns; i++)
+        {
+            mins[i] = in.readDouble();
+            maxes[i] = in.readDouble();
+            present[i] = in.readInt();
+            sizes[i] = in.readInt();
+        }
+        mMins[block] = mins;
+        mMaxes[block] = maxes;
+        mPresent[block] = present;
+        mSizes[block] = sizes;
+        return this;
+    }
+}
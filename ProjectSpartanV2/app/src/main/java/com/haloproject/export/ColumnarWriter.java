@@ -0,0 +1,167 @@
+package com.haloproject.export;
+
+import com.haloproject.telemetry.TelemetryChannel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes telemetry rows as a columnar file, one column per json.txt channel, streaming: only the
+ * block being filled is held, already compressed, so a whole day costs the same memory as a
+ * minute.
+ *
+ * The file is a header naming the columns, blocks of up to BLOCK_ROWS rows and a footer indexing
+ * the blocks. Each block starts with its row count, first and last timestamp and, per column, the
+ * min, max and count of values present, so a reader can skip blocks that cannot match without
+ * decoding them. Timestamps are stored as delta of deltas ({@link TimeColumn}), every channel as
+ * XORed doubles ({@link ValueColumn}); a channel with no value yet is NaN. All numbers are big
+ * endian.
+ */
+public class ColumnarWriter implements Closeable
+{
+    public static final int MAGIC = 0x48534358;
+    public static final int BLOCK_MAGIC = 0x424C4B31;
+    public static final int FOOTER_MAGIC = 0x46545231;
+    public static final int VERSION = 1;
+    public static final int BLOCK_ROWS = 1024;
+
+    private final DataOutputStream mOut;
+    private final TimeColumn mTime = new TimeColumn();
+    private final ValueColumn[] mColumns = new ValueColumn[TelemetryChannel.COUNT];
+    private int mRows;
+    private long mFirstTime;
+    private long mLastTime;
+    private long mTotalRows;
+    //block index for the footer, a few bytes per thousand rows
+    private long[] mBlockOffsets = new long[16];
+    private int[] mBlockRows = new int[16];
+    private long[] mBlockFirstTimes = new long[16];
+    private long[] mBlockLastTimes = new long[16];
+    private int mBlocks;
+    private boolean mClosed;
+
+    public ColumnarWriter(OutputStream out) throws IOException
+    {
+        mOut = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        for (int i = 0; i < mColumns.length; i++)
+        {
+            mColumns[i] = new ValueColumn();
+            mColumns[i].reset();
+        }
+        mOut.writeInt(MAGIC);
+        mOut.writeByte(VERSION);
+        mOut.writeShort(BLOCK_ROWS);
+        mOut.writeByte(TelemetryChannel.COUNT);
+        for (int i = 0; i < TelemetryChannel.COUNT; i++)
+        {
+            mOut.writeUTF(TelemetryChannel.get(i).key);
+        }
+    }
+
+    //one row, values indexed by channel ordinal
+    public void append(long time, double[] values) throws IOException
+    {
+        if(mRows == 0)
+        {
+            mFirstTime = time;
+        }
+        mLastTime = time;
+        mTime.append(time);
+        for (int i = 0; i < mColumns.length; i++)
+        {
+            mColumns[i].append(values[i]);
+        }
+        mTotalRows++;
+        if(++mRows == BLOCK_ROWS)
+        {
+            writeBlock();
+        }
+    }
+
+    public long getRowCount()
+    {
+        return mTotalRows;
+    }
+
+    //writes the last block and the footer, then closes the stream
+    @Override
+    public void close() throws IOException
+    {
+        if(mClosed)
+        {
+            return;
+        }
+        mClosed = true;
+        try
+        {
+            if(mRows > 0)
+            {
+                writeBlock();
+            }
+            long footer = mOut.size();
+            mOut.writeInt(mBlocks);
+            for (int i = 0; i < mBlocks; i++)
+            {
+                mOut.writeLong(mBlockOffsets[i]);
+                mOut.writeInt(mBlockRows[i]);
+                mOut.writeLong(mBlockFirstTimes[i]);
+                mOut.writeLong(mBlockLastTimes[i]);
+            }
+            mOut.writeLong(footer);
+            mOut.writeInt(FOOTER_MAGIC);
+        } finally
+        {
+            mOut.close();
+        }
+    }
+
+    private void writeBlock() throws IOException
+    {
+        if(mBlocks == mBlockOffsets.length)
+        {
+            int capacity = mBlocks * 2;
+            mBlockOffsets = copyOf(mBlockOffsets, capacity);
+            mBlockFirstTimes = copyOf(mBlockFirstTimes, capacity);
+            mBlockLastTimes = copyOf(mBlockLastTimes, capacity);
+            int[] rows = new int[capacity];
+            System.arraycopy(mBlockRows, 0, rows, 0, mBlocks);
+            mBlockRows = rows;
+        }
+        mBlockOffsets[mBlocks] = mOut.size();
+        mBlockRows[mBlocks] = mRows;
+        mBlockFirstTimes[mBlocks] = mFirstTime;
+        mBlockLastTimes[mBlocks] = mLastTime;
+        mBlocks++;
+
+        mOut.writeInt(BLOCK_MAGIC);
+        mOut.writeInt(mRows);
+        mOut.writeLong(mFirstTime);
+        mOut.writeLong(mLastTime);
+        mOut.writeInt(mTime.getBits().getByteCount());
+        for (ValueColumn column : mColumns)
+        {
+            mOut.writeDouble(column.getMin());
+            mOut.writeDouble(column.getMax());
+            mOut.writeInt(column.getPresent());
+            mOut.writeInt(column.getBits().getByteCount());
+        }
+        mTime.getBits().writeTo(mOut);
+        mTime.reset();
+        for (ValueColumn column : mColumns)
+        {
+            column.getBits().writeTo(mOut);
+            column.reset();
+        }
+        mRows = 0;
+    }
+
+    private static long[] copyOf(long[] array, int capacity)
+    {
+        long[] copy = new long[capacity];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, capacity));
+        return copy;
+    }
+}
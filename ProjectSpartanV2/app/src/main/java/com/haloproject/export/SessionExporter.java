@@ -0,0 +1,52 @@
+package com.haloproject.export;
+
+import com.haloproject.journal.JournalReader;
+import com.haloproject.telemetry.TelemetryChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Exports a stretch of the telemetry journal as a {@link ColumnarWriter} file. Frames are read and
+ * written one at a time, so a day of telemetry never has to fit in memory. Each row holds every
+ * channel's latest value as of that frame.
+ */
+public final class SessionExporter
+{
+    private SessionExporter()
+    {
+    }
+
+    //frames received from from up to but not including to, returns the number of rows written
+    public static long export(File journal, long from, long to, OutputStream out) throws IOException
+    {
+        JournalReader reader = new JournalReader(journal);
+        ColumnarWriter writer = new ColumnarWriter(out);
+        try
+        {
+            double[] values = new double[TelemetryChannel.COUNT];
+            if(reader.seek(from))
+            {
+                while (reader.next() && reader.getTime() < to)
+                {
+                    for (int i = 0; i < values.length; i++)
+                    {
+                        values[i] = reader.get(TelemetryChannel.get(i));
+                    }
+                    writer.append(reader.getTime(), values);
+                }
+            }
+        } finally
+        {
+            try
+            {
+                reader.close();
+            } finally
+            {
+                writer.close();
+            }
+        }
+        return writer.getRowCount();
+    }
+}
@@ -0,0 +1,104 @@
+package com.haloproject.export;
+
+/**
+ * Delta of delta timestamps, as in Facebook's Gorilla. Frames arrive at a steady rate, so the
+ * change in spacing is usually zero and costs a single bit; jitter of a few milliseconds costs
+ * nine. The first timestamp of a block is stored whole and the first delta is encoded against a
+ * previous delta of zero.
+ */
+class TimeColumn
+{
+    private final BitWriter mBits = new BitWriter();
+    private long mPrevious;
+    private long mPreviousDelta;
+    private int mCount;
+
+    void reset()
+    {
+        mBits.reset();
+        mCount = 0;
+    }
+
+    void append(long time)
+    {
+        if(mCount++ == 0)
+        {
+            mBits.writeBits(time, 64);
+            mPrevious = time;
+            mPreviousDelta = 0;
+            return;
+        }
+        long delta = time - mPrevious;
+        long deltaOfDelta = delta - mPreviousDelta;
+        mPrevious = time;
+        mPreviousDelta = delta;
+        if(deltaOfDelta == 0)
+        {
+            mBits.writeBit(false);
+        }
+        else if(deltaOfDelta >= -63 && deltaOfDelta <= 64)
+        {
+            mBits.writeBits(0x2, 2);
+            mBits.writeBits(deltaOfDelta + 63, 7);
+        }
+        else if(deltaOfDelta >= -255 && deltaOfDelta <= 256)
+        {
+            mBits.writeBits(0x6, 3);
+            mBits.writeBits(deltaOfDelta + 255, 9);
+        }
+        else if(deltaOfDelta >= -2047 && deltaOfDelta <= 2048)
+        {
+            mBits.writeBits(0xE, 4);
+            mBits.writeBits(deltaOfDelta + 2047, 12);
+        }
+        else
+        {
+            mBits.writeBits(0xF, 4);
+            mBits.writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    BitWriter getBits()
+    {
+        return mBits;
+    }
+
+    static void decode(BitReader in, long[] out, int count)
+    {
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if(i == 0)
+            {
+                previous = in.readBits(64);
+                out[0] = previous;
+                continue;
+            }
+            long deltaOfDelta;
+            if(!in.readBit())
+            {
+                deltaOfDelta = 0;
+            }
+            else if(!in.readBit())
+            {
+                deltaOfDelta = in.readBits(7) - 63;
+            }
+            else if(!in.readBit())
+            {
+                deltaOfDelta = in.readBits(9) - 255;
+            }
+            else if(!in.readBit())
+            {
+                deltaOfDelta = in.readBits(12) - 2047;
+            }
+            else
+            {
+                deltaOfDelta = in.readBits(64);
+            }
+            previousDelta += deltaOfDelta;
+            previous += previousDelta;
+            out[i] = previous;
+        }
+    }
+}
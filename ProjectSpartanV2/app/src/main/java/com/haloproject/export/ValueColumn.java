@@ -0,0 +1,118 @@
+package com.haloproject.export;
+
+/**
+ * XOR compressed doubles, as in Facebook's Gorilla, plus the block's min and max. Each value is
+ * XORed with the one before: a repeat costs one bit, and a change that only touches the same
+ * middle bits as the last change reuses its window instead of storing it again. Switches and
+ * battery percentages sit still for minutes and cost next to nothing; temperatures with two
+ * decimals usually keep their sign, exponent and top of the mantissa.
+ */
+class ValueColumn
+{
+    private final BitWriter mBits = new BitWriter();
+    private long mPrevious;
+    private int mLeading;
+    private int mTrailing;
+    private int mCount;
+    private int mPresent;
+    private double mMin;
+    private double mMax;
+
+    void reset()
+    {
+        mBits.reset();
+        mCount = 0;
+        mPresent = 0;
+        mMin = Double.NaN;
+        mMax = Double.NaN;
+    }
+
+    void append(double value)
+    {
+        if(!Double.isNaN(value))
+        {
+            mMin = mPresent == 0 ? value : Math.min(mMin, value);
+            mMax = mPresent == 0 ? value : Math.max(mMax, value);
+            mPresent++;
+        }
+        long bits = Double.doubleToRawLongBits(value);
+        if(mCount++ == 0)
+        {
+            mBits.writeBits(bits, 64);
+            mPrevious = bits;
+            mLeading = -1;
+            return;
+        }
+        long xor = bits ^ mPrevious;
+        mPrevious = bits;
+        if(xor == 0)
+        {
+            mBits.writeBit(false);
+            return;
+        }
+        mBits.writeBit(true);
+        //five bits hold the leading zero count
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if(mLeading >= 0 && leading >= mLeading && trailing >= mTrailing)
+        {
+            mBits.writeBit(false);
+            mBits.writeBits(xor >>> mTrailing, 64 - mLeading - mTrailing);
+            return;
+        }
+        int meaningful = 64 - leading - trailing;
+        mBits.writeBit(true);
+        mBits.writeBits(leading, 5);
+        //1 to 64 stored as 0 to 63
+        mBits.writeBits(meaningful - 1, 6);
+        mBits.writeBits(xor >>> trailing, meaningful);
+        mLeading = leading;
+        mTrailing = trailing;
+    }
+
+    BitWriter getBits()
+    {
+        return mBits;
+    }
+
+    //NaN if the block has no value for the channel
+    double getMin()
+    {
+        return mMin;
+    }
+
+    double getMax()
+    {
+        return mMax;
+    }
+
+    int getPresent()
+    {
+        return mPresent;
+    }
+
+    static void decode(BitReader in, double[] out, int count)
+    {
+        long previous = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if(i == 0)
+            {
+                previous = in.readBits(64);
+            }
+            else if(in.readBit())
+            {
+                if(in.readBit())
+                {
+                    leading = (int) in.readBits(5);
+                    int meaningful = (int) in.readBits(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                previous ^= in.readBits(64 - leading - trailing) << trailing;
+            }
+            out[i] = Double.longBitsToDouble(previous);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.haloproject.journal;
+
+import com.haloproject.telemetry.TelemetryChannel;
+
+/**
+ * Record format of the journal. A record is one length byte, a CRC-32C of the payload and the
+ * payload itself:
+ *
+ * flags, receive time, sequence, suit time, channel mask, then one value per channel in the mask.
+ *
+ * Everything after the flags is a varint delta against the previous record, so a frame where
+ * only the temperatures moved costs a couple of bytes per channel. A keyframe resets every
+ * baseline to zero, which makes its deltas absolute, so decoding can start at any keyframe.
+ * Values are stored in hundredths like the binary link protocol.
+ */
+final class JournalCodec
+{
+    static final int RECORD_HEADER = 5;
+    static final int MAX_PAYLOAD = 255;
+    static final int FLAG_KEYFRAME = 1;
+    static final double SCALE = 100.0;
+
+    long time;
+    long sequence;
+    long sourceTime;
+    long mask;
+    boolean keyframe;
+    final long[] values = new long[TelemetryChannel.COUNT];
+    //-1 once a read ran off the end of the payload
+    private int mPosition;
+
+    void resetBaseline()
+    {
+        time = 0;
+        sequence = 0;
+        sourceTime = 0;
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = 0;
+        }
+    }
+
+    /**
+     * Writes the payload for one frame into out and moves the baseline to it. scaled holds every
+     * channel in hundredths, only those in mask are written. Returns the payload length.
+     */
+    int encode(boolean keyframe, long time, long sequence, long sourceTime, long mask, long[] scaled, byte[] out, int offset)
+    {
+        if(keyframe)
+        {
+            resetBaseline();
+        }
+        int position = offset;
+        out[position++] = (byte) (keyframe ? FLAG_KEYFRAME : 0);
+        position = writeSigned(out, position, time - this.time);
+        position = writeSigned(out, position, sequence - this.sequence);
+        position = writeSigned(out, position, sourceTime - this.sourceTime);
+        position = writeVarint(out, position, mask);
+        for (int i = 0; i < values.length; i++)
+        {
+            if((mask & (1L << i)) != 0)
+            {
+                position = writeSigned(out, position, scaled[i] - values[i]);
+                values[i] = scaled[i];
+            }
+        }
+        this.time = time;
+        this.sequence = sequence;
+        this.sourceTime = sourceTime;
+        this.mask = mask;
+        this.keyframe = keyframe;
+        return position - offset;
+    }
+
+    //applies the payload to the baseline, returns false if it doesn't parse
+    boolean decode(byte[] payload, int offset, int length)
+    {
+        int end = offset + length;
+        mPosition = offset;
+        if(length < 1)
+        {
+            return false;
+        }
+        boolean keyframe = (payload[mPosition++] & FLAG_KEYFRAME) != 0;
+        if(keyframe)
+        {
+            resetBaseline();
+        }
+        long time = this.time + readSigned(payload, end);
+        long sequence = this.sequence + readSigned(payload, end);
+        long sourceTime = this.sourceTime + readSigned(payload, end);
+        long mask = readVarint(payload, end);
+        if(mPosition < 0)
+        {
+            return false;
+        }
+        for (int i = 0; i < values.length; i++)
+        {
+            if((mask & (1L << i)) != 0)
+            {
+                values[i] += readSigned(payload, end);
+            }
+        }
+        if(mPosition != end)
+        {
+            return false;
+        }
+        this.time = time;
+        this.sequence = sequence;
+        this.sourceTime = sourceTime;
+        this.mask = mask;
+        this.keyframe = keyframe;
+        return true;
+    }
+
+    private long readSigned(byte[] in, int end)
+    {
+        long raw = readVarint(in, end);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    private long readVarint(byte[] in, int end)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64 && mPosition >= 0; shift += 7)
+        {
+            if(mPosition >= end)
+            {
+                break;
+            }
+            int b = in[mPosition++];
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        mPosition = -1;
+        return 0;
+    }
+
+    private static int writeSigned(byte[] out, int position, long value)
+    {
+        return writeVarint(out, position, (value << 1) ^ (value >> 63));
+    }
+
+    private static int writeVarint(byte[] out, int position, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
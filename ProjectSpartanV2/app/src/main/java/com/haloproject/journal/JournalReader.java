@@ -0,0 +1,143 @@
+package com.haloproject.journal;
+
+import com.haloproject.telemetry.TelemetryChannel;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays a journal written by {@link TelemetryJournal}, oldest frame first. seek() jumps to a
+ * time through the segment names and the keyframe index, so it decodes at most one keyframe
+ * interval. Reading the segment that is still being written is fine, the reader stops at the
+ * last complete record.
+ */
+public class JournalReader
+{
+    private final File[] mFiles;
+    private final JournalCodec mCodec = new JournalCodec();
+    private JournalSegment mSegment;
+    private int mFileIndex = -1;
+    private int mOffset;
+    private long mKnown;
+    private boolean mPending;
+
+    public JournalReader(File directory)
+    {
+        mFiles = JournalSegment.list(directory);
+    }
+
+    //moves to the first frame at or after time, false if there is none
+    public boolean seek(long time) throws IOException
+    {
+        int index = 0;
+        for (int i = 0; i < mFiles.length; i++)
+        {
+            if(JournalSegment.startTimeOf(mFiles[i]) <= time)
+            {
+                index = i;
+            }
+        }
+        mPending = false;
+        if(!openSegment(index))
+        {
+            return false;
+        }
+        mOffset = mSegment.seek(time);
+        while (next())
+        {
+            if(mCodec.time >= time)
+            {
+                //next() hands this frame out again
+                mPending = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //advances to the next frame, false at the end of the journal
+    public boolean next() throws IOException
+    {
+        if(mPending)
+        {
+            mPending = false;
+            return true;
+        }
+        while (true)
+        {
+            if(mSegment == null && !openSegment(mFileIndex + 1))
+            {
+                return false;
+            }
+            int next = mSegment.read(mOffset, mCodec);
+            if(next >= 0)
+            {
+                mOffset = next;
+                mKnown = mCodec.keyframe ? mCodec.mask : mKnown | mCodec.mask;
+                return true;
+            }
+            //every segment starts with a keyframe, so decoding picks up cleanly in the next one
+            mSegment.close();
+            mSegment = null;
+            if(mFileIndex + 1 >= mFiles.length)
+            {
+                return false;
+            }
+        }
+    }
+
+    //phone clock when the frame was received
+    public long getTime()
+    {
+        return mCodec.time;
+    }
+
+    public long getSequence()
+    {
+        return mCodec.sequence;
+    }
+
+    public long getSourceTime()
+    {
+        return mCodec.sourceTime;
+    }
+
+    //a bit per channel ordinal that this frame carried
+    public long getUpdated()
+    {
+        return mCodec.mask;
+    }
+
+    //latest value of channel as of this frame, NaN if it hasn't been seen since the last keyframe
+    public double get(TelemetryChannel channel)
+    {
+        if((mKnown & (1L << channel.ordinal())) == 0)
+        {
+            return Double.NaN;
+        }
+        return mCodec.values[channel.ordinal()] / JournalCodec.SCALE;
+    }
+
+    public void close() throws IOException
+    {
+        if(mSegment != null)
+        {
+            mSegment.close();
+            mSegment = null;
+        }
+    }
+
+    private boolean openSegment(int index) throws IOException
+    {
+        close();
+        if(index >= mFiles.length)
+        {
+            return false;
+        }
+        mFileIndex = index;
+        mSegment = JournalSegment.open(mFiles[index], false);
+        mOffset = JournalSegment.HEADER_SIZE;
+        mKnown = 0;
+        return true;
+    }
+}
@@ -0,0 +1,357 @@
+package com.haloproject.journal;
+
+import com.haloproject.bluetooth.Crc32c;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * One memory mapped journal file. A segment is created at its full size so its tail is zeros,
+ * records are appended behind a small header and the first zero length byte marks the end.
+ *
+ * Opening a segment walks its records and stops at the first one that is cut short or fails its
+ * checksum, which is where a crash interrupted the last write. Everything from there on is zeroed
+ * so the segment can be appended to again. Keyframes are indexed by time while walking; sealed
+ * segments keep that index in a side file so readers can seek without walking them.
+ */
+final class JournalSegment
+{
+    static final int MAGIC = 0x484A4E4C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final String SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int MAX_RECORD = JournalCodec.RECORD_HEADER + JournalCodec.MAX_PAYLOAD;
+
+    final File file;
+    final long startTime;
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    //reads go through their own view so they never move the write position
+    private final ByteBuffer mView;
+    private final byte[] mPayload = new byte[JournalCodec.MAX_PAYLOAD];
+    private int mEnd = HEADER_SIZE;
+    private long[] mIndexTimes = new long[64];
+    private int[] mIndexOffsets = new int[64];
+    private int mIndexSize;
+
+    private JournalSegment(File file, long startTime, RandomAccessFile raf, MappedByteBuffer buffer)
+    {
+        this.file = file;
+        this.startTime = startTime;
+        mFile = raf;
+        mBuffer = buffer;
+        mView = buffer.duplicate();
+    }
+
+    static JournalSegment create(File directory, long startTime, int size) throws IOException
+    {
+        File file = new File(directory, String.format("%013d", startTime) + SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.setLength(size);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, startTime);
+            return new JournalSegment(file, startTime, raf, buffer);
+        } catch (IOException e)
+        {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps an existing segment. Writable segments are recovered and zeroed after their last good
+     * record; read only segments use their index file if they have one.
+     */
+    static JournalSegment open(File file, boolean writable) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        try
+        {
+            long length = raf.length();
+            if(length < HEADER_SIZE)
+            {
+                throw new IOException("truncated journal segment " + file);
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, length);
+            if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            {
+                throw new IOException("not a journal segment " + file);
+            }
+            JournalSegment segment = new JournalSegment(file, buffer.getLong(8), raf, buffer);
+            if(writable || !segment.loadIndex())
+            {
+                segment.recover(writable);
+            }
+            return segment;
+        } catch (IOException e)
+        {
+            raf.close();
+            throw e;
+        }
+    }
+
+    //segment files in the directory, oldest first
+    static File[] list(File directory)
+    {
+        File[] files = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if(files == null)
+        {
+            return new File[0];
+        }
+        //names are zero padded start times, so name order is time order
+        Arrays.sort(files);
+        return files;
+    }
+
+    static long startTimeOf(File file)
+    {
+        String name = file.getName();
+        try
+        {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    static void delete(File file)
+    {
+        file.delete();
+        indexFile(file).delete();
+    }
+
+    boolean hasRoom()
+    {
+        return mBuffer.capacity() - mEnd >= MAX_RECORD;
+    }
+
+    int getEnd()
+    {
+        return mEnd;
+    }
+
+    void append(byte[] payload, int length, long time, boolean keyframe)
+    {
+        if(keyframe)
+        {
+            addIndex(time, mEnd);
+        }
+        //the length goes last so a torn record never looks complete
+        mBuffer.putInt(mEnd + 1, Crc32c.compute(payload, 0, length));
+        mBuffer.position(mEnd + JournalCodec.RECORD_HEADER);
+        mBuffer.put(payload, 0, length);
+        mBuffer.put(mEnd, (byte) length);
+        mEnd += JournalCodec.RECORD_HEADER + length;
+    }
+
+    /**
+     * Reads the record at offset into codec. Returns the offset of the next record, or -1 at the
+     * end of the segment or at a damaged record.
+     */
+    int read(int offset, JournalCodec codec)
+    {
+        int length = readPayload(offset);
+        if(length < 0 || !codec.decode(mPayload, 0, length))
+        {
+            return -1;
+        }
+        return offset + JournalCodec.RECORD_HEADER + length;
+    }
+
+    //offset of the last keyframe at or before time, or the first record
+    int seek(long time)
+    {
+        int low = 0;
+        int high = mIndexSize - 1;
+        int found = -1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            if(mIndexTimes[middle] <= time)
+            {
+                found = middle;
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        return found < 0 ? HEADER_SIZE : mIndexOffsets[found];
+    }
+
+    void force()
+    {
+        mBuffer.force();
+    }
+
+    //flushes, writes the index next to the segment and trims the unused tail
+    void seal() throws IOException
+    {
+        mBuffer.force();
+        writeIndex();
+        mFile.setLength(mEnd);
+        mFile.close();
+    }
+
+    void close() throws IOException
+    {
+        mFile.close();
+    }
+
+    private int readPayload(int offset)
+    {
+        if(offset + JournalCodec.RECORD_HEADER > mBuffer.capacity())
+        {
+            return -1;
+        }
+        int length = mBuffer.get(offset) & 0xFF;
+        if(length == 0 || offset + JournalCodec.RECORD_HEADER + length > mBuffer.capacity())
+        {
+            return -1;
+        }
+        int crc = mBuffer.getInt(offset + 1);
+        mView.position(offset + JournalCodec.RECORD_HEADER);
+        mView.get(mPayload, 0, length);
+        if(crc != Crc32c.compute(mPayload, 0, length))
+        {
+            return -1;
+        }
+        return length;
+    }
+
+    private void recover(boolean writable)
+    {
+        JournalCodec codec = new JournalCodec();
+        int offset = HEADER_SIZE;
+        while (true)
+        {
+            int length = readPayload(offset);
+            if(length < 0 || !codec.decode(mPayload, 0, length))
+            {
+                break;
+            }
+            if(codec.keyframe)
+            {
+                addIndex(codec.time, offset);
+            }
+            offset += JournalCodec.RECORD_HEADER + length;
+        }
+        mEnd = offset;
+        if(writable)
+        {
+            for (int i = offset; i < mBuffer.capacity(); i++)
+            {
+                if(mBuffer.get(i) != 0)
+                {
+                    mBuffer.put(i, (byte) 0);
+                }
+            }
+        }
+    }
+
+    private void addIndex(long time, int offset)
+    {
+        if(mIndexSize == mIndexTimes.length)
+        {
+            mIndexTimes = Arrays.copyOf(mIndexTimes, mIndexSize * 2);
+            mIndexOffsets = Arrays.copyOf(mIndexOffsets, mIndexSize * 2);
+        }
+        mIndexTimes[mIndexSize] = time;
+        mIndexOffsets[mIndexSize] = offset;
+        mIndexSize++;
+    }
+
+    private static File indexFile(File segment)
+    {
+        String name = segment.getName();
+        return new File(segment.getParentFile(), name.substring(0, name.length() - SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private void writeIndex() throws IOException
+    {
+        File index = indexFile(file);
+        File temporary = new File(index.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary));
+        try
+        {
+            out.writeInt(mEnd);
+            out.writeInt(mIndexSize);
+            for (int i = 0; i < mIndexSize; i++)
+            {
+                out.writeLong(mIndexTimes[i]);
+                out.writeInt(mIndexOffsets[i]);
+            }
+        } finally
+        {
+            out.close();
+        }
+        if(!temporary.renameTo(index))
+        {
+            throw new IOException("could not write " + index);
+        }
+    }
+
+    //false if there is no usable index file, the segment is walked instead
+    private boolean loadIndex()
+    {
+        File index = indexFile(file);
+        if(!index.exists())
+        {
+            return false;
+        }
+        try
+        {
+            DataInputStream in = new DataInputStream(new FileInputStream(index));
+            try
+            {
+                int end = in.readInt();
+                int size = in.readInt();
+                if(end > mBuffer.capacity() || size < 0)
+                {
+                    return false;
+                }
+                mIndexTimes = new long[Math.max(size, 1)];
+                mIndexOffsets = new int[Math.max(size, 1)];
+                for (int i = 0; i < size; i++)
+                {
+                    mIndexTimes[i] = in.readLong();
+                    mIndexOffsets[i] = in.readInt();
+                }
+                mIndexSize = size;
+                mEnd = end;
+                return true;
+            } finally
+            {
+                in.close();
+            }
+        } catch (IOException e)
+        {
+            mIndexSize = 0;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.haloproject.journal;
+
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.Gauge;
+import com.haloproject.metrics.Histogram;
+import com.haloproject.metrics.MetricsRegistry;
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Append only journal of every telemetry frame, kept in memory mapped segment files.
+ *
+ * append() only copies the frame into a preallocated queue, so it is safe on the socket reader
+ * thread; a dedicated thread encodes, writes, rotates and flushes. A frame where only a few
+ * channels moved takes a few dozen bytes, a day at one frame a second is around three megabytes.
+ * Segments are rotated at SEGMENT_SIZE and the oldest are deleted past MAX_SEGMENTS. Anything in
+ * the mapped pages survives the app being killed; flushes every FLUSH_INTERVAL bound what a power
+ * loss can take, and a damaged tail is cut off when the journal is opened again.
+ */
+public class TelemetryJournal
+{
+    public static final int SEGMENT_SIZE = 1 << 20;
+    public static final int MAX_SEGMENTS = 64;
+    public static final int QUEUE_CAPACITY = 256;
+    public static final long FLUSH_INTERVAL = 5 * 1000;
+    //a keyframe every this many records bounds how far a seek has to decode
+    static final int KEYFRAME_INTERVAL = 64;
+    private static final long RETRY_INTERVAL = 10 * 1000;
+    private static final int COUNT = TelemetryChannel.COUNT;
+
+    private final File mDirectory;
+    private final Object mLock = new Object();
+    private final long[] mTimes = new long[QUEUE_CAPACITY];
+    private final long[] mSequences = new long[QUEUE_CAPACITY];
+    private final long[] mSourceTimes = new long[QUEUE_CAPACITY];
+    private final long[] mMasks = new long[QUEUE_CAPACITY];
+    private final long[] mValues = new long[QUEUE_CAPACITY * COUNT];
+    private int mHead;
+    private int mCount;
+    private volatile boolean mRunning = true;
+    private final Thread mThread;
+    private final Counter mFrames;
+    private final Counter mBytes;
+    private final Counter mDropped;
+    private final Counter mErrors;
+    private final Histogram mFlushLatency;
+    private volatile int mSegments;
+
+    public TelemetryJournal(File directory, MetricsRegistry metrics)
+    {
+        mDirectory = directory;
+        mFrames = metrics.counter("journal frames");
+        mBytes = metrics.counter("journal bytes");
+        mDropped = metrics.counter("journal dropped");
+        mErrors = metrics.counter("journal errors");
+        mFlushLatency = metrics.histogram("journal flush us");
+        metrics.register("journal segments", new Gauge()
+        {
+            @Override
+            public long getValue()
+            {
+                return mSegments;
+            }
+        });
+        mThread = new Thread(new WriterRunnable(), "TelemetryJournal");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    public File getDirectory()
+    {
+        return mDirectory;
+    }
+
+    /**
+     * Queues the channels in updated from frame. Never blocks and never touches the disk, returns
+     * false and counts the frame as dropped if the writer has fallen a whole queue behind.
+     */
+    public boolean append(TelemetryFrame frame, long updated)
+    {
+        synchronized (mLock)
+        {
+            if(mCount == QUEUE_CAPACITY)
+            {
+                mDropped.increment();
+                return false;
+            }
+            int slot = (mHead + mCount) % QUEUE_CAPACITY;
+            long mask = 0;
+            int base = slot * COUNT;
+            for (int i = 0; i < COUNT; i++)
+            {
+                TelemetryChannel channel = TelemetryChannel.get(i);
+                if((updated & (1L << i)) != 0 && frame.has(channel))
+                {
+                    mask |= 1L << i;
+                    mValues[base + i] = Math.round(frame.get(channel) * JournalCodec.SCALE);
+                }
+            }
+            mTimes[slot] = frame.getReceivedTime();
+            mSequences[slot] = frame.getSequence();
+            mSourceTimes[slot] = frame.getSourceTime();
+            mMasks[slot] = mask;
+            mCount++;
+            mLock.notify();
+            return true;
+        }
+    }
+
+    //flushes and closes the current segment, queued frames that weren't written yet are lost
+    public void shutdown()
+    {
+        mRunning = false;
+        mThread.interrupt();
+    }
+
+    //waits for the writer to close the segment after shutdown()
+    void join() throws InterruptedException
+    {
+        mThread.join();
+    }
+
+    private class WriterRunnable implements Runnable
+    {
+        private final JournalCodec mCodec = new JournalCodec();
+        private final byte[] mPayload = new byte[JournalCodec.MAX_PAYLOAD];
+        //latest value of every channel, keyframes repeat all of them
+        private final long[] mLatest = new long[COUNT];
+        private long mKnown;
+        private final long[] mScaled = new long[COUNT];
+        private JournalSegment mSegment;
+        private int mSinceKeyframe;
+        private long mLastFlush;
+        private boolean mDirty;
+        private long mRetryAt;
+
+        @Override
+        public void run()
+        {
+            openLatest();
+            long time = 0;
+            long sequence = 0;
+            long sourceTime = 0;
+            long mask = 0;
+            while (mRunning)
+            {
+                boolean took = false;
+                synchronized (mLock)
+                {
+                    try
+                    {
+                        while (mCount == 0)
+                        {
+                            long wait = mDirty ? mLastFlush + FLUSH_INTERVAL - System.currentTimeMillis() : 0;
+                            if(mDirty && wait <= 0)
+                            {
+                                break;
+                            }
+                            mLock.wait(wait);
+                        }
+                    } catch (InterruptedException e)
+                    {
+                        break;
+                    }
+                    if(mCount > 0)
+                    {
+                        int slot = mHead;
+                        System.arraycopy(mValues, slot * COUNT, mScaled, 0, COUNT);
+                        time = mTimes[slot];
+                        sequence = mSequences[slot];
+                        sourceTime = mSourceTimes[slot];
+                        mask = mMasks[slot];
+                        mHead = (mHead + 1) % QUEUE_CAPACITY;
+                        mCount--;
+                        took = true;
+                    }
+                }
+                if(took)
+                {
+                    write(time, sequence, sourceTime, mask);
+                }
+                if(mDirty && System.currentTimeMillis() - mLastFlush >= FLUSH_INTERVAL)
+                {
+                    flush();
+                }
+            }
+            if(mSegment != null)
+            {
+                flush();
+                try
+                {
+                    mSegment.close();
+                } catch (IOException e)
+                {
+                    mErrors.increment();
+                }
+                mSegment = null;
+            }
+        }
+
+        //carries on in the newest segment after cutting off anything a crash left half written
+        private void openLatest()
+        {
+            mDirectory.mkdirs();
+            File[] files = JournalSegment.list(mDirectory);
+            mSegments = files.length;
+            if(files.length == 0)
+            {
+                return;
+            }
+            try
+            {
+                mSegment = JournalSegment.open(files[files.length - 1], true);
+            } catch (IOException e)
+            {
+                mErrors.increment();
+            }
+            //the decoder state before a restart is unknown, so the next record has to be a keyframe
+            mSinceKeyframe = KEYFRAME_INTERVAL;
+        }
+
+        private void write(long time, long sequence, long sourceTime, long mask)
+        {
+            for (int i = 0; i < COUNT; i++)
+            {
+                if((mask & (1L << i)) != 0)
+                {
+                    mLatest[i] = mScaled[i];
+                }
+            }
+            mKnown |= mask;
+            try
+            {
+                if(mSegment == null || !mSegment.hasRoom())
+                {
+                    if(time < mRetryAt)
+                    {
+                        mDropped.increment();
+                        return;
+                    }
+                    rotate(time);
+                }
+                boolean keyframe = mSinceKeyframe >= KEYFRAME_INTERVAL;
+                int length = keyframe
+                        ? mCodec.encode(true, time, sequence, sourceTime, mKnown, mLatest, mPayload, 0)
+                        : mCodec.encode(false, time, sequence, sourceTime, mask, mScaled, mPayload, 0);
+                mSegment.append(mPayload, length, time, keyframe);
+                mSinceKeyframe = keyframe ? 1 : mSinceKeyframe + 1;
+                mDirty = true;
+                mFrames.increment();
+                mBytes.add(length + JournalCodec.RECORD_HEADER);
+            } catch (IOException e)
+            {
+                //usually a full disk, give it a while before trying another segment
+                mErrors.increment();
+                mDropped.increment();
+                mSegment = null;
+                mRetryAt = time + RETRY_INTERVAL;
+            }
+        }
+
+        private void rotate(long time) throws IOException
+        {
+            if(mSegment != null)
+            {
+                JournalSegment sealed = mSegment;
+                mSegment = null;
+                sealed.seal();
+            }
+            File[] files = JournalSegment.list(mDirectory);
+            //a segment name is its start time, a clock that went backwards must not reuse one
+            long start = time;
+            if(files.length > 0)
+            {
+                start = Math.max(start, JournalSegment.startTimeOf(files[files.length - 1]) + 1);
+            }
+            for (int i = 0; i <= files.length - MAX_SEGMENTS; i++)
+            {
+                JournalSegment.delete(files[i]);
+            }
+            mSegment = JournalSegment.create(mDirectory, start, SEGMENT_SIZE);
+            mSegments = Math.min(files.length + 1, MAX_SEGMENTS);
+            mSinceKeyframe = KEYFRAME_INTERVAL;
+        }
+
+        private void flush()
+        {
+            if(mSegment != null && mDirty)
+            {
+                long start = System.nanoTime();
+                mSegment.force();
+                mFlushLatency.record((System.nanoTime() - start) / 1000);
+            }
+            mDirty = false;
+            mLastFlush = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.haloproject.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic counter that many threads can bump without contending on one cache line.
+ *
+ * Each thread adds into one of a few stripes picked from its id, and reads sum the stripes. The
+ * stripes sit a cache line apart so two threads on different cores never share one.
+ */
+public class Counter
+{
+    //longs per cache line, only the first slot of each line is used
+    private static final int PAD = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PAD);
+
+    private static int stripes()
+    {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 16)
+        {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    public void increment()
+    {
+        add(1);
+    }
+
+    public void add(long delta)
+    {
+        long id = Thread.currentThread().getId();
+        int stripe = (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+        mCells.addAndGet(stripe * PAD, delta);
+    }
+
+    public long get()
+    {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++)
+        {
+            sum += mCells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    //not atomic, an add racing with the reset may survive it
+    public void reset()
+    {
+        for (int i = 0; i < STRIPES; i++)
+        {
+            mCells.set(i * PAD, 0);
+        }
+    }
+}
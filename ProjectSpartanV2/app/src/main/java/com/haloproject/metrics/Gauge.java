@@ -0,0 +1,7 @@
+package com.haloproject.metrics;
+
+//a value that is read when a snapshot is taken, like a queue depth or an uptime
+public interface Gauge
+{
+    long getValue();
+}
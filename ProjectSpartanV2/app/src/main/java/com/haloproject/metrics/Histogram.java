@@ -0,0 +1,150 @@
+package com.haloproject.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed bucket histogram of non negative long values, typically latencies in milliseconds.
+ *
+ * Buckets are log-linear: every power of two is split into 16 equal buckets, so any recorded
+ * value is reported within about 6% of its true value. The bucket array is allocated once and
+ * recording is lock free, so any number of threads can record while another reads percentiles.
+ * Recording touches one bucket, a striped sum and, only for a new maximum, the max; the count is
+ * worked out from the buckets when it is read.
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    //values from 2^MAX_EXPONENT up all land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final Counter mSum = new Counter();
+    private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+    //negative values are recorded as zero
+    public void record(long value)
+    {
+        if(value < 0)
+        {
+            value = 0;
+        }
+        mCounts.incrementAndGet(bucketOf(value));
+        mSum.add(value);
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value))
+        {
+            max = mMax.get();
+        }
+    }
+
+    public long getCount()
+    {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    //-1 while empty
+    public long getMax()
+    {
+        long max = mMax.get();
+        return max == Long.MIN_VALUE ? -1 : max;
+    }
+
+    public double getMean()
+    {
+        long count = getCount();
+        return count == 0 ? Double.NaN : (double) mSum.get() / count;
+    }
+
+    /**
+     * The smallest bucket bound that at least fraction of the recorded values fall under, for
+     * example 0.99 for the 99th percentile. Returns -1 while empty.
+     */
+    public long getPercentile(double fraction)
+    {
+        long count = getCount();
+        if(count == 0)
+        {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += mCounts.get(i);
+            if(seen >= rank)
+            {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    //copies the bucket counts into counts, which must hold getBucketCount() entries
+    public void readCounts(long[] counts)
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = mCounts.get(i);
+        }
+    }
+
+    public static int getBucketCount()
+    {
+        return BUCKETS;
+    }
+
+    //not atomic with respect to concurrent recording, a value recorded during a clear may survive it
+    public void clear()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            mCounts.set(i, 0);
+        }
+        mSum.reset();
+        mMax.set(Long.MIN_VALUE);
+    }
+
+    static int bucketOf(long value)
+    {
+        if(value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if(exponent > MAX_EXPONENT)
+        {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    public static long lowerBound(int bucket)
+    {
+        if(bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    public static long upperBound(int bucket)
+    {
+        if(bucket == BUCKETS - 1)
+        {
+            return Long.MAX_VALUE;
+        }
+        return lowerBound(bucket + 1) - 1;
+    }
+}
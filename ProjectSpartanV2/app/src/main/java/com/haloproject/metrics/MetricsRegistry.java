@@ -0,0 +1,115 @@
+package com.haloproject.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named counters, gauges and histograms.
+ *
+ * Metrics are looked up once, usually when the owning object is built, and the returned instance
+ * is kept in a field, so recording never touches the registry and never locks. A snapshot reads
+ * every metric into one JSON object that can be logged or sent off the phone.
+ */
+public class MetricsRegistry
+{
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+    private static final String[] PERCENTILE_KEYS = {"p50", "p90", "p99"};
+
+    private final ConcurrentMap<String, Counter> mCounters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Gauge> mGauges = new ConcurrentHashMap<String, Gauge>();
+    private final ConcurrentMap<String, Histogram> mHistograms = new ConcurrentHashMap<String, Histogram>();
+
+    //the counter registered under name, created on first use
+    public Counter counter(String name)
+    {
+        Counter counter = mCounters.get(name);
+        if(counter == null)
+        {
+            Counter created = new Counter();
+            counter = mCounters.putIfAbsent(name, created);
+            if(counter == null)
+            {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public Histogram histogram(String name)
+    {
+        Histogram histogram = mHistograms.get(name);
+        if(histogram == null)
+        {
+            Histogram created = new Histogram();
+            histogram = mHistograms.putIfAbsent(name, created);
+            if(histogram == null)
+            {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    //exposes a histogram owned by someone else, replacing anything registered under name
+    public void register(String name, Histogram histogram)
+    {
+        mHistograms.put(name, histogram);
+    }
+
+    public void register(String name, Gauge gauge)
+    {
+        mGauges.put(name, gauge);
+    }
+
+    /**
+     * Reads every metric. Counters and gauges become numbers, histograms become an object with
+     * their count, mean, max and percentiles.
+     */
+    public JSONObject snapshot()
+    {
+        JSONObject snapshot = new JSONObject();
+        try
+        {
+            JSONObject counters = new JSONObject();
+            for (Map.Entry<String, Counter> entry : mCounters.entrySet())
+            {
+                counters.put(entry.getKey(), entry.getValue().get());
+            }
+            JSONObject gauges = new JSONObject();
+            for (Map.Entry<String, Gauge> entry : mGauges.entrySet())
+            {
+                gauges.put(entry.getKey(), entry.getValue().getValue());
+            }
+            JSONObject histograms = new JSONObject();
+            for (Map.Entry<String, Histogram> entry : mHistograms.entrySet())
+            {
+                Histogram histogram = entry.getValue();
+                JSONObject summary = new JSONObject();
+                summary.put("count", histogram.getCount());
+                if(histogram.getCount() > 0)
+                {
+                    summary.put("mean", histogram.getMean());
+                    summary.put("max", histogram.getMax());
+                    for (int i = 0; i < PERCENTILES.length; i++)
+                    {
+                        summary.put(PERCENTILE_KEYS[i], histogram.getPercentile(PERCENTILES[i]));
+                    }
+                }
+                histograms.put(entry.getKey(), summary);
+            }
+            snapshot.put("time", System.currentTimeMillis());
+            snapshot.put("counters", counters);
+            snapshot.put("gauges", gauges);
+            snapshot.put("histograms", histograms);
+        } catch (JSONException e)
+        {
+            //only thrown for NaN or infinite numbers, which none of the values above can be
+            throw new IllegalStateException(e);
+        }
+        return snapshot;
+    }
+}
@@ -1,29 +1,34 @@
 package com.haloproject.projectspartanv2;
 
 import android.bluetooth.BluetoothSocket;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.AudioTrack;
+
+import com.haloproject.voice.Pcm16Codec;
+import com.haloproject.voice.VoiceCodec;
+import com.haloproject.voice.VoiceStreamHeader;
 
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.InputStream;
 
+//reader stage of the voice pipeline, decodes one talker's socket into their mixer stream
 public class HandleNextConnection extends Thread
 {
-    private int sampleRate = 8000;
-    private int channelConfig = AudioFormat.CHANNEL_IN_MONO;
-    private int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
-    int minBufSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
-    AudioTrack player;
-    AtomicInteger currentNum;
-    BluetoothSocket bluetoothSocket;
-    int currentNumLocal;
+    private final BluetoothSocket bluetoothSocket;
+    private final VoicePipeline pipeline;
+    private final int slot;
+    private final long generation;
+    private final byte[] buffer;
+    private final short[] samples;
+    private VoiceCodec codec;
 
-    public HandleNextConnection(BluetoothSocket bluetoothSocket,AtomicInteger currentNum)
+    public HandleNextConnection(BluetoothSocket bluetoothSocket, VoicePipeline pipeline, int slot, long generation, byte[] buffer, short[] samples)
     {
+        super("VoiceReader-" + slot);
         this.bluetoothSocket = bluetoothSocket;
-        this.currentNum = currentNum;
-        currentNumLocal = currentNum.get();
+        this.pipeline = pipeline;
+        this.slot = slot;
+        this.generation = generation;
+        this.buffer = buffer;
+        this.samples = samples;
     }
 
     @Override
@@ -31,20 +36,53 @@ public class HandleNextConnection extends Thread
     {
         try
         {
-            byte[] buffer = new byte[minBufSize];
-            player = new AudioTrack(AudioTrack.MODE_STREAM, sampleRate, AudioFormat.CHANNEL_OUT_MONO, audioFormat, minBufSize, AudioTrack.MODE_STREAM);
-            player.setVolume(AudioTrack.getMaxVolume());
-            player.play();
-
-            while (currentNumLocal == currentNum.get())
+            InputStream in = bluetoothSocket.getInputStream();
+            int filled = 0;
+            while (filled < VoiceStreamHeader.SIZE)
+            {
+                int bytesRead = in.read(buffer, filled, buffer.length - filled);
+                if(bytesRead < 0)
+                {
+                    return;
+                }
+                filled += bytesRead;
+            }
+            //the sample rate in the header is informational, the pipeline always plays 8 kHz
+            int start = 0;
+            if(VoiceStreamHeader.matches(buffer, 0, filled))
+            {
+                codec = VoiceStreamHeader.readCodec(buffer, 0);
+                start = VoiceStreamHeader.SIZE;
+            }
+            else
+            {
+                codec = new Pcm16Codec();
+            }
+            if(!play(start, filled - start))
+            {
+                return;
+            }
+            while (true)
             {
-                int bytesRead = bluetoothSocket.getInputStream().read(buffer);
-                player.write(buffer, 0, bytesRead);
+                int bytesRead = in.read(buffer);
+                if(bytesRead < 0 || !play(0, bytesRead))
+                {
+                    break;
+                }
             }
-            player.stop();
         } catch (IOException e)
         {
+            //closed by the pipeline when a newer talker needed the slot, or the talker went away
             int x = 1;
+        } finally
+        {
+            pipeline.finished(slot, generation);
         }
     }
+
+    private boolean play(int offset, int length)
+    {
+        int count = codec.decode(buffer, offset, length, samples, 0);
+        return pipeline.write(slot, generation, samples, count);
+    }
 }
@@ -3,35 +3,156 @@ package com.haloproject.projectspartanv2;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothServerSocket;
 import android.bluetooth.BluetoothSocket;
+import android.util.Log;
 
+import com.haloproject.config.SuitConfig;
+import com.haloproject.config.SuitConfigFile;
+
+import java.io.IOException;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 
-public class HandleVoiceConnections extends Thread
+/**
+ * Accepts talkers on the uuid from suitConfig and hands them to the voice pipeline. Runs until
+ * interrupted: with no usable uuid it waits for suitConfig to change, and when listening fails,
+ * because bluetooth is still turning on or was switched off, it tries again with a backoff.
+ */
+public class HandleVoiceConnections extends Thread implements SuitConfig.Listener
 {
-    private volatile Thread currentThread;
+    private static final String TAG = "VoiceServer";
+    private static final long MIN_RETRY = 1000;
+    private static final long MAX_RETRY = 60 * 1000;
+
+    private volatile VoicePipeline pipeline;
+    private volatile BluetoothServerSocket serverSocket;
+    //notified when the uuid in suitConfig changes
+    private final Object uuidChanged = new Object();
+
+    public HandleVoiceConnections()
+    {
+        super("VoiceServer");
+    }
+
+    //null until the voice server has started
+    public VoicePipeline getPipeline()
+    {
+        return pipeline;
+    }
 
     @Override
     public void run()
     {
+        SuitConfigFile.get().addListener(this);
+        BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        bluetoothAdapter.enable();
+        pipeline = new VoicePipeline();
+        long retry = MIN_RETRY;
         try
         {
-            BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-            bluetoothAdapter.enable();
-            BluetoothServerSocket bluetoothServerSocket = bluetoothAdapter.listenUsingRfcommWithServiceRecord("SuitControllerAudio", UUID.fromString(Constants.getAudioDeviceUuid()));
-            AtomicInteger currentNum = new AtomicInteger(0);
             while (true)
             {
-                BluetoothSocket bluetoothSocket = bluetoothServerSocket.accept();
-                currentNum.addAndGet(1);
-                currentThread = new HandleNextConnection(bluetoothSocket, currentNum);
-                currentThread.start();
+                UUID uuid = awaitUuid();
+                try
+                {
+                    serverSocket = bluetoothAdapter.listenUsingRfcommWithServiceRecord("SuitControllerAudio", uuid);
+                    retry = MIN_RETRY;
+                    //onConfigChanged may have run before serverSocket was published and closed nothing
+                    if(!uuid.equals(readUuid()))
+                    {
+                        close(serverSocket);
+                    }
+                    while (true)
+                    {
+                        BluetoothSocket bluetoothSocket = serverSocket.accept();
+                        pipeline.attach(bluetoothSocket);
+                    }
+                } catch (IOException e)
+                {
+                    //closed by onConfigChanged, listen again under the new uuid straight away
+                    if(uuid.equals(readUuid()))
+                    {
+                        Log.w(TAG, "listening failed, trying again in " + retry + " ms", e);
+                        //a new uuid cuts the wait short
+                        synchronized (uuidChanged)
+                        {
+                            uuidChanged.wait(retry);
+                        }
+                        retry = Math.min(retry * 2, MAX_RETRY);
+                    }
+                } finally
+                {
+                    close(serverSocket);
+                    serverSocket = null;
+                }
             }
-        } catch (Exception e)
+        } catch (InterruptedException e)
+        {
+            //asked to stop
+        } finally
         {
-            int x = 1;
+            SuitConfigFile.get().removeListener(this);
+            pipeline.shutdown();
         }
+    }
 
+    //null while suitConfig has no uuid or one that isn't a uuid
+    private static UUID readUuid()
+    {
+        String uuid = SuitConfigFile.get().get(SuitConfig.AUDIO_DEVICE_UUID);
+        if(uuid == null)
+        {
+            return null;
+        }
+        try
+        {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException e)
+        {
+            Log.w(TAG, "bad uuid in suitConfig: " + uuid);
+            return null;
+        }
     }
-}
 
+    //the server starts listening once suitConfig names a usable uuid
+    private UUID awaitUuid() throws InterruptedException
+    {
+        synchronized (uuidChanged)
+        {
+            UUID uuid = readUuid();
+            while (uuid == null)
+            {
+                uuidChanged.wait();
+                uuid = readUuid();
+            }
+            return uuid;
+        }
+    }
+
+    private static void close(BluetoothServerSocket socket)
+    {
+        if(socket != null)
+        {
+            try
+            {
+                socket.close();
+            } catch (IOException e)
+            {
+                //accept fails either way
+            }
+        }
+    }
+
+    @Override
+    public void onConfigChanged(SuitConfig config, Set<String> changed)
+    {
+        if(!changed.contains(SuitConfig.AUDIO_DEVICE_UUID.getName()))
+        {
+            return;
+        }
+        synchronized (uuidChanged)
+        {
+            uuidChanged.notifyAll();
+        }
+        close(serverSocket);
+    }
+}
@@ -3,10 +3,14 @@ package com.haloproject.projectspartanv2;
 import android.content.SharedPreferences;
 import android.media.AudioManager;
 import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v7.app.ActionBarActivity;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -23,6 +27,30 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.haloproject.bluetooth.AndroidBlue;
+import com.haloproject.bluetooth.ConnectionSupervisor;
+import com.haloproject.config.SuitConfig;
+import com.haloproject.config.SuitConfigFile;
+import com.haloproject.export.SessionExporter;
+import com.haloproject.metrics.MetricsRegistry;
+import com.haloproject.startup.StartupPipeline;
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySubscriptions;
+import com.haloproject.telemetry.TelemetryTiming;
+import com.haloproject.warnings.WarningKind;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MainActivity extends ActionBarActivity
 {
@@ -31,6 +59,14 @@ public class MainActivity extends ActionBarActivity
     final int TOTAL_SWIPE_FRAGMENTS = 5;
     static private int currentFragment; //-1 means its at main menu
     static private SharedPreferences mPreferences;
+    //startup timings add up over every onCreate in the process, AndroidBlue's metrics show them
+    static private final MetricsRegistry mStartupMetrics = new MetricsRegistry();
+    static private final String[] STARTUP_STAGES = {"android blue", "discovery receiver", "preferences",
+            "connect", "constants", "first frame", "voice server", "total"};
+    //independent startup stages run side by side, the threads go away once startup is over
+    static private final ThreadPoolExecutor mStartupExecutor = new ThreadPoolExecutor(3, 3, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    //one voice server per process, it outlives activity restarts
+    static private HandleVoiceConnections mVoiceConnections;
     private float x1, x2, y1, y2;
 
     @Override
@@ -39,7 +75,6 @@ public class MainActivity extends ActionBarActivity
         super.onCreate(savedInstanceState);
 
         setVolumeControlStream(AudioManager.STREAM_MUSIC);
-        new HandleVoiceConnections().start();
         setContentView(R.layout.activity_main);
         mFragmentManager = getSupportFragmentManager();
         if(savedInstanceState == null)
@@ -48,17 +83,131 @@ public class MainActivity extends ActionBarActivity
         }
         AndroidBlue.setContext(getApplicationContext());
         AndroidBlue.setActivity(this);
-        mAndroidBlue = AndroidBlue.getInstance();
+        //doesn't block, the file is loaded on a thread of its own and the first read waits for it
         mPreferences = getPreferences(MODE_PRIVATE);
-        if(mPreferences.contains("bluetooth"))
+        currentFragment = -1;
+
+        final StartupPipeline startup = buildStartup();
+        startup.start();
+        //runs after the first traversal, which is when the first frame is drawn
+        getWindow().getDecorView().post(new Runnable()
         {
-            String device = mPreferences.getString("bluetooth", "");
-            if(mAndroidBlue.setBeagleBone(device))
+            @Override
+            public void run()
             {
-                mAndroidBlue.connect();
+                startup.reach("first frame");
             }
-        }
-        currentFragment = -1;
+        });
+    }
+
+    /**
+     * Everything onCreate used to do in a row. Only AndroidBlue is built on the main thread, before
+     * start() returns, because fragments use it as soon as they are created; the sdcard, the
+     * preferences and the receiver registration happen in the background, and the voice server
+     * waits until the first frame is up.
+     */
+    private StartupPipeline buildStartup()
+    {
+        mStartupExecutor.allowCoreThreadTimeOut(true);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        StartupPipeline startup = new StartupPipeline(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                handler.post(command);
+            }
+        }, mStartupExecutor, mStartupMetrics);
+        startup.setListener(new StartupPipeline.Listener()
+        {
+            @Override
+            public void onStageFinished(String stage, long durationMs, Throwable error)
+            {
+                if(error == null)
+                {
+                    Log.i("Startup", stage + " took " + durationMs + " ms");
+                }
+                else
+                {
+                    Log.w("Startup", stage + " failed", error);
+                }
+            }
+        });
+        final AtomicReference<String> savedDevice = new AtomicReference<String>();
+        startup.add("android blue", true, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mAndroidBlue = AndroidBlue.getInstance();
+                MetricsRegistry metrics = mAndroidBlue.getMetrics();
+                for (String stage : STARTUP_STAGES)
+                {
+                    String name = "startup " + stage + " ms";
+                    metrics.register(name, mStartupMetrics.histogram(name));
+                }
+            }
+        });
+        startup.add("discovery receiver", false, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                mAndroidBlue.registerDiscoveryReceiver();
+            }
+        }, "android blue");
+        startup.add("preferences", false, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                savedDevice.set(mPreferences.getString("bluetooth", null));
+            }
+        });
+        startup.add("connect", false, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                String device = savedDevice.get();
+                if(!mAndroidBlue.isConnected())
+                {
+                    if(device != null)
+                    {
+                        mAndroidBlue.setBeagleBone(device);
+                    }
+                    //without a saved suit, the ones in the device registry are tried
+                    mAndroidBlue.connect();
+                }
+            }
+        }, "android blue", "preferences");
+        startup.add("constants", false, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                //reads suitConfig off the sdcard and starts watching it
+                SuitConfigFile.get().get(SuitConfig.AUDIO_DEVICE_UUID);
+            }
+        });
+        startup.addMilestone("first frame");
+        startup.add("voice server", false, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (MainActivity.class)
+                {
+                    //a server that died with the process still around is replaced
+                    if(mVoiceConnections == null || !mVoiceConnections.isAlive())
+                    {
+                        mVoiceConnections = new HandleVoiceConnections();
+                        mVoiceConnections.start();
+                    }
+                }
+            }
+        }, "first frame");
+        return startup;
     }
 
     @Override
@@ -196,12 +345,53 @@ public class MainActivity extends ActionBarActivity
 
     static public class CoolingFragment extends Fragment
     {
+        Switch peltier;
+        Switch waterPump;
+        Switch headFans;
+        final ArrayList<TelemetrySubscriptions.Subscription> subscriptions = new ArrayList<TelemetrySubscriptions.Subscription>();
+        //the switches mirror what the suit reports, auto counts as on
+        final TelemetrySubscriptions.SwitchListener states = new TelemetrySubscriptions.SwitchListener()
+        {
+            @Override
+            public void onSwitchChanged(TelemetryChannel channel, int state)
+            {
+                Switch view = channel == TelemetryChannel.PELTIER ? peltier : channel == TelemetryChannel.WATER_PUMP ? waterPump : headFans;
+                view.setChecked(state != TelemetryChannel.OFF);
+            }
+        };
+
         @Override
         public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState)
         {
             View view = inflater.inflate(R.layout.fragment_cooling, container, false);
+            peltier = (Switch) view.findViewById(R.id.switch2);
+            waterPump = (Switch) view.findViewById(R.id.switch3);
+            headFans = (Switch) view.findViewById(R.id.switch4);
+            peltier.setClickable(false);
+            waterPump.setClickable(false);
+            headFans.setClickable(false);
             return view;
         }
+
+        @Override
+        public void onResume()
+        {
+            super.onResume();
+            subscriptions.add(mAndroidBlue.subscribeSwitch(TelemetryChannel.PELTIER, states));
+            subscriptions.add(mAndroidBlue.subscribeSwitch(TelemetryChannel.WATER_PUMP, states));
+            subscriptions.add(mAndroidBlue.subscribeSwitch(TelemetryChannel.HEAD_FANS, states));
+        }
+
+        @Override
+        public void onPause()
+        {
+            super.onPause();
+            for (TelemetrySubscriptions.Subscription subscription : subscriptions)
+            {
+                subscription.cancel();
+            }
+            subscriptions.clear();
+        }
     }
 
     static public class LightingFragment extends Fragment
@@ -231,6 +421,64 @@ public class MainActivity extends ActionBarActivity
         TextView armpitstemp;
         TextView crotchtemp;
         TextView watertemp;
+        TextView stale;
+        TextView warnings;
+        final WarningKind[] active = new WarningKind[WarningKind.COUNT];
+        final StringBuilder warningText = new StringBuilder();
+        final Runnable showWarnings = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                int count = mAndroidBlue.getWarnings().readActive(active);
+                warningText.setLength(0);
+                for (int i = 0; i < count; i++)
+                {
+                    if(i > 0)
+                    {
+                        warningText.append('\n');
+                    }
+                    warningText.append(active[i].message);
+                }
+                warnings.setText(warningText);
+                warnings.setVisibility(count == 0 ? View.GONE : View.VISIBLE);
+            }
+        };
+        //the last frame shown, kept for the stale check
+        TelemetryFrame frame = new TelemetryFrame();
+        final ArrayList<TelemetrySubscriptions.Subscription> subscriptions = new ArrayList<TelemetrySubscriptions.Subscription>();
+        //held here because subscriptions only keep their listeners weakly
+        final TelemetrySubscriptions.ValueListener temperatures = new TelemetrySubscriptions.ValueListener()
+        {
+            @Override
+            public void onValueChanged(TelemetryChannel channel, double value)
+            {
+                viewFor(channel).setText(formatValue(value));
+            }
+        };
+        final TelemetrySubscriptions.FrameListener frames = new TelemetrySubscriptions.FrameListener()
+        {
+            @Override
+            public void onFrame(TelemetryFrame latest)
+            {
+                frame = latest;
+                mAndroidBlue.getTiming().onDisplayed(latest, System.currentTimeMillis());
+                showAge();
+            }
+        };
+        //re-checks the age while no frames arrive, which is exactly when the data goes stale
+        final Runnable staleCheck = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                showAge();
+                stale.postDelayed(this, STALE_CHECK_INTERVAL);
+            }
+        };
+        static final long STALE_CHECK_INTERVAL = 500;
+        //the temperatures are shown with two decimals
+        static final double TEMPERATURE_DEADBAND = 0.01;
 
         @Override
         public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState)
@@ -240,25 +488,77 @@ public class MainActivity extends ActionBarActivity
             armpitstemp = (TextView) view.findViewById(R.id.armpitstemp);
             crotchtemp = (TextView) view.findViewById(R.id.crotchtemp);
             watertemp = (TextView) view.findViewById(R.id.watertemp);
-            mAndroidBlue.setOnReceive(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    headtemp.setText(String.format("%.2f", mAndroidBlue.headTemperature.getValue()));
-                    armpitstemp.setText(String.format("%.2f", mAndroidBlue.armpitsTemperature.getValue()));
-                    crotchtemp.setText(String.format("%.2f", mAndroidBlue.crotchTemperature.getValue()));
-                    watertemp.setText(String.format("%.2f", mAndroidBlue.waterTemperature.getValue()));
-                }
-            });
+            stale = (TextView) view.findViewById(R.id.stale);
+            warnings = (TextView) view.findViewById(R.id.warnings);
             return view;
         }
 
+        //telemetry is only dispatched to the screen while this fragment is actually visible
         @Override
-        public void onDestroyView()
+        public void onResume()
         {
-            super.onDestroyView();
-            mAndroidBlue.destroyOnReceive();
+            super.onResume();
+            subscriptions.add(mAndroidBlue.subscribe(TelemetryChannel.HEAD_TEMPERATURE, TEMPERATURE_DEADBAND, temperatures));
+            subscriptions.add(mAndroidBlue.subscribe(TelemetryChannel.ARMPITS_TEMPERATURE, TEMPERATURE_DEADBAND, temperatures));
+            subscriptions.add(mAndroidBlue.subscribe(TelemetryChannel.CROTCH_TEMPERATURE, TEMPERATURE_DEADBAND, temperatures));
+            subscriptions.add(mAndroidBlue.subscribe(TelemetryChannel.WATER_TEMPERATURE, TEMPERATURE_DEADBAND, temperatures));
+            subscriptions.add(mAndroidBlue.subscribeFrames(frames));
+            stale.post(staleCheck);
+            mAndroidBlue.setOnWarningsChanged(showWarnings);
+            showWarnings.run();
+        }
+
+        @Override
+        public void onPause()
+        {
+            super.onPause();
+            stale.removeCallbacks(staleCheck);
+            mAndroidBlue.setOnWarningsChanged(null);
+            for (TelemetrySubscriptions.Subscription subscription : subscriptions)
+            {
+                subscription.cancel();
+            }
+            subscriptions.clear();
+        }
+
+        private TextView viewFor(TelemetryChannel channel)
+        {
+            switch (channel)
+            {
+                case HEAD_TEMPERATURE:
+                    return headtemp;
+                case ARMPITS_TEMPERATURE:
+                    return armpitstemp;
+                case CROTCH_TEMPERATURE:
+                    return crotchtemp;
+                default:
+                    return watertemp;
+            }
+        }
+
+        private void showAge()
+        {
+            TelemetryTiming timing = mAndroidBlue.getTiming();
+            long now = System.currentTimeMillis();
+            if(timing.isStale(frame, now))
+            {
+                long age = timing.getAge(frame, now);
+                stale.setText(age < 0 ? "NO DATA" : "STALE " + age / 1000 + "s");
+                stale.setVisibility(View.VISIBLE);
+            }
+            else
+            {
+                stale.setVisibility(View.GONE);
+            }
+        }
+
+        private static String formatValue(double value)
+        {
+            if(Double.isNaN(value))
+            {
+                return "--";
+            }
+            return String.format("%.2f", value);
         }
     }
 
@@ -266,6 +566,8 @@ public class MainActivity extends ActionBarActivity
     {
         private ListView btdevices;
         private Switch switch1;
+        private Switch automation;
+        private Button export;
         private Button discover;
         private Button configure;
         private Button deconfigure;
@@ -293,6 +595,25 @@ public class MainActivity extends ActionBarActivity
                     }
                 }
             });
+            automation = (Switch) view.findViewById(R.id.automation);
+            automation.setChecked(mAndroidBlue.getRules().isEnabled());
+            automation.setOnClickListener(new View.OnClickListener()
+            {
+                @Override
+                public void onClick(View v)
+                {
+                    mAndroidBlue.getRules().setEnabled(((Switch) v).isChecked());
+                }
+            });
+            export = (Button) view.findViewById(R.id.export);
+            export.setOnClickListener(new View.OnClickListener()
+            {
+                @Override
+                public void onClick(View v)
+                {
+                    exportLastDay();
+                }
+            });
             btdevices = (ListView) view.findViewById(R.id.btdevices);
             btdevices.setOnItemClickListener(new AdapterView.OnItemClickListener()
             {
@@ -339,6 +660,14 @@ public class MainActivity extends ActionBarActivity
                     }
                 }
             });
+            mAndroidBlue.setOnConnectionState(new ConnectionSupervisor.StateListener()
+            {
+                @Override
+                public void onStateChanged(ConnectionSupervisor.State state)
+                {
+                    connected.setChecked(state == ConnectionSupervisor.State.CONNECTED);
+                }
+            });
             mAndroidBlue.setOnConnect(new Runnable()
             {
                 @Override
@@ -398,6 +727,51 @@ public class MainActivity extends ActionBarActivity
                 switch1.setChecked(false);
             }
         }
+
+        @Override
+        public void onDestroyView()
+        {
+            super.onDestroyView();
+            mAndroidBlue.setOnConnectionState(null);
+        }
+
+        //reads the journal off the main thread, a day of telemetry takes a few seconds
+        private void exportLastDay()
+        {
+            export.setEnabled(false);
+            final long to = System.currentTimeMillis();
+            final long from = to - 24 * 60 * 60 * 1000L;
+            String name = "suit-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date(to)) + ".hsc";
+            final File file = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), name);
+            final File journal = mAndroidBlue.getJournal().getDirectory();
+            new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    String message;
+                    try
+                    {
+                        file.getParentFile().mkdirs();
+                        long rows = SessionExporter.export(journal, from, to, new FileOutputStream(file));
+                        message = "Exported " + rows + " frames to " + file.getName();
+                    } catch (IOException e)
+                    {
+                        message = "Could Not Export: " + e.getMessage();
+                    }
+                    final String result = message;
+                    export.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            export.setEnabled(true);
+                            Toast.makeText(export.getContext(), result, Toast.LENGTH_LONG).show();
+                        }
+                    });
+                }
+            }, "SessionExport").start();
+        }
     }
 
 
@@ -0,0 +1,154 @@
+package com.haloproject.projectspartanv2;
+
+import android.bluetooth.BluetoothSocket;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.AudioTrack;
+
+import com.haloproject.voice.VoiceMixer;
+
+import java.io.IOException;
+
+/**
+ * Plays every connected talker at once through one speaker.
+ *
+ * Each connection has a reader stage (HandleNextConnection) that decodes the socket into its own
+ * stream of the mixer, and a single playback stage mixes one frame from every stream into an
+ * AudioTrack that stays allocated for the life of the pipeline. Read and decode buffers are
+ * allocated up front, two per mixer slot, alternating between connections so a reader that is
+ * still unwinding never shares a buffer with its replacement. When every slot is busy the talker
+ * who has been connected longest is cut off: their socket is closed, which unblocks the read
+ * straight away.
+ */
+public class VoicePipeline
+{
+    private static final int SAMPLE_RATE = 8000;
+
+    private final int minBufSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+    private final byte[][][] readBuffers = new byte[VoiceMixer.MAX_STREAMS][2][minBufSize];
+    //ADPCM is the densest codec at two samples a byte
+    private final short[][][] decodeBuffers = new short[VoiceMixer.MAX_STREAMS][2][minBufSize * 2 + 1];
+    private final BluetoothSocket[] sockets = new BluetoothSocket[VoiceMixer.MAX_STREAMS];
+    private final VoiceMixer mixer = new VoiceMixer(SAMPLE_RATE);
+    private final short[] playbackFrame = new short[mixer.getFrameSamples()];
+    private final AudioTrack player;
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+
+    public VoicePipeline()
+    {
+        player = new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_16BIT, minBufSize, AudioTrack.MODE_STREAM);
+        player.setVolume(AudioTrack.getMaxVolume());
+        Thread playback = new Thread(new PlaybackRunnable(), "VoicePlayback");
+        playback.setDaemon(true);
+        playback.start();
+    }
+
+    //per talker gain and level and latency metrics, indexed by mixer slot
+    public VoiceMixer getMixer()
+    {
+        return mixer;
+    }
+
+    public void attach(BluetoothSocket socket)
+    {
+        BluetoothSocket evicted = null;
+        int slot;
+        long generation;
+        synchronized (lock)
+        {
+            slot = mixer.open();
+            if(slot < 0)
+            {
+                slot = mixer.getOldestStream();
+                evicted = sockets[slot];
+                mixer.evict(slot);
+                slot = mixer.open();
+            }
+            sockets[slot] = socket;
+            generation = mixer.getGeneration(slot);
+            lock.notifyAll();
+        }
+        if(evicted != null)
+        {
+            try
+            {
+                evicted.close();
+            } catch (IOException e)
+            {
+                //the oldest talker loses its slot either way, its reader thread ends when the socket goes
+            }
+        }
+        int buffer = (int) (generation % 2);
+        new HandleNextConnection(socket, this, slot, generation, readBuffers[slot][buffer], decodeBuffers[slot][buffer]).start();
+    }
+
+    public void shutdown()
+    {
+        running = false;
+        synchronized (lock)
+        {
+            lock.notifyAll();
+        }
+    }
+
+    //called by the reader stage, false once the slot has been given to someone else
+    boolean write(int slot, long generation, short[] pcm, int length)
+    {
+        return mixer.write(slot, generation, pcm, 0, length);
+    }
+
+    void finished(int slot, long generation)
+    {
+        synchronized (lock)
+        {
+            if(mixer.getGeneration(slot) == generation)
+            {
+                sockets[slot] = null;
+            }
+            mixer.close(slot, generation);
+        }
+    }
+
+    private class PlaybackRunnable implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            boolean playing = false;
+            while (running)
+            {
+                synchronized (lock)
+                {
+                    //park the track while nobody is connected instead of writing silence
+                    while (running && mixer.getActiveStreams() == 0)
+                    {
+                        if(playing)
+                        {
+                            player.pause();
+                            playing = false;
+                        }
+                        try
+                        {
+                            lock.wait();
+                        } catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+                    if(!playing)
+                    {
+                        player.play();
+                        playing = true;
+                    }
+                }
+                mixer.mix(playbackFrame);
+                //AudioTrack.write blocks until there is room, which paces this loop to the speaker
+                player.write(playbackFrame, 0, playbackFrame.length);
+            }
+            player.stop();
+            player.release();
+        }
+    }
+}
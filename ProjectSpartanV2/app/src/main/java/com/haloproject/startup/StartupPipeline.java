@@ -0,0 +1,270 @@
+package com.haloproject.startup;
+
+import com.haloproject.metrics.Histogram;
+import com.haloproject.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs app startup as named stages with dependencies instead of one long onCreate.
+ *
+ * A stage runs on the main thread or in the background as soon as everything it depends on has
+ * finished, so independent stages overlap. Milestones are stages with no work that the caller
+ * reaches itself, such as the first frame being drawn, and let work wait for them. A stage that
+ * throws fails, and everything depending on it is skipped. Every stage is timed into a
+ * "startup <stage> ms" histogram, milestones from the start of the pipeline, and the whole run
+ * into "startup total ms".
+ */
+public class StartupPipeline
+{
+    public interface Listener
+    {
+        //error is null on success, called on the thread that ran the stage
+        void onStageFinished(String stage, long durationMs, Throwable error);
+    }
+
+    private enum State
+    {
+        WAITING,
+        RUNNING,
+        DONE,
+        FAILED,
+        SKIPPED
+    }
+
+    private static class Stage
+    {
+        final String name;
+        final boolean onMainThread;
+        //null for a milestone
+        final Runnable task;
+        final String[] dependencies;
+        final List<Stage> dependents = new ArrayList<Stage>();
+        final Histogram duration;
+        int waiting;
+        State state = State.WAITING;
+        long startedAt;
+
+        Stage(String name, boolean onMainThread, Runnable task, String[] dependencies, Histogram duration)
+        {
+            this.name = name;
+            this.onMainThread = onMainThread;
+            this.task = task;
+            this.dependencies = dependencies;
+            this.duration = duration;
+        }
+    }
+
+    private final Executor mMain;
+    private final Executor mBackground;
+    private final MetricsRegistry mMetrics;
+    private final Map<String, Stage> mStages = new LinkedHashMap<String, Stage>();
+    private volatile Listener mListener;
+    private long mStartedAt;
+    private int mUnfinished;
+    private boolean mStarted;
+
+    public StartupPipeline(Executor main, Executor background, MetricsRegistry metrics)
+    {
+        mMain = main;
+        mBackground = background;
+        mMetrics = metrics;
+    }
+
+    public void setListener(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    //dependencies must all be added before start()
+    public synchronized void add(String name, boolean onMainThread, Runnable task, String... dependencies)
+    {
+        if(mStarted || mStages.containsKey(name))
+        {
+            throw new IllegalStateException("cannot add " + name);
+        }
+        mStages.put(name, new Stage(name, onMainThread, task, dependencies, mMetrics.histogram("startup " + name + " ms")));
+    }
+
+    public void addMilestone(String name)
+    {
+        add(name, false, null);
+    }
+
+    /**
+     * Starts every stage that depends on nothing. Must be called on the main thread: main thread
+     * stages without dependencies run before this returns, so the caller can rely on them.
+     */
+    public void start()
+    {
+        List<Stage> ready = new ArrayList<Stage>();
+        synchronized (this)
+        {
+            if(mStarted)
+            {
+                throw new IllegalStateException("already started");
+            }
+            mStarted = true;
+            mStartedAt = System.nanoTime();
+            mUnfinished = mStages.size();
+            for (Stage stage : mStages.values())
+            {
+                for (String dependency : stage.dependencies)
+                {
+                    Stage required = mStages.get(dependency);
+                    if(required == null)
+                    {
+                        throw new IllegalStateException(stage.name + " depends on unknown stage " + dependency);
+                    }
+                    required.dependents.add(stage);
+                    stage.waiting++;
+                }
+            }
+            for (Stage stage : mStages.values())
+            {
+                if(stage.waiting == 0 && stage.task != null)
+                {
+                    stage.state = State.RUNNING;
+                    ready.add(stage);
+                }
+            }
+        }
+        for (Stage stage : ready)
+        {
+            if(stage.onMainThread)
+            {
+                run(stage);
+            }
+            else
+            {
+                schedule(stage);
+            }
+        }
+    }
+
+    //marks a milestone as reached, stages waiting only for it start now
+    public void reach(String milestone)
+    {
+        Stage stage;
+        synchronized (this)
+        {
+            if(!mStarted)
+            {
+                throw new IllegalStateException("reached " + milestone + " before start");
+            }
+            stage = mStages.get(milestone);
+            if(stage == null || stage.task != null || stage.state != State.WAITING)
+            {
+                return;
+            }
+            stage.state = State.RUNNING;
+            stage.startedAt = mStartedAt;
+        }
+        finish(stage, null);
+    }
+
+    public synchronized boolean isFinished()
+    {
+        return mStarted && mUnfinished == 0;
+    }
+
+    private void schedule(final Stage stage)
+    {
+        Runnable runner = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                StartupPipeline.this.run(stage);
+            }
+        };
+        if(stage.onMainThread)
+        {
+            mMain.execute(runner);
+        }
+        else
+        {
+            mBackground.execute(runner);
+        }
+    }
+
+    private void run(Stage stage)
+    {
+        stage.startedAt = System.nanoTime();
+        Throwable error = null;
+        try
+        {
+            stage.task.run();
+        } catch (Throwable t)
+        {
+            error = t;
+        }
+        finish(stage, error);
+    }
+
+    private void finish(Stage stage, Throwable error)
+    {
+        long durationMs = (System.nanoTime() - stage.startedAt) / 1000000;
+        stage.duration.record(durationMs);
+        List<Stage> ready = new ArrayList<Stage>();
+        List<Stage> skipped = new ArrayList<Stage>();
+        boolean finished;
+        synchronized (this)
+        {
+            stage.state = error == null ? State.DONE : State.FAILED;
+            mUnfinished--;
+            if(error == null)
+            {
+                for (Stage dependent : stage.dependents)
+                {
+                    if(--dependent.waiting == 0 && dependent.state == State.WAITING && dependent.task != null)
+                    {
+                        dependent.state = State.RUNNING;
+                        ready.add(dependent);
+                    }
+                }
+            }
+            else
+            {
+                skip(stage, skipped);
+            }
+            finished = mUnfinished == 0;
+        }
+        Listener listener = mListener;
+        if(listener != null)
+        {
+            listener.onStageFinished(stage.name, durationMs, error);
+            for (Stage dependent : skipped)
+            {
+                listener.onStageFinished(dependent.name, 0, new IllegalStateException("skipped, " + stage.name + " failed"));
+            }
+        }
+        if(finished)
+        {
+            mMetrics.histogram("startup total ms").record((System.nanoTime() - mStartedAt) / 1000000);
+        }
+        for (Stage dependent : ready)
+        {
+            schedule(dependent);
+        }
+    }
+
+    //called with the lock held
+    private void skip(Stage failed, List<Stage> skipped)
+    {
+        for (Stage dependent : failed.dependents)
+        {
+            if(dependent.state == State.WAITING)
+            {
+                dependent.state = State.SKIPPED;
+                mUnfinished--;
+                skipped.add(dependent);
+                skip(dependent, skipped);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.haloproject.telemetry;
+
+/**
+ * Estimates the offset between the phone clock and the suit clock so suit timestamps can be
+ * turned into phone time.
+ *
+ * The phone sends its time t0, the suit notes when that arrived (t1) and when it answered (t2),
+ * and the phone notes when the answer arrived (t3). Like NTP, each exchange gives an offset and a
+ * round trip delay, and the offset from the exchange with the smallest delay out of the last few
+ * is kept, since that one spent the least time queued somewhere. Suits that never answer are
+ * handled with a minimum one way delay filter instead: the smallest receive minus source time
+ * seen recently, which is the offset plus the fastest delivery, so ages derived from it are
+ * relative to the fastest frame.
+ */
+public class ClockSync
+{
+    private static final int EXCHANGE_WINDOW = 8;
+    private static final int FRAME_WINDOW = 64;
+    //a quick burst of exchanges after connecting, then a slow refresh to follow drift
+    private static final int INITIAL_EXCHANGES = 4;
+    private static final long INITIAL_INTERVAL = 2000;
+    private static final long REFRESH_INTERVAL = 30 * 1000;
+
+    private final long[] mOffsets = new long[EXCHANGE_WINDOW];
+    private final long[] mDelays = new long[EXCHANGE_WINDOW];
+    private int mExchanges;
+    private final long[] mOneWay = new long[FRAME_WINDOW];
+    private int mFrames;
+    private long mLastRequest = Long.MIN_VALUE;
+    private int mRequests;
+
+    //true when it is time to send another t0
+    public synchronized boolean shouldRequest(long now)
+    {
+        //a suit that never answers only gets asked at the slow rate after the burst
+        boolean initial = mExchanges < INITIAL_EXCHANGES && mRequests < 2 * INITIAL_EXCHANGES;
+        long interval = initial ? INITIAL_INTERVAL : REFRESH_INTERVAL;
+        if(mLastRequest != Long.MIN_VALUE && now - mLastRequest < interval)
+        {
+            return false;
+        }
+        mLastRequest = now;
+        mRequests++;
+        return true;
+    }
+
+    public synchronized void addExchange(long t0, long t1, long t2, long t3)
+    {
+        long delay = (t3 - t0) - (t2 - t1);
+        if(delay < 0)
+        {
+            return;
+        }
+        int slot = mExchanges % EXCHANGE_WINDOW;
+        mOffsets[slot] = ((t1 - t0) + (t2 - t3)) / 2;
+        mDelays[slot] = delay;
+        mExchanges++;
+    }
+
+    public synchronized void addFrame(long sourceTime, long receivedTime)
+    {
+        mOneWay[mFrames % FRAME_WINDOW] = receivedTime - sourceTime;
+        mFrames++;
+    }
+
+    //true once at least one exchange has been answered
+    public synchronized boolean isExchanged()
+    {
+        return mExchanges > 0;
+    }
+
+    public synchronized boolean isSynced()
+    {
+        return mExchanges > 0 || mFrames > 0;
+    }
+
+    //suit time minus phone time, 0 until anything is known
+    public synchronized long getOffset()
+    {
+        if(mExchanges > 0)
+        {
+            int best = 0;
+            for (int i = 1; i < Math.min(mExchanges, EXCHANGE_WINDOW); i++)
+            {
+                if(mDelays[i] < mDelays[best])
+                {
+                    best = i;
+                }
+            }
+            return mOffsets[best];
+        }
+        if(mFrames > 0)
+        {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < Math.min(mFrames, FRAME_WINDOW); i++)
+            {
+                min = Math.min(min, mOneWay[i]);
+            }
+            return -min;
+        }
+        return 0;
+    }
+
+    //round trip delay of the exchange the offset comes from, -1 without exchanges
+    public synchronized long getRoundTrip()
+    {
+        long min = -1;
+        for (int i = 0; i < Math.min(mExchanges, EXCHANGE_WINDOW); i++)
+        {
+            if(min == -1 || mDelays[i] < min)
+            {
+                min = mDelays[i];
+            }
+        }
+        return min;
+    }
+
+    public long toPhoneTime(long sourceTime)
+    {
+        return sourceTime - getOffset();
+    }
+
+    public synchronized void reset()
+    {
+        mExchanges = 0;
+        mFrames = 0;
+        mLastRequest = Long.MIN_VALUE;
+        mRequests = 0;
+    }
+}
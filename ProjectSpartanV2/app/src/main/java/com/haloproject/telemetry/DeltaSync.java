@@ -0,0 +1,81 @@
+package com.haloproject.telemetry;
+
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.MetricsRegistry;
+
+/**
+ * Decides when delta telemetry can be trusted.
+ *
+ * Once the phone asks for deltas the suit only sends the channels that changed since its previous
+ * message, marked as a delta, with a full keyframe every so often. The snapshot merges either kind
+ * the same way, missing channels keep their last value, so all that can go wrong is a lost
+ * message: whatever changed in it stays stale until that channel changes again. Deltas are only
+ * trusted while their sequence numbers follow on from a keyframe without a gap; after a gap a
+ * keyframe is requested, at most once every REQUEST_INTERVAL, until one arrives.
+ */
+public class DeltaSync
+{
+    public static final long REQUEST_INTERVAL = 1000;
+
+    private boolean mSynced;
+    private long mLastSequence = -1;
+    private long mLastRequest = Long.MIN_VALUE;
+    private final Counter mKeyframes;
+    private final Counter mDeltas;
+    private final Counter mGaps;
+    private final Counter mRequests;
+
+    public DeltaSync(MetricsRegistry metrics)
+    {
+        mKeyframes = metrics.counter("keyframes in");
+        mDeltas = metrics.counter("deltas in");
+        mGaps = metrics.counter("delta gaps");
+        mRequests = metrics.counter("keyframe requests");
+    }
+
+    //for every message with a sequence number, returns true when a keyframe should be requested now
+    public synchronized boolean onFrame(long sequence, boolean delta, long now)
+    {
+        if(!delta)
+        {
+            //full messages, from a suit that never sends deltas too, are keyframes
+            mKeyframes.increment();
+            mSynced = true;
+            mLastSequence = sequence;
+            return false;
+        }
+        mDeltas.increment();
+        boolean followsOn = mSynced && mLastSequence >= 0 && sequence == mLastSequence + 1;
+        mLastSequence = sequence;
+        if(followsOn)
+        {
+            return false;
+        }
+        if(mSynced)
+        {
+            mGaps.increment();
+            mSynced = false;
+        }
+        if(mLastRequest != Long.MIN_VALUE && now - mLastRequest < REQUEST_INTERVAL)
+        {
+            return false;
+        }
+        mLastRequest = now;
+        mRequests.increment();
+        return true;
+    }
+
+    //false between a gap and the next keyframe, while some channels may be out of date
+    public synchronized boolean isSynced()
+    {
+        return mSynced;
+    }
+
+    //a new link starts unsynced, its first delta asks for a keyframe
+    public synchronized void reset()
+    {
+        mSynced = false;
+        mLastSequence = -1;
+        mLastRequest = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,103 @@
+package com.haloproject.telemetry;
+
+/**
+ * Every value the suit reports in a telemetry message, see json.txt for the wire format.
+ * Switch channels are stored as OFF, ON or AUTO so a whole frame fits in one primitive record.
+ * The id is the key used by the binary protocol and must never be reused for another channel.
+ */
+public enum TelemetryChannel
+{
+    HEAD_TEMPERATURE(1, "head temperature", false),
+    ARMPITS_TEMPERATURE(2, "armpits temperature", false),
+    CROTCH_TEMPERATURE(3, "crotch temperature", false),
+    WATER_TEMPERATURE(4, "water temperature", false),
+    FLOW_RATE(5, "flow rate", false),
+    HEART_RATE(6, "heart rate", false),
+    BATTERY_8AH(7, "8 AH battery", false),
+    BATTERY_2AH(8, "2 AH battery", false),
+    HUD_BATTERY(9, "hud battery", false),
+    PHONE_BATTERY(10, "phone battery", false),
+    LIGHTS(11, "lights", true),
+    HEAD_LIGHTS_RED(12, "head lights red", true),
+    HEAD_LIGHTS_WHITE(13, "head lights white", true),
+    HEAD_FANS(14, "head fans", true),
+    WATER_PUMP(15, "water pump", true),
+    PELTIER(16, "peltier", true);
+
+    public static final double OFF = 0.0;
+    public static final double ON = 1.0;
+    public static final double AUTO = 2.0;
+
+    //values() clones its array on every call, the decode loop uses this copy instead
+    static final TelemetryChannel[] ALL = values();
+    public static final int COUNT = ALL.length;
+    private static final TelemetryChannel[] BY_ID;
+
+    static
+    {
+        int maxId = 0;
+        for (TelemetryChannel channel : ALL)
+        {
+            maxId = Math.max(maxId, channel.id);
+        }
+        BY_ID = new TelemetryChannel[maxId + 1];
+        for (TelemetryChannel channel : ALL)
+        {
+            BY_ID[channel.id] = channel;
+        }
+    }
+
+    public final int id;
+    public final String key;
+    public final boolean isSwitch;
+
+    TelemetryChannel(int id, String key, boolean isSwitch)
+    {
+        this.id = id;
+        this.key = key;
+        this.isSwitch = isSwitch;
+    }
+
+    public static TelemetryChannel get(int ordinal)
+    {
+        return ALL[ordinal];
+    }
+
+    public static TelemetryChannel fromId(int id)
+    {
+        if(id < 0 || id >= BY_ID.length)
+        {
+            return null;
+        }
+        return BY_ID[id];
+    }
+
+    public static TelemetryChannel fromKey(String key)
+    {
+        for (TelemetryChannel channel : ALL)
+        {
+            if(channel.key.equals(key))
+            {
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    public static double parseSwitch(String state)
+    {
+        if("on".equals(state))
+        {
+            return ON;
+        }
+        if("off".equals(state))
+        {
+            return OFF;
+        }
+        if("auto".equals(state))
+        {
+            return AUTO;
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,54 @@
+package com.haloproject.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * A consistent copy of every telemetry channel taken from a {@link TelemetrySnapshot}.
+ * Readers keep one of these around and refill it instead of allocating per frame.
+ */
+public class TelemetryFrame
+{
+    final double[] values = new double[TelemetryChannel.COUNT];
+    long version;
+    long sequence = -1;
+    long sourceTime;
+    long receivedTime;
+
+    public TelemetryFrame()
+    {
+        Arrays.fill(values, Double.NaN);
+    }
+
+    public double get(TelemetryChannel channel)
+    {
+        return values[channel.ordinal()];
+    }
+
+    public boolean has(TelemetryChannel channel)
+    {
+        return !Double.isNaN(values[channel.ordinal()]);
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    //the suit's frame counter, -1 if the frame did not carry one
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    //suit clock in milliseconds when the frame was measured, 0 if unknown
+    public long getSourceTime()
+    {
+        return sourceTime;
+    }
+
+    //phone clock in milliseconds when the frame was decoded
+    public long getReceivedTime()
+    {
+        return receivedTime;
+    }
+}
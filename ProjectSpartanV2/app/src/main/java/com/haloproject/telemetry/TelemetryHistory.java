@@ -0,0 +1,302 @@
+package com.haloproject.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * Bounded history of every telemetry channel.
+ *
+ * Each channel keeps a ring of raw samples plus min/max/mean rollups at 1 second, 10 second and
+ * 1 minute resolution. Everything is allocated up front in primitive arrays, so the history costs
+ * the same amount of memory after ten hours as it does after ten seconds.
+ */
+public class TelemetryHistory
+{
+    public static final int RAW_CAPACITY = 2048;
+
+    public enum Resolution
+    {
+        SECOND(1000L, 30 * 60),
+        TEN_SECONDS(10 * 1000L, 6 * 60 * 6),
+        MINUTE(60 * 1000L, 24 * 60);
+
+        public final long width;
+        public final int capacity;
+
+        Resolution(long width, int capacity)
+        {
+            this.width = width;
+            this.capacity = capacity;
+        }
+
+        public long getSpan()
+        {
+            return width * capacity;
+        }
+    }
+
+    //queries that would touch more buckets than this move up to a coarser resolution
+    private static final int MAX_QUERY_BUCKETS = 720;
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+
+    private final Channel[] mChannels = new Channel[TelemetryChannel.COUNT];
+
+    public TelemetryHistory()
+    {
+        for (int i = 0; i < mChannels.length; i++)
+        {
+            mChannels[i] = new Channel();
+        }
+    }
+
+    //approximate heap used by the history, fixed at construction
+    public static long getMemoryBytes()
+    {
+        long perChannel = RAW_CAPACITY * (8L + 8L);
+        for (Resolution resolution : RESOLUTIONS)
+        {
+            perChannel += resolution.capacity * (8L + 4L + 4L + 8L + 4L);
+        }
+        return perChannel * TelemetryChannel.COUNT;
+    }
+
+    //records every channel whose bit is set in updated, see TelemetrySnapshot.publish
+    public synchronized void record(long time, TelemetryFrame frame, long updated)
+    {
+        for (int i = 0; i < mChannels.length; i++)
+        {
+            if((updated & (1L << i)) != 0)
+            {
+                mChannels[i].add(time, frame.values[i]);
+            }
+        }
+    }
+
+    public synchronized void record(TelemetryChannel channel, long time, double value)
+    {
+        mChannels[channel.ordinal()].add(time, value);
+    }
+
+    public synchronized void clear()
+    {
+        for (Channel channel : mChannels)
+        {
+            channel.clear();
+        }
+    }
+
+    public double max(TelemetryChannel channel, long from, long to)
+    {
+        return aggregate(channel, from, to).max;
+    }
+
+    public double min(TelemetryChannel channel, long from, long to)
+    {
+        return aggregate(channel, from, to).min;
+    }
+
+    public double mean(TelemetryChannel channel, long from, long to)
+    {
+        Aggregate aggregate = aggregate(channel, from, to);
+        return aggregate.count == 0 ? Double.NaN : aggregate.sum / aggregate.count;
+    }
+
+    public Aggregate aggregate(TelemetryChannel channel, long from, long to)
+    {
+        Aggregate result = new Aggregate();
+        aggregate(channel, from, to, result);
+        return result;
+    }
+
+    /**
+     * Combines every sample in [from, to]. The range is answered from the finest rollup that
+     * still covers it, so the edges are only accurate to one bucket of that resolution.
+     */
+    public synchronized void aggregate(TelemetryChannel channel, long from, long to, Aggregate result)
+    {
+        result.clear();
+        Channel history = mChannels[channel.ordinal()];
+        Resolution resolution = RESOLUTIONS[RESOLUTIONS.length - 1];
+        for (Resolution candidate : RESOLUTIONS)
+        {
+            if((to - from) / candidate.width <= MAX_QUERY_BUCKETS && history.latest - from < candidate.getSpan())
+            {
+                resolution = candidate;
+                break;
+            }
+        }
+        history.rollups[resolution.ordinal()].aggregate(from, to, result);
+    }
+
+    //copies the raw samples in [from, to] oldest first, returns how many were copied
+    public synchronized int readRaw(TelemetryChannel channel, long from, long to, long[] times, double[] values)
+    {
+        Channel history = mChannels[channel.ordinal()];
+        int copied = 0;
+        int limit = Math.min(times.length, values.length);
+        for (int n = history.size - 1; n >= 0 && copied < limit; n--)
+        {
+            int slot = (history.head - 1 - n + RAW_CAPACITY) % RAW_CAPACITY;
+            long time = history.times[slot];
+            if(time > to)
+            {
+                break;
+            }
+            if(time >= from)
+            {
+                times[copied] = time;
+                values[copied] = history.values[slot];
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    public static class Aggregate
+    {
+        public double min;
+        public double max;
+        public double sum;
+        public long count;
+
+        public Aggregate()
+        {
+            clear();
+        }
+
+        public double getMean()
+        {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        void clear()
+        {
+            min = Double.NaN;
+            max = Double.NaN;
+            sum = 0;
+            count = 0;
+        }
+    }
+
+    private static class Channel
+    {
+        final long[] times = new long[RAW_CAPACITY];
+        final double[] values = new double[RAW_CAPACITY];
+        final Rollup[] rollups = new Rollup[RESOLUTIONS.length];
+        int head;
+        int size;
+        long latest = Long.MIN_VALUE;
+
+        Channel()
+        {
+            for (int i = 0; i < rollups.length; i++)
+            {
+                rollups[i] = new Rollup(RESOLUTIONS[i]);
+            }
+        }
+
+        void add(long time, double value)
+        {
+            if(Double.isNaN(value))
+            {
+                return;
+            }
+            times[head] = time;
+            values[head] = value;
+            head = (head + 1) % RAW_CAPACITY;
+            if(size < RAW_CAPACITY)
+            {
+                size++;
+            }
+            latest = Math.max(latest, time);
+            for (Rollup rollup : rollups)
+            {
+                rollup.add(time, value);
+            }
+        }
+
+        void clear()
+        {
+            head = 0;
+            size = 0;
+            latest = Long.MIN_VALUE;
+            for (Rollup rollup : rollups)
+            {
+                rollup.clear();
+            }
+        }
+    }
+
+    private static class Rollup
+    {
+        final long width;
+        final int capacity;
+        //bucket number (time / width) stored in each slot, stale slots are ignored
+        final long[] buckets;
+        final float[] mins;
+        final float[] maxes;
+        final double[] sums;
+        final int[] counts;
+
+        Rollup(Resolution resolution)
+        {
+            width = resolution.width;
+            capacity = resolution.capacity;
+            buckets = new long[capacity];
+            mins = new float[capacity];
+            maxes = new float[capacity];
+            sums = new double[capacity];
+            counts = new int[capacity];
+            clear();
+        }
+
+        void add(long time, double value)
+        {
+            long bucket = time / width;
+            int slot = (int) (bucket % capacity);
+            if(buckets[slot] != bucket)
+            {
+                buckets[slot] = bucket;
+                mins[slot] = (float) value;
+                maxes[slot] = (float) value;
+                sums[slot] = value;
+                counts[slot] = 1;
+                return;
+            }
+            mins[slot] = Math.min(mins[slot], (float) value);
+            maxes[slot] = Math.max(maxes[slot], (float) value);
+            sums[slot] += value;
+            counts[slot]++;
+        }
+
+        void aggregate(long from, long to, Aggregate result)
+        {
+            long first = Math.max(from / width, to / width - capacity + 1);
+            for (long bucket = first; bucket <= to / width; bucket++)
+            {
+                int slot = (int) (bucket % capacity);
+                if(buckets[slot] != bucket || counts[slot] == 0)
+                {
+                    continue;
+                }
+                if(result.count == 0)
+                {
+                    result.min = mins[slot];
+                    result.max = maxes[slot];
+                }
+                else
+                {
+                    result.min = Math.min(result.min, mins[slot]);
+                    result.max = Math.max(result.max, maxes[slot]);
+                }
+                result.sum += sums[slot];
+                result.count += counts[slot];
+            }
+        }
+
+        void clear()
+        {
+            Arrays.fill(buckets, -1L);
+            Arrays.fill(counts, 0);
+        }
+    }
+}
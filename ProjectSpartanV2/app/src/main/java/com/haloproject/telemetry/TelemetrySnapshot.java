@@ -0,0 +1,130 @@
+package com.haloproject.telemetry;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest value of every telemetry channel, written by the bluetooth reader thread and read by
+ * any number of other threads.
+ *
+ * Publication works like a seqlock: the version is odd while a frame is being written, so a
+ * reader that sees the same even version before and after copying knows it got one whole
+ * frame. Values are stored as raw double bits so neither side locks or allocates.
+ */
+public class TelemetrySnapshot
+{
+    private final AtomicLongArray mValues = new AtomicLongArray(TelemetryChannel.COUNT);
+    private final AtomicLong mVersion = new AtomicLong();
+    private final AtomicLong mSequence = new AtomicLong(-1);
+    private final AtomicLong mSourceTime = new AtomicLong();
+    private final AtomicLong mReceivedTime = new AtomicLong();
+
+    public TelemetrySnapshot()
+    {
+        long unknown = Double.doubleToRawLongBits(Double.NaN);
+        for (int i = 0; i < TelemetryChannel.COUNT; i++)
+        {
+            mValues.set(i, unknown);
+        }
+    }
+
+    //only one thread may write at a time, the frame is stamped as received now with no sequence or source time
+    public void beginWrite()
+    {
+        mVersion.incrementAndGet();
+        mSequence.set(-1);
+        mSourceTime.set(0);
+        mReceivedTime.set(System.currentTimeMillis());
+    }
+
+    //the suit's frame counter and clock, only between beginWrite and endWrite
+    public void setSource(long sequence, long sourceTime)
+    {
+        mSequence.set(sequence);
+        mSourceTime.set(sourceTime);
+    }
+
+    public void set(TelemetryChannel channel, double value)
+    {
+        mValues.set(channel.ordinal(), Double.doubleToRawLongBits(value));
+    }
+
+    public void endWrite()
+    {
+        mVersion.incrementAndGet();
+    }
+
+    //channels missing from the message keep their last value, returns a bit per channel that was set
+    public long publish(JSONObject json)
+    {
+        long updated = 0;
+        beginWrite();
+        try
+        {
+            setSource(json.optLong("seq", -1), json.optLong("time", 0));
+            for (TelemetryChannel channel : TelemetryChannel.ALL)
+            {
+                if(!json.has(channel.key))
+                {
+                    continue;
+                }
+                double value;
+                if(channel.isSwitch)
+                {
+                    value = TelemetryChannel.parseSwitch(json.optString(channel.key, null));
+                }
+                else
+                {
+                    value = json.optDouble(channel.key, Double.NaN);
+                }
+                if(!Double.isNaN(value))
+                {
+                    set(channel, value);
+                    updated |= 1L << channel.ordinal();
+                }
+            }
+        } finally
+        {
+            endWrite();
+        }
+        return updated;
+    }
+
+    public double get(TelemetryChannel channel)
+    {
+        return Double.longBitsToDouble(mValues.get(channel.ordinal()));
+    }
+
+    public long getVersion()
+    {
+        return mVersion.get() & ~1L;
+    }
+
+    public void read(TelemetryFrame frame)
+    {
+        double[] values = frame.values;
+        while (true)
+        {
+            long before = mVersion.get();
+            if((before & 1L) != 0)
+            {
+                Thread.yield();
+                continue;
+            }
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = Double.longBitsToDouble(mValues.get(i));
+            }
+            frame.sequence = mSequence.get();
+            frame.sourceTime = mSourceTime.get();
+            frame.receivedTime = mReceivedTime.get();
+            if(mVersion.get() == before)
+            {
+                frame.version = before;
+                return;
+            }
+        }
+    }
+}
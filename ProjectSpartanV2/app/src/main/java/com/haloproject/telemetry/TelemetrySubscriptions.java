@@ -0,0 +1,174 @@
+package com.haloproject.telemetry;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * Per channel change notifications for any number of subscribers.
+ *
+ * A value subscriber gives a deadband and is only called when its channel has moved at least
+ * that far from the value it was last given, so a view showing two decimals with a 0.01 deadband
+ * is never redrawn for a change it could not display. Switch subscribers are called when the
+ * state changes. Frame subscribers get every dispatched frame.
+ *
+ * Listeners are held weakly: whoever subscribes keeps the listener in a field, and if it goes
+ * away without cancelling, its subscriptions are dropped on the next dispatch instead of keeping
+ * it alive. Everything here runs on one thread, normally the main thread.
+ */
+public class TelemetrySubscriptions
+{
+    public interface ValueListener
+    {
+        void onValueChanged(TelemetryChannel channel, double value);
+    }
+
+    public interface SwitchListener
+    {
+        //state is TelemetryChannel.OFF, ON or AUTO
+        void onSwitchChanged(TelemetryChannel channel, int state);
+    }
+
+    public interface FrameListener
+    {
+        void onFrame(TelemetryFrame frame);
+    }
+
+    private final ArrayList<Subscription>[] mByChannel;
+    private final ArrayList<Subscription> mFrames = new ArrayList<Subscription>();
+    private volatile int mCount;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TelemetrySubscriptions()
+    {
+        mByChannel = new ArrayList[TelemetryChannel.COUNT];
+        for (int i = 0; i < mByChannel.length; i++)
+        {
+            mByChannel[i] = new ArrayList<Subscription>();
+        }
+    }
+
+    //a new subscriber is given the current value on the next dispatch, NaN if it is unknown
+    public Subscription subscribe(TelemetryChannel channel, double deadband, ValueListener listener)
+    {
+        return add(mByChannel[channel.ordinal()], new Subscription(channel, deadband, listener));
+    }
+
+    public Subscription subscribeSwitch(TelemetryChannel channel, SwitchListener listener)
+    {
+        return add(mByChannel[channel.ordinal()], new Subscription(channel, 0.5, listener));
+    }
+
+    public Subscription subscribeFrames(FrameListener listener)
+    {
+        return add(mFrames, new Subscription(null, 0, listener));
+    }
+
+    //readable from any thread, lets the producer skip dispatching while nobody listens
+    public boolean isEmpty()
+    {
+        return mCount == 0;
+    }
+
+    public void dispatch(TelemetryFrame frame)
+    {
+        for (int i = 0; i < mByChannel.length; i++)
+        {
+            ArrayList<Subscription> subscriptions = mByChannel[i];
+            if(subscriptions.isEmpty())
+            {
+                continue;
+            }
+            double value = frame.values[i];
+            for (int j = subscriptions.size() - 1; j >= 0; j--)
+            {
+                Subscription subscription = subscriptions.get(j);
+                if(!subscription.deliver(value))
+                {
+                    subscriptions.remove(j);
+                    mCount--;
+                }
+            }
+        }
+        for (int j = mFrames.size() - 1; j >= 0; j--)
+        {
+            Subscription subscription = mFrames.get(j);
+            Object listener = subscription.mListener.get();
+            if(subscription.mCancelled || listener == null)
+            {
+                mFrames.remove(j);
+                mCount--;
+                continue;
+            }
+            ((FrameListener) listener).onFrame(frame);
+        }
+    }
+
+    private Subscription add(ArrayList<Subscription> subscriptions, Subscription subscription)
+    {
+        subscriptions.add(subscription);
+        mCount++;
+        return subscription;
+    }
+
+    public static class Subscription
+    {
+        private final TelemetryChannel mChannel;
+        private final double mDeadband;
+        private final WeakReference<Object> mListener;
+        private boolean mDelivered;
+        private double mLast;
+        private boolean mCancelled;
+
+        Subscription(TelemetryChannel channel, double deadband, Object listener)
+        {
+            mChannel = channel;
+            mDeadband = deadband;
+            mListener = new WeakReference<Object>(listener);
+        }
+
+        //takes effect from the next dispatch
+        public void cancel()
+        {
+            mCancelled = true;
+        }
+
+        //false once the subscription should be dropped
+        boolean deliver(double value)
+        {
+            Object listener = mListener.get();
+            if(mCancelled || listener == null)
+            {
+                return false;
+            }
+            if(mDelivered && !changed(value))
+            {
+                return true;
+            }
+            if(listener instanceof SwitchListener)
+            {
+                //a switch nobody has reported yet is not off, it is unknown, so wait for a state
+                if(Double.isNaN(value))
+                {
+                    return true;
+                }
+                mDelivered = true;
+                mLast = value;
+                ((SwitchListener) listener).onSwitchChanged(mChannel, (int) value);
+                return true;
+            }
+            mDelivered = true;
+            mLast = value;
+            ((ValueListener) listener).onValueChanged(mChannel, value);
+            return true;
+        }
+
+        private boolean changed(double value)
+        {
+            if(Double.isNaN(value) || Double.isNaN(mLast))
+            {
+                return Double.isNaN(value) != Double.isNaN(mLast);
+            }
+            return Math.abs(value - mLast) >= mDeadband;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.haloproject.telemetry;
+
+import com.haloproject.metrics.Histogram;
+
+/**
+ * Tracks how old telemetry is by the time it is decoded and by the time it is on screen.
+ *
+ * Frames carry the suit's sequence number and timestamp. Sequence numbers count dropped and
+ * duplicated frames, timestamps are turned into phone time with {@link ClockSync} and give three
+ * latency histograms in milliseconds: sensor to decode, decode to UI and sensor to UI.
+ */
+public class TelemetryTiming
+{
+    //past this age the numbers on screen are flagged as stale
+    public static final long DEFAULT_STALE_AFTER = 3000;
+
+    private final ClockSync mClock = new ClockSync();
+    private final Histogram mSensorToDecode = new Histogram();
+    private final Histogram mDecodeToUi = new Histogram();
+    private final Histogram mSensorToUi = new Histogram();
+    private volatile long mStaleAfter = DEFAULT_STALE_AFTER;
+    private long mLastSequence = -1;
+    private long mLastDisplayed = -1;
+    private long mFrames;
+    private long mDropped;
+    private long mDuplicates;
+
+    public ClockSync getClock()
+    {
+        return mClock;
+    }
+
+    /**
+     * Called by the reader for every decoded frame. Returns false for a duplicate, which the
+     * caller should not record again.
+     */
+    public boolean onDecoded(TelemetryFrame frame)
+    {
+        if(frame.sequence >= 0 && !countSequence(frame.sequence))
+        {
+            return false;
+        }
+        if(frame.sourceTime != 0)
+        {
+            mClock.addFrame(frame.sourceTime, frame.receivedTime);
+            mSensorToDecode.record(frame.receivedTime - mClock.toPhoneTime(frame.sourceTime));
+        }
+        return true;
+    }
+
+    private synchronized boolean countSequence(long sequence)
+    {
+        mFrames++;
+        if(mLastSequence >= 0)
+        {
+            long gap = sequence - mLastSequence;
+            //the suit restarts its count from zero when it reboots
+            if(sequence != 0 && gap <= 0)
+            {
+                mDuplicates++;
+                return false;
+            }
+            if(sequence != 0 && gap > 1)
+            {
+                mDropped += gap - 1;
+            }
+        }
+        mLastSequence = sequence;
+        return true;
+    }
+
+    //called by the UI each time it shows frame, a frame is only measured the first time
+    public void onDisplayed(TelemetryFrame frame, long now)
+    {
+        synchronized (this)
+        {
+            if(frame.version == mLastDisplayed)
+            {
+                return;
+            }
+            mLastDisplayed = frame.version;
+        }
+        if(frame.receivedTime != 0)
+        {
+            mDecodeToUi.record(now - frame.receivedTime);
+        }
+        if(frame.sourceTime != 0)
+        {
+            mSensorToUi.record(now - mClock.toPhoneTime(frame.sourceTime));
+        }
+    }
+
+    //milliseconds since frame was measured on the suit, or since it arrived if it has no timestamp
+    public long getAge(TelemetryFrame frame, long now)
+    {
+        if(frame.sourceTime != 0)
+        {
+            return now - mClock.toPhoneTime(frame.sourceTime);
+        }
+        if(frame.receivedTime != 0)
+        {
+            return now - frame.receivedTime;
+        }
+        return -1;
+    }
+
+    //a frame that never arrived counts as stale
+    public boolean isStale(TelemetryFrame frame, long now)
+    {
+        long age = getAge(frame, now);
+        return age < 0 || age > mStaleAfter;
+    }
+
+    public void setStaleAfter(long millis)
+    {
+        mStaleAfter = millis;
+    }
+
+    public Histogram getSensorToDecode()
+    {
+        return mSensorToDecode;
+    }
+
+    public Histogram getDecodeToUi()
+    {
+        return mDecodeToUi;
+    }
+
+    public Histogram getSensorToUi()
+    {
+        return mSensorToUi;
+    }
+
+    public synchronized long getFrames()
+    {
+        return mFrames;
+    }
+
+    public synchronized long getDropped()
+    {
+        return mDropped;
+    }
+
+    public synchronized long getDuplicates()
+    {
+        return mDuplicates;
+    }
+
+    //sequence numbers start over on a new connection
+    public synchronized void reset()
+    {
+        mLastSequence = -1;
+        mClock.reset();
+    }
+}
@@ -0,0 +1,157 @@
+package com.haloproject.voice;
+
+//IMA ADPCM, four bits per sample with the low nibble first, predictor state carries across calls
+public class ImaAdpcmCodec implements VoiceCodec
+{
+    public static final int ID = 2;
+
+    private static final int[] INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8,
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    private int mEncodePredictor;
+    private int mEncodeIndex;
+    private int mPendingNibble = -1;
+    private int mDecodePredictor;
+    private int mDecodeIndex;
+
+    @Override
+    public int getId()
+    {
+        return ID;
+    }
+
+    @Override
+    public int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset)
+    {
+        int written = 0;
+        for (int i = 0; i < samples; i++)
+        {
+            int nibble = encodeNibble(pcm[offset + i]);
+            if(mPendingNibble < 0)
+            {
+                mPendingNibble = nibble;
+            }
+            else
+            {
+                out[outOffset + written++] = (byte) (mPendingNibble | (nibble << 4));
+                mPendingNibble = -1;
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public int decode(byte[] in, int offset, int length, short[] out, int outOffset)
+    {
+        int samples = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            out[outOffset + samples++] = decodeNibble(in[i] & 0x0F);
+            out[outOffset + samples++] = decodeNibble((in[i] >> 4) & 0x0F);
+        }
+        return samples;
+    }
+
+    @Override
+    public int maxEncodedBytes(int samples)
+    {
+        return samples / 2 + 1;
+    }
+
+    @Override
+    public int maxDecodedSamples(int bytes)
+    {
+        return bytes * 2;
+    }
+
+    @Override
+    public void reset()
+    {
+        mEncodePredictor = 0;
+        mEncodeIndex = 0;
+        mPendingNibble = -1;
+        mDecodePredictor = 0;
+        mDecodeIndex = 0;
+    }
+
+    private int encodeNibble(int sample)
+    {
+        int step = STEP_TABLE[mEncodeIndex];
+        int diff = sample - mEncodePredictor;
+        int nibble = 0;
+        if(diff < 0)
+        {
+            nibble = 8;
+            diff = -diff;
+        }
+        int delta = step >> 3;
+        if(diff >= step)
+        {
+            nibble |= 4;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if(diff >= step)
+        {
+            nibble |= 2;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if(diff >= step)
+        {
+            nibble |= 1;
+            delta += step;
+        }
+        //track the decoder's reconstruction so both sides stay in step
+        mEncodePredictor = clamp(mEncodePredictor + ((nibble & 8) != 0 ? -delta : delta));
+        mEncodeIndex = clampIndex(mEncodeIndex + INDEX_TABLE[nibble]);
+        return nibble;
+    }
+
+    private short decodeNibble(int nibble)
+    {
+        int step = STEP_TABLE[mDecodeIndex];
+        int delta = step >> 3;
+        if((nibble & 4) != 0)
+        {
+            delta += step;
+        }
+        if((nibble & 2) != 0)
+        {
+            delta += step >> 1;
+        }
+        if((nibble & 1) != 0)
+        {
+            delta += step >> 2;
+        }
+        mDecodePredictor = clamp(mDecodePredictor + ((nibble & 8) != 0 ? -delta : delta));
+        mDecodeIndex = clampIndex(mDecodeIndex + INDEX_TABLE[nibble]);
+        return (short) mDecodePredictor;
+    }
+
+    private static int clamp(int sample)
+    {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+    }
+
+    private static int clampIndex(int index)
+    {
+        return Math.max(0, Math.min(STEP_TABLE.length - 1, index));
+    }
+}
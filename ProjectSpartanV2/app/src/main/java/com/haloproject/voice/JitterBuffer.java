@@ -0,0 +1,253 @@
+package com.haloproject.voice;
+
+import java.util.Arrays;
+
+/**
+ * Smooths out bursty voice packets between the socket reader and the audio track.
+ *
+ * Incoming 16 bit PCM is cut into fixed frames and queued. Playback starts once the queue holds
+ * the target delay, which follows the measured arrival jitter. When the queue runs dry the last
+ * frame is repeated at decreasing volume for a few frames before falling back to silence, and
+ * when it grows past the maximum delay the oldest frames are dropped so latency stays bounded.
+ */
+public class JitterBuffer
+{
+    public static final int FRAME_MILLIS = 20;
+    private static final int MAX_CONCEALED_FRAMES = 3;
+
+    private final int mSampleRate;
+    private final int mFrameSamples;
+    private final int mMinFrames;
+    private final int mMaxFrames;
+    private final short[][] mFrames;
+    private int mHead;
+    private int mCount;
+    private final short[] mPartial;
+    private int mPartialSamples;
+    private int mPendingByte = -1;
+
+    private final short[] mLastFrame;
+    private boolean mHasLastFrame;
+    private int mConcealedInRow;
+    private boolean mBuffering = true;
+
+    private long mLastArrival;
+    private int mSamplesSinceArrival;
+    private double mJitterMillis;
+    private int mTargetFrames;
+
+    private long mUnderruns;
+    private long mOverruns;
+    private long mConcealedFrames;
+    private long mDroppedFrames;
+
+    public JitterBuffer(int sampleRate)
+    {
+        this(sampleRate, 40, 400);
+    }
+
+    public JitterBuffer(int sampleRate, int minDelayMillis, int maxDelayMillis)
+    {
+        mSampleRate = sampleRate;
+        mFrameSamples = sampleRate * FRAME_MILLIS / 1000;
+        mMinFrames = Math.max(1, minDelayMillis / FRAME_MILLIS);
+        mMaxFrames = Math.max(mMinFrames + 1, maxDelayMillis / FRAME_MILLIS);
+        mFrames = new short[mMaxFrames + 1][mFrameSamples];
+        mPartial = new short[mFrameSamples];
+        mLastFrame = new short[mFrameSamples];
+        mTargetFrames = mMinFrames;
+    }
+
+    public int getFrameSamples()
+    {
+        return mFrameSamples;
+    }
+
+    //little endian 16 bit PCM as read from the socket, chunks may split samples
+    public synchronized void write(byte[] pcm, int offset, int length)
+    {
+        trackArrival(System.nanoTime(), length);
+        int end = offset + length;
+        int i = offset;
+        if(mPendingByte >= 0 && i < end)
+        {
+            addSample((short) ((pcm[i] << 8) | mPendingByte));
+            mPendingByte = -1;
+            i++;
+        }
+        for (; i + 1 < end; i += 2)
+        {
+            addSample((short) ((pcm[i + 1] << 8) | (pcm[i] & 0xFF)));
+        }
+        if(i < end)
+        {
+            mPendingByte = pcm[i] & 0xFF;
+        }
+    }
+
+    public synchronized void write(short[] samples, int offset, int length)
+    {
+        trackArrival(System.nanoTime(), length * 2);
+        for (int i = offset; i < offset + length; i++)
+        {
+            addSample(samples[i]);
+        }
+    }
+
+    /**
+     * Fills out with the next frame of audio, never blocks. Returns false when the frame is
+     * silence because nothing was buffered.
+     */
+    public synchronized boolean read(short[] out)
+    {
+        if(mBuffering)
+        {
+            if(mCount < mTargetFrames)
+            {
+                fillSilence(out);
+                return false;
+            }
+            mBuffering = false;
+        }
+        if(mCount == 0)
+        {
+            if(mConcealedInRow == 0)
+            {
+                mUnderruns++;
+            }
+            return conceal(out);
+        }
+        short[] frame = mFrames[mHead];
+        System.arraycopy(frame, 0, out, 0, mFrameSamples);
+        System.arraycopy(frame, 0, mLastFrame, 0, mFrameSamples);
+        mHasLastFrame = true;
+        mConcealedInRow = 0;
+        mHead = (mHead + 1) % mFrames.length;
+        mCount--;
+        return true;
+    }
+
+    //the sender is gone: queue the partial frame padded with silence and play out what is left
+    public synchronized void drain()
+    {
+        while (mPartialSamples > 0)
+        {
+            addSample((short) 0);
+        }
+        mPendingByte = -1;
+        mBuffering = false;
+    }
+
+    public synchronized void clear()
+    {
+        mHead = 0;
+        mCount = 0;
+        mPartialSamples = 0;
+        mPendingByte = -1;
+        mHasLastFrame = false;
+        mConcealedInRow = 0;
+        mBuffering = true;
+        mLastArrival = 0;
+        mSamplesSinceArrival = 0;
+    }
+
+    public synchronized int getDelayMillis()
+    {
+        return mCount * FRAME_MILLIS + mPartialSamples * 1000 / mSampleRate;
+    }
+
+    public synchronized int getTargetDelayMillis()
+    {
+        return mTargetFrames * FRAME_MILLIS;
+    }
+
+    public synchronized double getJitterMillis()
+    {
+        return mJitterMillis;
+    }
+
+    public synchronized long getUnderruns()
+    {
+        return mUnderruns;
+    }
+
+    public synchronized long getOverruns()
+    {
+        return mOverruns;
+    }
+
+    public synchronized long getConcealedFrames()
+    {
+        return mConcealedFrames;
+    }
+
+    public synchronized long getDroppedFrames()
+    {
+        return mDroppedFrames;
+    }
+
+    //interarrival jitter as in RFC 3550: how far each arrival strays from the audio it carries
+    private void trackArrival(long now, int bytes)
+    {
+        if(mLastArrival != 0)
+        {
+            double elapsed = (now - mLastArrival) / 1000000.0;
+            double expected = mSamplesSinceArrival * 1000.0 / mSampleRate;
+            mJitterMillis += (Math.abs(elapsed - expected) - mJitterMillis) / 16.0;
+            int target = (int) Math.ceil(3 * mJitterMillis / FRAME_MILLIS);
+            mTargetFrames = Math.max(mMinFrames, Math.min(mMaxFrames - 1, target));
+        }
+        mLastArrival = now;
+        mSamplesSinceArrival = bytes / 2;
+    }
+
+    private void addSample(short sample)
+    {
+        mPartial[mPartialSamples++] = sample;
+        if(mPartialSamples < mFrameSamples)
+        {
+            return;
+        }
+        mPartialSamples = 0;
+        if(mCount >= mMaxFrames)
+        {
+            //too far behind, skip back to the target delay instead of letting latency grow
+            mOverruns++;
+            int drop = mCount - mTargetFrames;
+            mHead = (mHead + drop) % mFrames.length;
+            mCount -= drop;
+            mDroppedFrames += drop;
+        }
+        System.arraycopy(mPartial, 0, mFrames[(mHead + mCount) % mFrames.length], 0, mFrameSamples);
+        mCount++;
+    }
+
+    private boolean conceal(short[] out)
+    {
+        if(!mHasLastFrame || mConcealedInRow >= MAX_CONCEALED_FRAMES)
+        {
+            //the gap is too long to hide, wait for the buffer to refill
+            mBuffering = true;
+            mConcealedInRow = 0;
+            mHasLastFrame = false;
+            fillSilence(out);
+            return false;
+        }
+        mConcealedInRow++;
+        mConcealedFrames++;
+        //fade linearly to silence over the concealed frames
+        float startGain = 1f - (mConcealedInRow - 1) / (float) MAX_CONCEALED_FRAMES;
+        float endGain = 1f - mConcealedInRow / (float) MAX_CONCEALED_FRAMES;
+        for (int i = 0; i < mFrameSamples; i++)
+        {
+            float gain = startGain + (endGain - startGain) * i / mFrameSamples;
+            out[i] = (short) (mLastFrame[i] * gain);
+        }
+        return true;
+    }
+
+    private void fillSilence(short[] out)
+    {
+        Arrays.fill(out, 0, mFrameSamples, (short) 0);
+    }
+}
@@ -0,0 +1,88 @@
+package com.haloproject.voice;
+
+//G.711 mu-law, one byte per sample
+public class MuLawCodec implements VoiceCodec
+{
+    public static final int ID = 1;
+
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 32635;
+    private static final short[] DECODE_TABLE = new short[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int value = ~i & 0xFF;
+            int sign = value & 0x80;
+            int exponent = (value >> 4) & 0x07;
+            int mantissa = value & 0x0F;
+            int sample = (((mantissa << 3) + BIAS) << exponent) - BIAS;
+            DECODE_TABLE[i] = (short) (sign != 0 ? -sample : sample);
+        }
+    }
+
+    @Override
+    public int getId()
+    {
+        return ID;
+    }
+
+    @Override
+    public int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset)
+    {
+        for (int i = 0; i < samples; i++)
+        {
+            out[outOffset + i] = encodeSample(pcm[offset + i]);
+        }
+        return samples;
+    }
+
+    @Override
+    public int decode(byte[] in, int offset, int length, short[] out, int outOffset)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            out[outOffset + i] = DECODE_TABLE[in[offset + i] & 0xFF];
+        }
+        return length;
+    }
+
+    @Override
+    public int maxEncodedBytes(int samples)
+    {
+        return samples;
+    }
+
+    @Override
+    public int maxDecodedSamples(int bytes)
+    {
+        return bytes;
+    }
+
+    @Override
+    public void reset()
+    {
+    }
+
+    static byte encodeSample(int sample)
+    {
+        int sign = (sample >> 8) & 0x80;
+        if(sign != 0)
+        {
+            sample = -sample;
+        }
+        if(sample > CLIP)
+        {
+            sample = CLIP;
+        }
+        sample += BIAS;
+        int exponent = 7;
+        for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1)
+        {
+            exponent--;
+        }
+        int mantissa = (sample >> (exponent + 3)) & 0x0F;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+}
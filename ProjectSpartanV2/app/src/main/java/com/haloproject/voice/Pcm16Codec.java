@@ -0,0 +1,68 @@
+package com.haloproject.voice;
+
+//raw little endian 16 bit PCM, what senders without a stream header send
+public class Pcm16Codec implements VoiceCodec
+{
+    public static final int ID = 0;
+
+    private int mPendingByte = -1;
+
+    @Override
+    public int getId()
+    {
+        return ID;
+    }
+
+    @Override
+    public int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset)
+    {
+        for (int i = 0; i < samples; i++)
+        {
+            short sample = pcm[offset + i];
+            out[outOffset + 2 * i] = (byte) sample;
+            out[outOffset + 2 * i + 1] = (byte) (sample >> 8);
+        }
+        return samples * 2;
+    }
+
+    @Override
+    public int decode(byte[] in, int offset, int length, short[] out, int outOffset)
+    {
+        int end = offset + length;
+        int i = offset;
+        int samples = 0;
+        if(mPendingByte >= 0 && i < end)
+        {
+            out[outOffset + samples++] = (short) ((in[i] << 8) | mPendingByte);
+            mPendingByte = -1;
+            i++;
+        }
+        for (; i + 1 < end; i += 2)
+        {
+            out[outOffset + samples++] = (short) ((in[i + 1] << 8) | (in[i] & 0xFF));
+        }
+        if(i < end)
+        {
+            mPendingByte = in[i] & 0xFF;
+        }
+        return samples;
+    }
+
+    @Override
+    public int maxEncodedBytes(int samples)
+    {
+        return samples * 2;
+    }
+
+    @Override
+    public int maxDecodedSamples(int bytes)
+    {
+        return bytes / 2 + 1;
+    }
+
+    @Override
+    public void reset()
+    {
+        mPendingByte = -1;
+    }
+}
@@ -0,0 +1,24 @@
+package com.haloproject.voice;
+
+/**
+ * Converts 16 bit PCM to and from the bytes sent over the voice socket.
+ * Implementations keep per stream state, so every stream needs its own instance, and never
+ * allocate while encoding or decoding.
+ */
+public interface VoiceCodec
+{
+    //identifies the codec in the stream header, see VoiceStreamHeader
+    int getId();
+
+    //returns the number of bytes written to out
+    int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset);
+
+    //returns the number of samples written to out
+    int decode(byte[] in, int offset, int length, short[] out, int outOffset);
+
+    int maxEncodedBytes(int samples);
+
+    int maxDecodedSamples(int bytes);
+
+    void reset();
+}
@@ -0,0 +1,239 @@
+package com.haloproject.voice;
+
+/**
+ * Mixes up to MAX_STREAMS talkers into one output.
+ *
+ * Every stream gets its own jitter buffer, gain and level meter, all allocated up front. Each
+ * call to mix pulls one frame from every active stream, sums them with their gains and soft clips
+ * the result, so several people talking at once stays intelligible instead of wrapping around.
+ * Slots are reused; a generation number stops a reader that has been replaced from writing into
+ * the slot's new stream.
+ */
+public class VoiceMixer
+{
+    public static final int MAX_STREAMS = 4;
+    //output below this fraction of full scale passes through untouched
+    private static final float CLIP_KNEE = 0.6f;
+
+    private final Stream[] mStreams = new Stream[MAX_STREAMS];
+    private final float[] mMix;
+    private final int mFrameSamples;
+    private long mNextGeneration = 1;
+    private long mClippedSamples;
+
+    public VoiceMixer(int sampleRate)
+    {
+        for (int i = 0; i < MAX_STREAMS; i++)
+        {
+            mStreams[i] = new Stream(sampleRate);
+        }
+        mFrameSamples = mStreams[0].jitterBuffer.getFrameSamples();
+        mMix = new float[mFrameSamples];
+    }
+
+    public int getFrameSamples()
+    {
+        return mFrameSamples;
+    }
+
+    //claims a free slot for a new talker, -1 if every slot is taken
+    public synchronized int open()
+    {
+        for (int i = 0; i < MAX_STREAMS; i++)
+        {
+            Stream stream = mStreams[i];
+            if(stream.generation == 0)
+            {
+                stream.jitterBuffer.clear();
+                stream.generation = mNextGeneration++;
+                stream.closing = false;
+                stream.gain = 1f;
+                stream.openedAt = System.nanoTime();
+                stream.level = 0;
+                stream.peak = 0;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized long getGeneration(int slot)
+    {
+        return mStreams[slot].generation;
+    }
+
+    //the slot that has been talking the longest, the one to give up when a new talker arrives
+    public synchronized int getOldestStream()
+    {
+        int oldest = -1;
+        for (int i = 0; i < MAX_STREAMS; i++)
+        {
+            Stream stream = mStreams[i];
+            if(stream.generation != 0 && (oldest == -1 || stream.openedAt < mStreams[oldest].openedAt))
+            {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    //false once the slot belongs to someone else
+    public synchronized boolean write(int slot, long generation, short[] pcm, int offset, int length)
+    {
+        Stream stream = mStreams[slot];
+        if(stream.generation != generation || stream.closing)
+        {
+            return false;
+        }
+        stream.jitterBuffer.write(pcm, offset, length);
+        return true;
+    }
+
+    //the talker hung up, what is still buffered plays out before the slot is freed
+    public synchronized void close(int slot, long generation)
+    {
+        Stream stream = mStreams[slot];
+        if(stream.generation == generation)
+        {
+            stream.closing = true;
+            stream.jitterBuffer.drain();
+        }
+    }
+
+    //frees the slot immediately, dropping anything still buffered
+    public synchronized void evict(int slot)
+    {
+        Stream stream = mStreams[slot];
+        stream.generation = 0;
+        stream.closing = false;
+        stream.jitterBuffer.clear();
+    }
+
+    public synchronized void setGain(int slot, float gain)
+    {
+        mStreams[slot].gain = gain;
+    }
+
+    public synchronized int getActiveStreams()
+    {
+        int active = 0;
+        for (Stream stream : mStreams)
+        {
+            if(stream.generation != 0)
+            {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    //RMS level of the slot's last frame in dBFS, -infinity when silent
+    public synchronized double getLevel(int slot)
+    {
+        return 20 * Math.log10(mStreams[slot].level);
+    }
+
+    public synchronized double getPeak(int slot)
+    {
+        return 20 * Math.log10(mStreams[slot].peak);
+    }
+
+    public synchronized int getDelayMillis(int slot)
+    {
+        return mStreams[slot].jitterBuffer.getDelayMillis();
+    }
+
+    public synchronized JitterBuffer getJitterBuffer(int slot)
+    {
+        return mStreams[slot].jitterBuffer;
+    }
+
+    public synchronized long getClippedSamples()
+    {
+        return mClippedSamples;
+    }
+
+    /**
+     * Mixes one frame from every active stream into out. Returns false if nobody contributed, in
+     * which case out is silence.
+     */
+    public synchronized boolean mix(short[] out)
+    {
+        float[] mix = mMix;
+        for (int i = 0; i < mFrameSamples; i++)
+        {
+            mix[i] = 0f;
+        }
+        boolean contributed = false;
+        for (Stream stream : mStreams)
+        {
+            if(stream.generation == 0)
+            {
+                continue;
+            }
+            short[] frame = stream.frame;
+            //a closing stream is freed as soon as it has nothing left to play
+            if(stream.closing && stream.jitterBuffer.getDelayMillis() == 0 || !stream.jitterBuffer.read(frame))
+            {
+                stream.level = 0;
+                stream.peak = 0;
+                if(stream.closing)
+                {
+                    stream.generation = 0;
+                }
+                continue;
+            }
+            contributed = true;
+            float gain = stream.gain / 32768f;
+            double energy = 0;
+            int peak = 0;
+            for (int i = 0; i < mFrameSamples; i++)
+            {
+                int sample = frame[i];
+                mix[i] += sample * gain;
+                energy += sample * sample;
+                peak = Math.max(peak, Math.abs(sample));
+            }
+            stream.level = Math.sqrt(energy / mFrameSamples) / 32768.0;
+            stream.peak = peak / 32768.0;
+        }
+        for (int i = 0; i < mFrameSamples; i++)
+        {
+            out[i] = (short) (softClip(mix[i]) * 32767f);
+        }
+        return contributed;
+    }
+
+    //linear up to the knee, then eases into full scale with a rational tanh approximation
+    private float softClip(float x)
+    {
+        float magnitude = Math.abs(x);
+        if(magnitude <= CLIP_KNEE)
+        {
+            return x;
+        }
+        mClippedSamples++;
+        float z = (magnitude - CLIP_KNEE) / (1f - CLIP_KNEE);
+        float shaped = z >= 3f ? 1f : z * (27f + z * z) / (27f + 9f * z * z);
+        float clipped = CLIP_KNEE + (1f - CLIP_KNEE) * shaped;
+        return x < 0 ? -clipped : clipped;
+    }
+
+    private static class Stream
+    {
+        final JitterBuffer jitterBuffer;
+        final short[] frame;
+        long generation;
+        boolean closing;
+        float gain = 1f;
+        long openedAt;
+        double level;
+        double peak;
+
+        Stream(int sampleRate)
+        {
+            jitterBuffer = new JitterBuffer(sampleRate);
+            frame = new short[jitterBuffer.getFrameSamples()];
+        }
+    }
+}
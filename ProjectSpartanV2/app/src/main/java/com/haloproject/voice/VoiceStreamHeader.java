@@ -0,0 +1,58 @@
+package com.haloproject.voice;
+
+/**
+ * Four bytes a sender writes before any audio: 'H', 'V', the codec id and the sample rate in
+ * hundreds of Hz. Streams that don't start with it are treated as raw 16 bit PCM, which is what
+ * senders did before codecs existed.
+ */
+public final class VoiceStreamHeader
+{
+    public static final int SIZE = 4;
+    private static final byte MAGIC_0 = 'H';
+    private static final byte MAGIC_1 = 'V';
+
+    private VoiceStreamHeader()
+    {
+    }
+
+    public static int write(VoiceCodec codec, int sampleRate, byte[] out, int offset)
+    {
+        out[offset] = MAGIC_0;
+        out[offset + 1] = MAGIC_1;
+        out[offset + 2] = (byte) codec.getId();
+        out[offset + 3] = (byte) (sampleRate / 100);
+        return SIZE;
+    }
+
+    public static boolean matches(byte[] in, int offset, int length)
+    {
+        return length >= SIZE && in[offset] == MAGIC_0 && in[offset + 1] == MAGIC_1
+                && (in[offset + 2] & 0xFF) <= ImaAdpcmCodec.ID;
+    }
+
+    public static int getSampleRate(byte[] in, int offset)
+    {
+        return (in[offset + 3] & 0xFF) * 100;
+    }
+
+    //a fresh codec for the id in a matching header
+    public static VoiceCodec readCodec(byte[] in, int offset)
+    {
+        return createCodec(in[offset + 2] & 0xFF);
+    }
+
+    public static VoiceCodec createCodec(int id)
+    {
+        switch (id)
+        {
+            case Pcm16Codec.ID:
+                return new Pcm16Codec();
+            case MuLawCodec.ID:
+                return new MuLawCodec();
+            case ImaAdpcmCodec.ID:
+                return new ImaAdpcmCodec();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.haloproject.voice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sender side of the voice socket: writes the stream header, then every packet encoded with the
+ * chosen codec. Packets may be at most maxPacketSamples long, the buffer is allocated once.
+ */
+public class VoiceStreamWriter
+{
+    private final OutputStream out;
+    private final VoiceCodec codec;
+    private final int sampleRate;
+    private final int maxPacketSamples;
+    private final byte[] packet;
+    private boolean headerWritten;
+
+    public VoiceStreamWriter(OutputStream out, VoiceCodec codec, int sampleRate, int maxPacketSamples)
+    {
+        this.out = out;
+        this.codec = codec;
+        this.sampleRate = sampleRate;
+        this.maxPacketSamples = maxPacketSamples;
+        this.packet = new byte[Math.max(VoiceStreamHeader.SIZE, codec.maxEncodedBytes(maxPacketSamples))];
+    }
+
+    public void write(short[] pcm, int offset, int samples) throws IOException
+    {
+        if(samples > maxPacketSamples)
+        {
+            throw new IllegalArgumentException(samples + " samples, at most " + maxPacketSamples);
+        }
+        if(!headerWritten)
+        {
+            out.write(packet, 0, VoiceStreamHeader.write(codec, sampleRate, packet, 0));
+            headerWritten = true;
+        }
+        out.write(packet, 0, codec.encode(pcm, offset, samples, packet, 0));
+    }
+
+    public VoiceCodec getCodec()
+    {
+        return codec;
+    }
+}
@@ -0,0 +1,9 @@
+package com.haloproject.warnings;
+
+//most urgent first, the ordinal is the sort order of active warnings
+public enum Severity
+{
+    CRITICAL,
+    WARNING,
+    NOTICE
+}
@@ -0,0 +1,66 @@
+package com.haloproject.warnings;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every warning the suit can put in the "warnings" object of a status message, see json.txt.
+ * Messages are the ones the suit sends; they are used when a sender leaves the value empty.
+ */
+public enum WarningKind
+{
+    CRITICAL_HIGH_BODY_TEMPERATURE("critical high body temperature", Severity.CRITICAL, "BODY TEMPERATURE CRITICALLY HIGH"),
+    HIGH_BODY_TEMPERATURE("high body temperature", Severity.WARNING, "BODY TEMPERATURE HIGH"),
+    CRITICAL_LOW_BODY_TEMPERATURE("critical low body temperature", Severity.CRITICAL, "BODY TEMPERATURE CRITICALLY LOW"),
+    LOW_BODY_TEMPERATURE("low body temperature", Severity.WARNING, "BODY TEMPERATURE LOW"),
+    CRITICAL_HIGH_HEAD_TEMPERATURE("critical high head temperature", Severity.CRITICAL, "HEAD TEMPERATURE CRITICALLY HIGH"),
+    HIGH_HEAD_TEMPERATURE("high head temperature", Severity.WARNING, "HEAD TEMPERATURE HIGH"),
+    CRITICAL_LOW_HEAD_TEMPERATURE("critical low head temperature", Severity.CRITICAL, "HEAD TEMPERATURE CRITICALLY LOW"),
+    LOW_HEAD_TEMPERATURE("low head temperature", Severity.WARNING, "HEAD TEMPERATURE LOW"),
+    HIGH_WATER_TEMPERATURE("high water temperature", Severity.NOTICE, "WATER TEMPERATURE HIGH"),
+    LOW_WATER_TEMPERATURE("low water temperature", Severity.NOTICE, "WATER TEMPERATURE LOW"),
+    LOW_WATER_FLOW("low water flow", Severity.WARNING, "LOW WATER FLOW, POSSIBLE LEAK"),
+    LOW_8AH_BATTERY("low 8AH battery warning", Severity.NOTICE, "TURNIGY 8 AH LOW BATTERY"),
+    LOW_2AH_BATTERY("low 2AH battery warning", Severity.NOTICE, "TURNIGY 2 AH LOW BATTERY"),
+    LOW_HUD_BATTERY("low hud battery warning", Severity.NOTICE, "GOOGLE GLASS LOW BATTERY"),
+    LOW_PHONE_BATTERY("low phone battery warning", Severity.NOTICE, "PHONE LOW BATTERY");
+
+    public final String key;
+    public final Severity severity;
+    public final String message;
+
+    static final WarningKind[] ALL = values();
+    public static final int COUNT = ALL.length;
+    private static final Map<String, WarningKind> BY_KEY = new HashMap<String, WarningKind>();
+
+    static
+    {
+        for (WarningKind kind : ALL)
+        {
+            BY_KEY.put(kind.key, kind);
+        }
+    }
+
+    WarningKind(String key, Severity severity, String message)
+    {
+        this.key = key;
+        this.severity = severity;
+        this.message = message;
+    }
+
+    public int mask()
+    {
+        return 1 << ordinal();
+    }
+
+    public static WarningKind get(int ordinal)
+    {
+        return ALL[ordinal];
+    }
+
+    //null for keys this version does not know about
+    public static WarningKind fromKey(String key)
+    {
+        return BY_KEY.get(key);
+    }
+}
@@ -0,0 +1,208 @@
+package com.haloproject.warnings;
+
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * Turns the warnings reported in every status message into a stable list of active warnings.
+ *
+ * The suit repeats a warning in every message for as long as it holds, so the engine keeps one
+ * bit per kind instead of a growing list: a warning is raised once it has been reported in enough
+ * consecutive messages (one for critical ones), and cleared only after it has been missing from
+ * several messages and has been shown for a minimum time, so a reading hovering on a threshold
+ * does not flicker. Newly raised warnings trigger an alert, rate limited per severity and overall.
+ * An update costs the same however long a warning has been active.
+ */
+public class WarningsEngine
+{
+    public interface Listener
+    {
+        //called on the thread that fed the update
+        void onWarningsChanged(int active);
+
+        void onAlert(WarningKind kind);
+    }
+
+    private static final Severity[] SEVERITIES = Severity.values();
+    //consecutive messages a warning must appear in before it is raised, by severity
+    private static final int[] RAISE_AFTER = {1, 2, 2};
+    private static final int CLEAR_AFTER = 3;
+    public static final long MIN_HOLD = 10 * 1000;
+    //shortest time between two alerts of the same severity
+    private static final long[] ALERT_INTERVAL = {10 * 1000, 60 * 1000, 5 * 60 * 1000};
+    private static final long MIN_ALERT_GAP = 3 * 1000;
+
+    private final int[] mPresent = new int[WarningKind.COUNT];
+    private final int[] mAbsent = new int[WarningKind.COUNT];
+    private final long[] mRaisedAt = new long[WarningKind.COUNT];
+    private final long[] mLastAlert = new long[SEVERITIES.length];
+    private long mLastAnyAlert = Long.MIN_VALUE / 2;
+    private int mActive;
+    private long mAlerts;
+    private long mSuppressedAlerts;
+    private volatile Listener mListener;
+
+    public WarningsEngine()
+    {
+        for (int i = 0; i < mLastAlert.length; i++)
+        {
+            mLastAlert[i] = Long.MIN_VALUE / 2;
+        }
+    }
+
+    //one bit per WarningKind present in the "warnings" object, unknown keys are ignored
+    public static int parse(JSONObject warnings)
+    {
+        int reported = 0;
+        Iterator<?> keys = warnings.keys();
+        while (keys.hasNext())
+        {
+            WarningKind kind = WarningKind.fromKey((String) keys.next());
+            if(kind != null)
+            {
+                reported |= kind.mask();
+            }
+        }
+        return reported;
+    }
+
+    public void setListener(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    //feeds the warnings reported by one status message received at now
+    public void update(int reported, long now)
+    {
+        int raised = 0;
+        int before;
+        int after;
+        synchronized (this)
+        {
+            before = mActive;
+            for (int i = 0; i < WarningKind.COUNT; i++)
+            {
+                int bit = 1 << i;
+                if((reported & bit) != 0)
+                {
+                    mAbsent[i] = 0;
+                    mPresent[i]++;
+                    if((mActive & bit) == 0 && mPresent[i] >= RAISE_AFTER[WarningKind.get(i).severity.ordinal()])
+                    {
+                        mActive |= bit;
+                        mRaisedAt[i] = now;
+                        raised |= bit;
+                    }
+                }
+                else
+                {
+                    mPresent[i] = 0;
+                    mAbsent[i]++;
+                    if((mActive & bit) != 0 && mAbsent[i] >= CLEAR_AFTER && now - mRaisedAt[i] >= MIN_HOLD)
+                    {
+                        mActive &= ~bit;
+                    }
+                }
+            }
+            after = mActive;
+            raised = takeAlerts(raised, now);
+        }
+        Listener listener = mListener;
+        if(listener == null)
+        {
+            return;
+        }
+        if(after != before)
+        {
+            listener.onWarningsChanged(after);
+        }
+        for (int i = 0; raised != 0; i++)
+        {
+            if((raised & (1 << i)) != 0)
+            {
+                listener.onAlert(WarningKind.get(i));
+                raised &= ~(1 << i);
+            }
+        }
+    }
+
+    //keeps the most severe newly raised warning that the rate limits allow, returns it as a mask
+    private int takeAlerts(int raised, long now)
+    {
+        if(raised == 0)
+        {
+            return 0;
+        }
+        int best = -1;
+        for (int i = 0; i < WarningKind.COUNT; i++)
+        {
+            if((raised & (1 << i)) != 0 && (best == -1 || WarningKind.get(i).severity.ordinal() < WarningKind.get(best).severity.ordinal()))
+            {
+                best = i;
+            }
+        }
+        int severity = WarningKind.get(best).severity.ordinal();
+        if(now - mLastAnyAlert < MIN_ALERT_GAP || now - mLastAlert[severity] < ALERT_INTERVAL[severity])
+        {
+            mSuppressedAlerts += Integer.bitCount(raised);
+            return 0;
+        }
+        mLastAnyAlert = now;
+        mLastAlert[severity] = now;
+        mAlerts++;
+        mSuppressedAlerts += Integer.bitCount(raised) - 1;
+        return 1 << best;
+    }
+
+    public synchronized int getActive()
+    {
+        return mActive;
+    }
+
+    public synchronized boolean isActive(WarningKind kind)
+    {
+        return (mActive & kind.mask()) != 0;
+    }
+
+    /**
+     * Copies the active warnings into out, most severe first and newest first within a severity.
+     * out needs room for WarningKind.COUNT entries. Returns how many were copied.
+     */
+    public synchronized int readActive(WarningKind[] out)
+    {
+        int count = 0;
+        for (Severity severity : SEVERITIES)
+        {
+            int start = count;
+            for (int i = 0; i < WarningKind.COUNT; i++)
+            {
+                WarningKind kind = WarningKind.get(i);
+                if((mActive & (1 << i)) == 0 || kind.severity != severity)
+                {
+                    continue;
+                }
+                //insertion into a list of at most COUNT entries
+                int position = count;
+                while (position > start && mRaisedAt[out[position - 1].ordinal()] < mRaisedAt[i])
+                {
+                    out[position] = out[position - 1];
+                    position--;
+                }
+                out[position] = kind;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized long getAlerts()
+    {
+        return mAlerts;
+    }
+
+    public synchronized long getSuppressedAlerts()
+    {
+        return mSuppressedAlerts;
+    }
+}
@@ -0,0 +1,78 @@
+package com.haloproject.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HandleNextConnection loop: read a chunk of 16 bit PCM from the socket and hand it to the
+ * AudioTrack. One invocation moves one second of 8 kHz mono audio.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioCopyBenchmark
+{
+    static final int SAMPLE_RATE = 8000;
+    //AudioRecord.getMinBufferSize for 8 kHz mono 16 bit on most devices
+    static final int MIN_BUFFER_SIZE = 640;
+
+    private byte[] mSecondOfAudio;
+    private byte[] mTrack;
+    private int mTrackPosition;
+
+    @Setup
+    public void setup()
+    {
+        mSecondOfAudio = new byte[SAMPLE_RATE * 2];
+        for (int i = 0; i < SAMPLE_RATE; i++)
+        {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) * 8000);
+            mSecondOfAudio[2 * i] = (byte) sample;
+            mSecondOfAudio[2 * i + 1] = (byte) (sample >> 8);
+        }
+        mTrack = new byte[MIN_BUFFER_SIZE * 4];
+    }
+
+    @Benchmark
+    public int baselineReadWriteLoop() throws IOException
+    {
+        ByteArrayInputStream socket = new ByteArrayInputStream(mSecondOfAudio);
+        byte[] buffer = new byte[MIN_BUFFER_SIZE];
+        int total = 0;
+        int bytesRead;
+        while ((bytesRead = socket.read(buffer)) > 0)
+        {
+            playerWrite(buffer, 0, bytesRead);
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    //stands in for AudioTrack.write, which copies into the track's native ring buffer
+    private void playerWrite(byte[] buffer, int offset, int length)
+    {
+        while (length > 0)
+        {
+            int chunk = Math.min(length, mTrack.length - mTrackPosition);
+            System.arraycopy(buffer, offset, mTrack, mTrackPosition, chunk);
+            mTrackPosition = (mTrackPosition + chunk) % mTrack.length;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+}
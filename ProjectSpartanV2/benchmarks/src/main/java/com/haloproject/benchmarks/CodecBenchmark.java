@@ -0,0 +1,82 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.voice.ImaAdpcmCodec;
+import com.haloproject.voice.MuLawCodec;
+import com.haloproject.voice.Pcm16Codec;
+import com.haloproject.voice.VoiceCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of one 20 ms packet of 8 kHz voice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark
+{
+    private static final int PACKET_SAMPLES = 160;
+
+    @Param({"pcm16", "mulaw", "adpcm"})
+    public String codec;
+
+    private VoiceCodec mEncoder;
+    private VoiceCodec mDecoder;
+    private short[] mSpeech;
+    private int mOffset;
+    private byte[] mPacket;
+    private int mPacketLength;
+    private short[] mDecoded;
+
+    @Setup
+    public void setup()
+    {
+        mEncoder = create(codec);
+        mDecoder = create(codec);
+        mSpeech = SyntheticSpeech.generate(8000, 8000, 7);
+        mPacket = new byte[mEncoder.maxEncodedBytes(PACKET_SAMPLES)];
+        mPacketLength = mEncoder.encode(mSpeech, 0, PACKET_SAMPLES, mPacket, 0);
+        mDecoded = new short[mDecoder.maxDecodedSamples(mPacket.length)];
+    }
+
+    @Benchmark
+    public int encode()
+    {
+        mOffset = (mOffset + PACKET_SAMPLES) % (mSpeech.length - PACKET_SAMPLES);
+        return mEncoder.encode(mSpeech, mOffset, PACKET_SAMPLES, mPacket, 0);
+    }
+
+    @Benchmark
+    public int decode()
+    {
+        return mDecoder.decode(mPacket, 0, mPacketLength, mDecoded, 0);
+    }
+
+    private static VoiceCodec create(String name)
+    {
+        if("mulaw".equals(name))
+        {
+            return new MuLawCodec();
+        }
+        if("adpcm".equals(name))
+        {
+            return new ImaAdpcmCodec();
+        }
+        return new Pcm16Codec();
+    }
+}
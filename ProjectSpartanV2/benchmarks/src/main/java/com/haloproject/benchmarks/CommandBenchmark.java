@@ -0,0 +1,77 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.bluetooth.CommandWriter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost paid on the calling (UI) thread when a switch is toggled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark
+{
+    private final OutputStream mSink = new OutputStream()
+    {
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+        }
+    };
+    private CommandWriter mWriter;
+    private boolean mOn;
+
+    @Setup
+    public void setup()
+    {
+        mWriter = new CommandWriter();
+        mWriter.setOutputStream(mSink);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mWriter.shutdown();
+    }
+
+    //what Switch.on() did before the command writer, serialising and writing on the caller
+    @Benchmark
+    public void baselineSwitchOn() throws JSONException, IOException
+    {
+        JSONObject switchObject = new JSONObject();
+        switchObject.put("head lights red", "on");
+        mSink.write(switchObject.toString().getBytes());
+    }
+
+    @Benchmark
+    public boolean writerSubmit()
+    {
+        mOn = !mOn;
+        return mWriter.submit("head lights red", mOn ? "on" : "off", CommandWriter.Priority.COSMETIC);
+    }
+}
@@ -0,0 +1,139 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.bluetooth.BinaryCodec;
+import com.haloproject.bluetooth.FrameDecoder;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning bytes read from the socket into telemetry values. Each invocation handles one
+ * read containing messagesPerRead messages. The paced benchmarks space those reads out at the
+ * suit's real rate and up to the load test rate, so the decoder runs with the idle gaps and cold
+ * caches it sees on the phone rather than in a tight loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark
+{
+    @Param({"1", "4"})
+    public int messagesPerRead;
+
+    private byte[] mJsonRead;
+    private byte[] mBinaryRead;
+    private byte[] mSingleJson;
+    private TelemetrySnapshot mSnapshot;
+    private FrameDecoder mJsonDecoder;
+    private FrameDecoder mBinaryDecoder;
+    private Blackhole mBlackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws JSONException
+    {
+        mBlackhole = blackhole;
+        mSingleJson = Messages.jsonBytes(0);
+        mJsonRead = Messages.repeat(mSingleJson, messagesPerRead);
+        mBinaryRead = Messages.repeat(Messages.binaryBytes(0), messagesPerRead);
+        mJsonDecoder = new FrameDecoder(new PublishingListener());
+        mBinaryDecoder = new FrameDecoder(new PublishingListener());
+        mSnapshot = new TelemetrySnapshot();
+    }
+
+    //what ConnectedRunnable did before the frame decoder: a fresh 528 byte read and one parse per read
+    @Benchmark
+    public void baselineFixedRead() throws Exception
+    {
+        ByteArrayInputStream in = new ByteArrayInputStream(mJsonRead);
+        byte[] bytes = new byte[528];
+        in.read(bytes);
+        try
+        {
+            JSONObject json = new JSONObject(new String(bytes));
+            mBlackhole.consume(json.getDouble("head temperature"));
+        } catch (JSONException e)
+        {
+            mBlackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void frameDecoderJson()
+    {
+        mJsonDecoder.feed(mJsonRead, 0, mJsonRead.length);
+    }
+
+    @Benchmark
+    public void frameDecoderBinary()
+    {
+        mBinaryDecoder.feed(mBinaryRead, 0, mBinaryRead.length);
+    }
+
+    //long iterations, at the suit's own rate there is only one message a second to sample
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 5)
+    @Measurement(iterations = 5, time = 10)
+    public void pacedJson(Pacer pacer)
+    {
+        mJsonDecoder.feed(mJsonRead, 0, mJsonRead.length);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 5)
+    @Measurement(iterations = 5, time = 10)
+    public void pacedBinary(Pacer pacer)
+    {
+        mBinaryDecoder.feed(mBinaryRead, 0, mBinaryRead.length);
+    }
+
+    //JSON parsing alone, to separate the cost of org.json from the framing
+    @Benchmark
+    public long jsonObjectParse() throws JSONException
+    {
+        return mSnapshot.publish(new JSONObject(new String(mSingleJson)));
+    }
+
+    private class PublishingListener implements FrameDecoder.FrameListener
+    {
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length)
+        {
+            try
+            {
+                mBlackhole.consume(mSnapshot.publish(new JSONObject(new String(buffer, offset, length))));
+            } catch (JSONException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onBinaryFrame(byte[] buffer, int offset, int length)
+        {
+            mBlackhole.consume(BinaryCodec.decode(buffer, offset, length, mSnapshot));
+        }
+    }
+}
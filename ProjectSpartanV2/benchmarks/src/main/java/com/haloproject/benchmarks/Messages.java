@@ -0,0 +1,78 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.bluetooth.BinaryCodec;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Telemetry messages shaped like the ones serializer.c sends, shared by the benchmarks.
+ */
+final class Messages
+{
+    //the BeagleBone sends one message a second
+    static final int SUIT_RATE_HZ = 1;
+    //the emulator's load tests go up to 1 kHz
+    static final int MAX_RATE_HZ = 1000;
+
+    private Messages()
+    {
+    }
+
+    static JSONObject telemetry(int sequence) throws JSONException
+    {
+        JSONObject json = new JSONObject();
+        json.put("lights", "auto");
+        json.put("head lights white", "off");
+        json.put("head lights red", "on");
+        json.put("head fans", "on");
+        json.put("water pump", "on");
+        json.put("peltier", "off");
+        json.put("head temperature", 36.5 + (sequence % 10) / 10.0);
+        json.put("armpits temperature", 35.25);
+        json.put("crotch temperature", 34.75);
+        json.put("water temperature", 12.5);
+        json.put("flow rate", 14);
+        json.put("heart rate", 82);
+        json.put("play sound", "");
+        json.put("8 AH battery", 91);
+        json.put("2 AH battery", 76);
+        json.put("hud battery", 64);
+        json.put("phone battery", 88);
+        JSONObject warnings = new JSONObject();
+        warnings.put("low 2AH battery warning", "TURNIGY 2 AH LOW BATTERY");
+        json.put("warnings", warnings);
+        return json;
+    }
+
+    static byte[] jsonBytes(int sequence) throws JSONException
+    {
+        return telemetry(sequence).toString().getBytes();
+    }
+
+    static byte[] binaryBytes(int sequence) throws JSONException
+    {
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        snapshot.publish(telemetry(sequence));
+        TelemetryFrame frame = new TelemetryFrame();
+        snapshot.read(frame);
+        byte[] out = new byte[BinaryCodec.MAX_FRAME_SIZE];
+        int length = BinaryCodec.encode(frame, -1L, out, 0);
+        byte[] frameBytes = new byte[length];
+        System.arraycopy(out, 0, frameBytes, 0, length);
+        return frameBytes;
+    }
+
+    //packs count copies of message back to back, as if they arrived in a single read
+    static byte[] repeat(byte[] message, int count)
+    {
+        byte[] out = new byte[message.length * count];
+        for (int i = 0; i < count; i++)
+        {
+            System.arraycopy(message, 0, out, i * message.length, message.length);
+        }
+        return out;
+    }
+}
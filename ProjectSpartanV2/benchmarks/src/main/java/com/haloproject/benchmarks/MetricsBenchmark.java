@@ -0,0 +1,54 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.Histogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of recording a metric from several threads at once, the reader, the command writer and
+ * the UI all bump shared counters. The AtomicLong is what a single unstriped counter would cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark
+{
+    private final AtomicLong mAtomic = new AtomicLong();
+    private final Counter mCounter = new Counter();
+    private final Histogram mHistogram = new Histogram();
+
+    @Benchmark
+    public long baselineAtomicLong()
+    {
+        return mAtomic.incrementAndGet();
+    }
+
+    @Benchmark
+    public void counterIncrement()
+    {
+        mCounter.increment();
+    }
+
+    @Benchmark
+    public void histogramRecord()
+    {
+        mHistogram.record(System.nanoTime() & 0xFFFF);
+    }
+}
@@ -0,0 +1,62 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.voice.VoiceMixer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One audio period of the playback stage with several talkers: every stream gets a frame written
+ * and one frame is mixed out. Run with -prof gc to check the mix stays allocation free.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixerBenchmark
+{
+    @Param({"1", "4"})
+    public int talkers;
+
+    private VoiceMixer mMixer;
+    private long[] mGenerations;
+    private short[] mSpeech;
+    private short[] mOut;
+
+    @Setup
+    public void setup()
+    {
+        mMixer = new VoiceMixer(AudioCopyBenchmark.SAMPLE_RATE);
+        mGenerations = new long[talkers];
+        for (int i = 0; i < talkers; i++)
+        {
+            mGenerations[i] = mMixer.getGeneration(mMixer.open());
+        }
+        mSpeech = SyntheticSpeech.generate(AudioCopyBenchmark.SAMPLE_RATE, mMixer.getFrameSamples(), 7);
+        mOut = new short[mMixer.getFrameSamples()];
+    }
+
+    @Benchmark
+    public short[] writeAndMix()
+    {
+        for (int i = 0; i < talkers; i++)
+        {
+            mMixer.write(i, mGenerations[i], mSpeech, 0, mSpeech.length);
+        }
+        mMixer.mix(mOut);
+        return mOut;
+    }
+}
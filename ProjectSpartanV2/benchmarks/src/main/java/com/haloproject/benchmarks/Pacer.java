@@ -0,0 +1,48 @@
+package com.haloproject.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spaces the invocations of a benchmark out to one every 1 / rateHz seconds, from the suit's own
+ * rate up to the load test rate. The wait happens in an invocation level setup, outside the
+ * measured time, so only the work itself is timed but it runs after the same idle gaps it gets on
+ * the phone.
+ */
+@State(Scope.Thread)
+public class Pacer
+{
+    @Param({"" + Messages.SUIT_RATE_HZ, "50", "" + Messages.MAX_RATE_HZ})
+    public int rateHz;
+
+    private long mPeriodNanos;
+    private long mNext;
+
+    @Setup
+    public void setup()
+    {
+        mPeriodNanos = 1000000000L / rateHz;
+        mNext = System.nanoTime();
+    }
+
+    @Setup(Level.Invocation)
+    public void await()
+    {
+        mNext += mPeriodNanos;
+        long wait = mNext - System.nanoTime();
+        if(wait > 0)
+        {
+            LockSupport.parkNanos(wait);
+        }
+        else
+        {
+            //fell behind, don't run a burst to catch up
+            mNext = System.nanoTime();
+        }
+    }
+}
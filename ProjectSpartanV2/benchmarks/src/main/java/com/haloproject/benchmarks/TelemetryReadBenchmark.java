@@ -0,0 +1,110 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What VitalsFragment pays per redraw to read the four temperatures.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelemetryReadBenchmark
+{
+    private JSONObject mJson;
+    private TelemetrySnapshot mSnapshot;
+    private JSONObject[] mUpdates;
+
+    @Setup
+    public void setup() throws JSONException
+    {
+        mJson = Messages.telemetry(0);
+        mSnapshot = new TelemetrySnapshot();
+        mSnapshot.publish(mJson);
+        mUpdates = new JSONObject[10];
+        for (int i = 0; i < mUpdates.length; i++)
+        {
+            mUpdates[i] = Messages.telemetry(i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader
+    {
+        final TelemetryFrame frame = new TelemetryFrame();
+        int update;
+    }
+
+    //four Temperature.getValue() calls as they were, each one a lookup and conversion in mJSON
+    @Benchmark
+    @Group("uncontended_baseline")
+    public double baselineGetDouble() throws JSONException
+    {
+        return mJson.getDouble("head temperature")
+                + mJson.getDouble("armpits temperature")
+                + mJson.getDouble("crotch temperature")
+                + mJson.getDouble("water temperature");
+    }
+
+    @Benchmark
+    @Group("uncontended_snapshot")
+    public double snapshotRead(Reader reader)
+    {
+        mSnapshot.read(reader.frame);
+        return reader.frame.get(TelemetryChannel.HEAD_TEMPERATURE)
+                + reader.frame.get(TelemetryChannel.ARMPITS_TEMPERATURE)
+                + reader.frame.get(TelemetryChannel.CROTCH_TEMPERATURE)
+                + reader.frame.get(TelemetryChannel.WATER_TEMPERATURE);
+    }
+
+    //the same read while the bluetooth thread publishes as fast as it can
+    @Benchmark
+    @Group("contended_snapshot")
+    public double contendedRead(Reader reader)
+    {
+        return snapshotRead(reader);
+    }
+
+    @Benchmark
+    @Group("contended_snapshot")
+    public long contendedPublish(Reader writer)
+    {
+        writer.update = (writer.update + 1) % mUpdates.length;
+        return mSnapshot.publish(mUpdates[writer.update]);
+    }
+
+    //the same read while the bluetooth thread publishes at the rate messages really arrive
+    @Benchmark
+    @Group("paced_snapshot")
+    public double pacedRead(Reader reader)
+    {
+        return snapshotRead(reader);
+    }
+
+    @Benchmark
+    @Group("paced_snapshot")
+    public long pacedPublish(Reader writer, Pacer pacer)
+    {
+        return contendedPublish(writer);
+    }
+}
@@ -0,0 +1,86 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.voice.ImaAdpcmCodec;
+import com.haloproject.voice.MuLawCodec;
+import com.haloproject.voice.Pcm16Codec;
+import com.haloproject.voice.VoiceCodec;
+import com.haloproject.voice.VoiceStreamHeader;
+import com.haloproject.voice.VoiceStreamWriter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends ten seconds of synthetic speech through every voice codec, in 20 ms packets like the
+ * voice channel, and reads it back the way HandleNextConnection does.
+ */
+public class CodecQualityTest
+{
+    private static final int SAMPLE_RATE = 8000;
+    private static final int PACKET_SAMPLES = 160;
+    private static final short[] SPEECH = SyntheticSpeech.generate(SAMPLE_RATE, SAMPLE_RATE * 10, 42);
+
+    @Test
+    public void pcm16IsLossless() throws IOException
+    {
+        assertEquals(Double.POSITIVE_INFINITY, snr(new Pcm16Codec()), 0);
+    }
+
+    @Test
+    public void muLawKeepsSpeechAbove30Db() throws IOException
+    {
+        double snr = snr(new MuLawCodec());
+        assertTrue("mu-law " + snr + " dB", snr >= 30);
+    }
+
+    @Test
+    public void imaAdpcmKeepsSpeechAbove20Db() throws IOException
+    {
+        double snr = snr(new ImaAdpcmCodec());
+        assertTrue("IMA-ADPCM " + snr + " dB", snr >= 20);
+    }
+
+    @Test
+    public void compressedCodecsUseLessOfTheLink() throws IOException
+    {
+        int pcm = send(new Pcm16Codec()).length;
+        assertTrue(send(new MuLawCodec()).length <= pcm / 2 + VoiceStreamHeader.SIZE);
+        assertTrue(send(new ImaAdpcmCodec()).length <= pcm / 4 + VoiceStreamHeader.SIZE);
+    }
+
+    private static byte[] send(VoiceCodec codec) throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        VoiceStreamWriter writer = new VoiceStreamWriter(stream, codec, SAMPLE_RATE, PACKET_SAMPLES);
+        for (int offset = 0; offset + PACKET_SAMPLES <= SPEECH.length; offset += PACKET_SAMPLES)
+        {
+            writer.write(SPEECH, offset, PACKET_SAMPLES);
+        }
+        return stream.toByteArray();
+    }
+
+    private static double snr(VoiceCodec codec) throws IOException
+    {
+        byte[] sent = send(codec);
+        assertTrue(VoiceStreamHeader.matches(sent, 0, sent.length));
+        assertEquals(SAMPLE_RATE, VoiceStreamHeader.getSampleRate(sent, 0));
+        VoiceCodec decoder = VoiceStreamHeader.readCodec(sent, 0);
+        assertEquals(codec.getClass(), decoder.getClass());
+
+        short[] decoded = new short[SPEECH.length];
+        int decodedSamples = 0;
+        int packetBytes = codec.maxEncodedBytes(PACKET_SAMPLES);
+        for (int offset = VoiceStreamHeader.SIZE; offset < sent.length; offset += packetBytes)
+        {
+            int length = Math.min(packetBytes, sent.length - offset);
+            decodedSamples += decoder.decode(sent, offset, length, decoded, decodedSamples);
+        }
+        assertEquals(codec.getClass().getSimpleName(), SPEECH.length, decodedSamples);
+        return SyntheticSpeech.snr(SPEECH, decoded, decodedSamples);
+    }
+}
@@ -0,0 +1,90 @@
+package com.haloproject.benchmarks;
+
+import com.haloproject.bluetooth.BinaryCodec;
+import com.haloproject.bluetooth.FrameDecoder;
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+//the benchmarks compare the JSON and binary paths, which only means something if they agree
+public class MessagesTest
+{
+    @Test
+    public void binaryMessagesDecodeToTheSameValuesAsJson() throws JSONException
+    {
+        for (int sequence = 0; sequence < 10; sequence++)
+        {
+            TelemetrySnapshot fromJson = new TelemetrySnapshot();
+            fromJson.publish(Messages.telemetry(sequence));
+            final TelemetrySnapshot fromBinary = new TelemetrySnapshot();
+            byte[] read = Messages.repeat(Messages.binaryBytes(sequence), 4);
+            final int[] frames = new int[1];
+            new FrameDecoder(new FrameDecoder.FrameListener()
+            {
+                @Override
+                public void onFrame(byte[] buffer, int offset, int length)
+                {
+                    throw new AssertionError("binary read decoded as JSON");
+                }
+
+                @Override
+                public void onBinaryFrame(byte[] buffer, int offset, int length)
+                {
+                    frames[0]++;
+                    BinaryCodec.decode(buffer, offset, length, fromBinary);
+                }
+            }).feed(read, 0, read.length);
+
+            assertEquals(4, frames[0]);
+            for (TelemetryChannel channel : TelemetryChannel.values())
+            {
+                double expected = fromJson.get(channel);
+                double actual = fromBinary.get(channel);
+                if(Double.isNaN(expected))
+                {
+                    assertTrue(channel + " " + actual, Double.isNaN(actual));
+                }
+                else
+                {
+                    assertEquals(channel.toString(), expected, actual, 0.005);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void jsonMessagesAreWholeFrames() throws JSONException
+    {
+        byte[] read = Messages.repeat(Messages.jsonBytes(3), 4);
+        final int[] frames = new int[1];
+        new FrameDecoder(new FrameDecoder.FrameListener()
+        {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length)
+            {
+                try
+                {
+                    assertEquals(36.8, new JSONObject(new String(buffer, offset, length)).getDouble("head temperature"), 1e-9);
+                } catch (JSONException e)
+                {
+                    throw new AssertionError(e);
+                }
+                frames[0]++;
+            }
+
+            @Override
+            public void onBinaryFrame(byte[] buffer, int offset, int length)
+            {
+                throw new AssertionError("JSON read decoded as binary");
+            }
+        }).feed(read, 0, read.length);
+
+        assertEquals(4, frames[0]);
+    }
+}
@@ -0,0 +1,85 @@
+package com.haloproject.config;
+
+/**
+ * A typed entry in a SuitConfig. The key converts the raw JSON value once per file version and
+ * the store caches the result, so reading a setting in a hot path costs a map lookup. A value of
+ * the wrong type reads as the default, like a missing one.
+ */
+public abstract class ConfigKey<T>
+{
+    private final String mName;
+    private final T mDefault;
+
+    protected ConfigKey(String name, T defaultValue)
+    {
+        mName = name;
+        mDefault = defaultValue;
+    }
+
+    public String getName()
+    {
+        return mName;
+    }
+
+    public T getDefault()
+    {
+        return mDefault;
+    }
+
+    //null if the value can't be read as a T
+    protected abstract T convert(Object value);
+
+    public static ConfigKey<String> string(String name, String defaultValue)
+    {
+        return new ConfigKey<String>(name, defaultValue)
+        {
+            @Override
+            protected String convert(Object value)
+            {
+                return value instanceof String ? (String) value : null;
+            }
+        };
+    }
+
+    public static ConfigKey<Integer> integer(String name, int defaultValue)
+    {
+        return new ConfigKey<Integer>(name, defaultValue)
+        {
+            @Override
+            protected Integer convert(Object value)
+            {
+                return value instanceof Number ? ((Number) value).intValue() : null;
+            }
+        };
+    }
+
+    public static ConfigKey<Double> decimal(String name, double defaultValue)
+    {
+        return new ConfigKey<Double>(name, defaultValue)
+        {
+            @Override
+            protected Double convert(Object value)
+            {
+                return value instanceof Number ? ((Number) value).doubleValue() : null;
+            }
+        };
+    }
+
+    public static ConfigKey<Boolean> bool(String name, boolean defaultValue)
+    {
+        return new ConfigKey<Boolean>(name, defaultValue)
+        {
+            @Override
+            protected Boolean convert(Object value)
+            {
+                return value instanceof Boolean ? (Boolean) value : null;
+            }
+        };
+    }
+
+    @Override
+    public String toString()
+    {
+        return mName;
+    }
+}
@@ -0,0 +1,44 @@
+package com.haloproject.config;
+
+import android.os.FileObserver;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Reloads a SuitConfig whenever its file is saved. The directory is watched rather than the file,
+ * because editors and adb push often replace the file instead of writing into it, which would
+ * leave an observer on the old inode. Deleting the file is ignored, the last values stay.
+ *
+ * FileObserver stops when it is garbage collected, so whoever starts one has to keep it.
+ */
+public class ConfigWatcher extends FileObserver
+{
+    private static final String TAG = "ConfigWatcher";
+
+    private final SuitConfig mConfig;
+    private final String mName;
+
+    public ConfigWatcher(SuitConfig config)
+    {
+        super(config.getFile().getParent(), CLOSE_WRITE | MOVED_TO);
+        mConfig = config;
+        mName = config.getFile().getName();
+    }
+
+    @Override
+    public void onEvent(int event, String path)
+    {
+        if(!mName.equals(path))
+        {
+            return;
+        }
+        try
+        {
+            Log.i(TAG, "reloaded " + mName + ", changed " + mConfig.reload());
+        } catch (IOException e)
+        {
+            Log.w(TAG, "keeping the previous " + mName + ": " + e.getMessage());
+        }
+    }
+}
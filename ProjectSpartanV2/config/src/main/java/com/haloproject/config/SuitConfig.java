@@ -0,0 +1,235 @@
+package com.haloproject.config;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The suitConfig file both apps read, a flat JSON object. The file is read once, on the first
+ * get, and after that only when reload() is called, which ConfigWatcher does whenever the file is
+ * written. Each version of the file is an immutable snapshot behind a volatile field, so readers
+ * never lock and never see half a reload; typed values are converted on first use and cached in
+ * the snapshot.
+ *
+ * A reload that fails keeps the values already loaded, so a half saved edit doesn't wipe the
+ * configuration. Listeners are told which keys actually changed.
+ */
+public class SuitConfig
+{
+    public static final ConfigKey<String> AUDIO_DEVICE_UUID = ConfigKey.string("uuid", null);
+
+    public interface Listener
+    {
+        //called on the thread that reloaded, never for a reload that changed nothing
+        void onConfigChanged(SuitConfig config, Set<String> changed);
+    }
+
+    private static final class Snapshot
+    {
+        final Map<String, Object> values;
+        final ConcurrentHashMap<String, Object> typed = new ConcurrentHashMap<String, Object>();
+
+        Snapshot(Map<String, Object> values)
+        {
+            this.values = values;
+        }
+    }
+
+    private final File mFile;
+    private final Object mLoadLock = new Object();
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private volatile Snapshot mSnapshot;
+    private volatile IOException mLastError;
+
+    public SuitConfig(File file)
+    {
+        mFile = file;
+    }
+
+    public File getFile()
+    {
+        return mFile;
+    }
+
+    public void addListener(Listener listener)
+    {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener)
+    {
+        mListeners.remove(listener);
+    }
+
+    public <T> T get(ConfigKey<T> key)
+    {
+        Snapshot snapshot = snapshot();
+        String name = key.getName();
+        Object cached = snapshot.typed.get(name);
+        if(cached != null)
+        {
+            @SuppressWarnings("unchecked")
+            T value = (T) cached;
+            return value;
+        }
+        Object raw = snapshot.values.get(name);
+        T value = raw == null ? null : key.convert(raw);
+        if(value == null)
+        {
+            return key.getDefault();
+        }
+        snapshot.typed.put(name, value);
+        return value;
+    }
+
+    public boolean has(String name)
+    {
+        return snapshot().values.containsKey(name);
+    }
+
+    //why the last read of the file failed, null once it reads cleanly
+    public IOException getLastError()
+    {
+        return mLastError;
+    }
+
+    /**
+     * Reads the file again and swaps in its values, then tells the listeners which keys changed.
+     * Throws if the file can't be read or isn't a JSON object, leaving the old values in place.
+     */
+    public Set<String> reload() throws IOException
+    {
+        Set<String> changed;
+        synchronized (mLoadLock)
+        {
+            Map<String, Object> values;
+            try
+            {
+                values = read(mFile);
+            } catch (IOException e)
+            {
+                mLastError = e;
+                throw e;
+            }
+            mLastError = null;
+            Snapshot old = mSnapshot;
+            changed = old == null ? values.keySet() : changes(old.values, values);
+            if(old != null && changed.isEmpty())
+            {
+                return changed;
+            }
+            mSnapshot = new Snapshot(values);
+        }
+        for (Listener listener : mListeners)
+        {
+            listener.onConfigChanged(this, changed);
+        }
+        return changed;
+    }
+
+    private Snapshot snapshot()
+    {
+        Snapshot snapshot = mSnapshot;
+        if(snapshot != null)
+        {
+            return snapshot;
+        }
+        synchronized (mLoadLock)
+        {
+            if(mSnapshot == null)
+            {
+                try
+                {
+                    mSnapshot = new Snapshot(read(mFile));
+                } catch (IOException e)
+                {
+                    //read as defaults until a reload succeeds, rather than hitting the disk on every get
+                    mLastError = e;
+                    mSnapshot = new Snapshot(Collections.<String, Object>emptyMap());
+                }
+            }
+            return mSnapshot;
+        }
+    }
+
+    private static Map<String, Object> read(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.max(file.length(), 64));
+        try
+        {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0)
+            {
+                bytes.write(buffer, 0, read);
+            }
+        } finally
+        {
+            in.close();
+        }
+        try
+        {
+            JSONObject json = new JSONObject(bytes.toString("UTF-8"));
+            Map<String, Object> values = new HashMap<String, Object>();
+            Iterator<?> keys = json.keys();
+            while (keys.hasNext())
+            {
+                String key = (String) keys.next();
+                values.put(key, json.get(key));
+            }
+            return Collections.unmodifiableMap(values);
+        } catch (JSONException e)
+        {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Set<String> changes(Map<String, Object> old, Map<String, Object> values)
+    {
+        Set<String> changed = new HashSet<String>();
+        for (Map.Entry<String, Object> entry : values.entrySet())
+        {
+            if(!same(old.get(entry.getKey()), entry.getValue()))
+            {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : old.keySet())
+        {
+            if(!values.containsKey(key))
+            {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean same(Object a, Object b)
+    {
+        if(a == null || b == null)
+        {
+            return a == b;
+        }
+        //org.json containers don't implement equals
+        if(a instanceof JSONObject || a instanceof JSONArray)
+        {
+            return a.getClass() == b.getClass() && a.toString().equals(b.toString());
+        }
+        return a.equals(b);
+    }
+}
@@ -0,0 +1,37 @@
+package com.haloproject.config;
+
+import android.os.Environment;
+
+import java.io.File;
+
+/**
+ * The process wide SuitConfig for Pictures/suitConfig on the sdcard, watched for edits from the
+ * moment it is first asked for. The holder class makes creating it lazy and thread safe without
+ * any locking on the way in.
+ */
+public final class SuitConfigFile
+{
+    public static final String NAME = "suitConfig";
+
+    private static final class Holder
+    {
+        static final SuitConfig CONFIG = new SuitConfig(new File(Environment.getExternalStorageDirectory(),
+                "Pictures" + File.separator + NAME));
+        //kept so the observer isn't collected
+        static final ConfigWatcher WATCHER = new ConfigWatcher(CONFIG);
+
+        static
+        {
+            WATCHER.startWatching();
+        }
+    }
+
+    private SuitConfigFile()
+    {
+    }
+
+    public static SuitConfig get()
+    {
+        return Holder.CONFIG;
+    }
+}
@@ -0,0 +1,115 @@
+package com.haloproject.emulator;
+
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The suit's side of delta telemetry, as serializer.c does it: remembers what the phone was last
+ * sent and strips unchanged values from the next message, with a keyframe every interval messages
+ * or whenever one is requested. The baseline moves on whether or not a message arrives, so a lost
+ * delta leaves the phone behind until it asks for a keyframe.
+ */
+class DeltaEncoder
+{
+    private final int mInterval;
+    private final double[] mLastValues = new double[TelemetryChannel.COUNT];
+    private JSONObject mLastJson;
+    private boolean mKeyframeRequested = true;
+    private int mSinceKeyframe;
+
+    DeltaEncoder(int interval)
+    {
+        mInterval = interval;
+    }
+
+    synchronized void requestKeyframe()
+    {
+        mKeyframeRequested = true;
+    }
+
+    //true if the next message has to be a keyframe, and counts it either way
+    private synchronized boolean nextIsKeyframe()
+    {
+        if(mKeyframeRequested || mSinceKeyframe >= mInterval - 1)
+        {
+            mKeyframeRequested = false;
+            mSinceKeyframe = 0;
+            return true;
+        }
+        mSinceKeyframe++;
+        return false;
+    }
+
+    //removes what the phone already has from a status message, marking it as a delta
+    JSONObject encode(JSONObject message) throws JSONException
+    {
+        boolean keyframe = nextIsKeyframe() || mLastJson == null;
+        JSONObject last = mLastJson;
+        mLastJson = new JSONObject(message, JSONObject.getNames(message));
+        if(keyframe)
+        {
+            return message;
+        }
+        List<String> unchanged = new ArrayList<String>();
+        Iterator<?> keys = message.keys();
+        while (keys.hasNext())
+        {
+            String key = (String) keys.next();
+            if(!isTelemetry(key))
+            {
+                continue;
+            }
+            Object previous = last.opt(key);
+            if(previous != null && previous.equals(message.get(key)))
+            {
+                unchanged.add(key);
+            }
+        }
+        for (String key : unchanged)
+        {
+            message.remove(key);
+        }
+        message.put("delta", true);
+        return message;
+    }
+
+    //returns the channels to send for frame, -1 for a keyframe
+    long encode(TelemetryFrame frame)
+    {
+        boolean keyframe = nextIsKeyframe();
+        long changed = 0;
+        for (int i = 0; i < TelemetryChannel.COUNT; i++)
+        {
+            double value = frame.get(TelemetryChannel.get(i));
+            if(Double.compare(value, mLastValues[i]) != 0)
+            {
+                changed |= 1L << i;
+            }
+            mLastValues[i] = value;
+        }
+        return keyframe ? -1L : changed;
+    }
+
+    //after a protocol switch, neither baseline says what the phone has
+    synchronized void reset()
+    {
+        mLastJson = null;
+        Arrays.fill(mLastValues, Double.NaN);
+        mKeyframeRequested = true;
+    }
+
+    //warnings go in every message, like on the suit
+    private static boolean isTelemetry(String key)
+    {
+        return !"seq".equals(key) && !"time".equals(key) && !"warnings".equals(key)
+                && !"time sync".equals(key) && !"configuration".equals(key);
+    }
+}
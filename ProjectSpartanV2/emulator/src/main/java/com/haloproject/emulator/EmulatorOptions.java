@@ -0,0 +1,111 @@
+package com.haloproject.emulator;
+
+/**
+ * Command line options shared by the emulator and the load client, all of the form --name value.
+ */
+public class EmulatorOptions
+{
+    public int port = 5555;
+    public String host = "localhost";
+    //status messages per second, the real suit sends one
+    public double rate = 1;
+    //json, binary, or negotiate to wait for the phone's configuration like the real suit
+    public String protocol = "negotiate";
+    //every write is split into random pieces of at most this many bytes, 0 writes whole messages
+    public int fragment = 0;
+    //this many messages are packed into one write
+    public int coalesce = 1;
+    //mean seconds between dropped connections, 0 never drops
+    public double disconnect = 0;
+    //chance per second of a random warning starting
+    public double warnings = 0;
+    //start with the suit's automation off, like "peltier":"off" and "water pump":"off" were sent
+    public boolean manual = false;
+    public long seed = System.nanoTime();
+    //messages between keyframes once the phone asks for deltas, 0 ignores the request
+    public int keyframe = 30;
+    //chance of a status message being lost on the way
+    public double loss = 0;
+    //load client only
+    public int seconds = 10;
+
+    public static EmulatorOptions parse(String[] args)
+    {
+        EmulatorOptions options = new EmulatorOptions();
+        for (int i = 0; i < args.length; i++)
+        {
+            String name = args[i];
+            if("--manual".equals(name))
+            {
+                options.manual = true;
+                continue;
+            }
+            if(i + 1 >= args.length)
+            {
+                throw new IllegalArgumentException("missing value for " + name);
+            }
+            String value = args[++i];
+            if("--port".equals(name))
+            {
+                options.port = Integer.parseInt(value);
+            }
+            else if("--host".equals(name))
+            {
+                options.host = value;
+            }
+            else if("--rate".equals(name))
+            {
+                options.rate = Double.parseDouble(value);
+                if(options.rate <= 0 || options.rate > 1000)
+                {
+                    throw new IllegalArgumentException("--rate must be above 0 and at most 1000");
+                }
+            }
+            else if("--protocol".equals(name))
+            {
+                if(!"json".equals(value) && !"binary".equals(value) && !"negotiate".equals(value))
+                {
+                    throw new IllegalArgumentException("--protocol is json, binary or negotiate");
+                }
+                options.protocol = value;
+            }
+            else if("--fragment".equals(name))
+            {
+                options.fragment = Integer.parseInt(value);
+            }
+            else if("--coalesce".equals(name))
+            {
+                options.coalesce = Math.max(1, Integer.parseInt(value));
+            }
+            else if("--disconnect".equals(name))
+            {
+                options.disconnect = Double.parseDouble(value);
+            }
+            else if("--warnings".equals(name))
+            {
+                options.warnings = Double.parseDouble(value);
+            }
+            else if("--seed".equals(name))
+            {
+                options.seed = Long.parseLong(value);
+            }
+            else if("--keyframe".equals(name))
+            {
+                options.keyframe = Math.max(0, Integer.parseInt(value));
+            }
+            else if("--loss".equals(name))
+            {
+                options.loss = Double.parseDouble(value);
+            }
+            else if("--seconds".equals(name))
+            {
+                options.seconds = Integer.parseInt(value);
+            }
+            else
+            {
+                throw new IllegalArgumentException("unknown option " + name);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,141 @@
+package com.haloproject.emulator;
+
+import com.haloproject.export.ColumnarReader;
+import com.haloproject.export.SessionExporter;
+import com.haloproject.telemetry.TelemetryChannel;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works with session exports on a desktop:
+ *
+ *   export journal-dir out.hsc [from-ms to-ms]   turns a journal pulled off the phone into an export
+ *   stats file.hsc                               prints each block's time range and channel min/max
+ *   csv file.hsc [channel,channel] [from-ms to-ms]  prints rows as CSV, skipping blocks outside the times
+ */
+public class ExportTool
+{
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length >= 3 && "export".equals(args[0]))
+        {
+            long from = args.length >= 5 ? Long.parseLong(args[3]) : 0;
+            long to = args.length >= 5 ? Long.parseLong(args[4]) : Long.MAX_VALUE;
+            File out = new File(args[2]);
+            long rows = SessionExporter.export(new File(args[1]), from, to, new FileOutputStream(out));
+            System.out.printf("%d rows, %d bytes (%.1f per row)%n", rows, out.length(), out.length() / (double) Math.max(rows, 1));
+        }
+        else if(args.length == 2 && "stats".equals(args[0]))
+        {
+            stats(new File(args[1]));
+        }
+        else if(args.length >= 2 && "csv".equals(args[0]))
+        {
+            String channels = args.length == 3 || args.length >= 5 ? args[2] : null;
+            long from = args.length >= 4 ? Long.parseLong(args[args.length - 2]) : Long.MIN_VALUE;
+            long to = args.length >= 4 ? Long.parseLong(args[args.length - 1]) : Long.MAX_VALUE;
+            csv(new File(args[1]), channels, from, to, System.out);
+        }
+        else
+        {
+            System.err.println("usage: export journal-dir out.hsc [from-ms to-ms] | stats file.hsc"
+                    + " | csv file.hsc [channel,channel] [from-ms to-ms]");
+            System.exit(2);
+        }
+    }
+
+    private static void stats(File file) throws IOException
+    {
+        ColumnarReader reader = new ColumnarReader(file);
+        try
+        {
+            System.out.printf("%d rows in %d blocks%n", reader.getRowCount(), reader.getBlockCount());
+            for (int block = 0; block < reader.getBlockCount(); block++)
+            {
+                System.out.printf("block %d: %d rows, %d to %d%n", block, reader.getRowCount(block),
+                        reader.getFirstTime(block), reader.getLastTime(block));
+                for (TelemetryChannel channel : TelemetryChannel.values())
+                {
+                    if(reader.getValueCount(block, channel) > 0)
+                    {
+                        System.out.printf("  %-20s %10.2f %10.2f%n", channel.key,
+                                reader.getMin(block, channel), reader.getMax(block, channel));
+                    }
+                }
+            }
+        } finally
+        {
+            reader.close();
+        }
+    }
+
+    private static void csv(File file, String names, long from, long to, PrintStream out) throws IOException
+    {
+        List<TelemetryChannel> channels = new ArrayList<TelemetryChannel>();
+        if(names == null)
+        {
+            for (TelemetryChannel channel : TelemetryChannel.values())
+            {
+                channels.add(channel);
+            }
+        }
+        else
+        {
+            for (String name : names.split(","))
+            {
+                TelemetryChannel channel = TelemetryChannel.fromKey(name.trim());
+                if(channel == null)
+                {
+                    throw new IllegalArgumentException("unknown channel " + name);
+                }
+                channels.add(channel);
+            }
+        }
+        long mask = 0;
+        StringBuilder line = new StringBuilder("time");
+        for (TelemetryChannel channel : channels)
+        {
+            mask |= 1L << channel.ordinal();
+            line.append(',').append(channel.key);
+        }
+        out.println(line);
+
+        ColumnarReader reader = new ColumnarReader(file);
+        try
+        {
+            for (int block = reader.findBlock(from); block < reader.getBlockCount() && reader.getFirstTime(block) < to; block++)
+            {
+                //only the columns asked for are decoded
+                ColumnarReader.Block rows = reader.read(block, mask);
+                for (int row = 0; row < rows.getRowCount(); row++)
+                {
+                    long time = rows.getTime(row);
+                    if(time < from || time >= to)
+                    {
+                        continue;
+                    }
+                    line.setLength(0);
+                    line.append(time);
+                    for (TelemetryChannel channel : channels)
+                    {
+                        double value = rows.get(channel, row);
+                        line.append(',');
+                        if(!Double.isNaN(value))
+                        {
+                            line.append(value);
+                        }
+                    }
+                    out.println(line);
+                }
+            }
+        } finally
+        {
+            reader.close();
+        }
+    }
+}
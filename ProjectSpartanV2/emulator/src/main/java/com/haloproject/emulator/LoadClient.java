@@ -0,0 +1,221 @@
+package com.haloproject.emulator;
+
+import com.haloproject.bluetooth.BinaryCodec;
+import com.haloproject.bluetooth.CommandWriter;
+import com.haloproject.bluetooth.FrameDecoder;
+import com.haloproject.bluetooth.SocketTransport;
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.Histogram;
+import com.haloproject.metrics.MetricsRegistry;
+import com.haloproject.telemetry.DeltaSync;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetryHistory;
+import com.haloproject.telemetry.TelemetrySnapshot;
+import com.haloproject.telemetry.TelemetryTiming;
+import com.haloproject.warnings.WarningsEngine;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Drives the app's receive path against a running emulator the way AndroidBlue does over TCP: a
+ * SocketTransport, FrameDecoder, snapshot, timing, history and warnings on the reader thread, a
+ * 60 Hz reader standing in for the display, and switch commands plus time sync requests through
+ * the CommandWriter. Prints frames a second while it runs and the latency histograms and metrics
+ * at the end.
+ */
+public class LoadClient implements FrameDecoder.FrameListener
+{
+    private static final long DISPLAY_PERIOD = 16;
+
+    private final MetricsRegistry mMetrics = new MetricsRegistry();
+    private final TelemetrySnapshot mTelemetry = new TelemetrySnapshot();
+    private final TelemetryHistory mHistory = new TelemetryHistory();
+    private final TelemetryTiming mTiming = new TelemetryTiming();
+    private final WarningsEngine mWarnings = new WarningsEngine();
+    private final DeltaSync mDeltas = new DeltaSync(mMetrics);
+    private final CommandWriter mWriter = new CommandWriter(mMetrics);
+    private final TelemetryFrame mFrame = new TelemetryFrame();
+    private final Counter mFramesIn = mMetrics.counter("frames in");
+    private final Counter mBytesIn = mMetrics.counter("bytes in");
+    private final Counter mJsonErrors = mMetrics.counter("decode errors json");
+    private final Histogram mDecodeTime = mMetrics.histogram("decode ns");
+    private volatile boolean mRunning = true;
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        EmulatorOptions options = EmulatorOptions.parse(args);
+        new LoadClient().run(options);
+    }
+
+    public void run(EmulatorOptions options) throws IOException, InterruptedException
+    {
+        mMetrics.register("sensor to decode ms", mTiming.getSensorToDecode());
+        mMetrics.register("decode to ui ms", mTiming.getDecodeToUi());
+        final SocketTransport transport = new SocketTransport(options.host, options.port);
+        transport.connect();
+        mWriter.setTransport(transport);
+        try
+        {
+            JSONObject configuration = new JSONObject();
+            if(!"json".equals(options.protocol))
+            {
+                configuration.put("protocol", BinaryCodec.PROTOCOL);
+            }
+            //--keyframe 0 keeps the client on full messages
+            if(options.keyframe > 0)
+            {
+                configuration.put("delta", true);
+            }
+            if(configuration.length() > 0)
+            {
+                mWriter.submit("configuration", configuration, CommandWriter.Priority.NORMAL);
+            }
+        } catch (JSONException e)
+        {
+            throw new IOException(e);
+        }
+
+        Thread display = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                TelemetryFrame frame = new TelemetryFrame();
+                while (mRunning)
+                {
+                    mTelemetry.read(frame);
+                    mTiming.onDisplayed(frame, System.currentTimeMillis());
+                    try
+                    {
+                        Thread.sleep(DISPLAY_PERIOD);
+                    } catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }
+        }, "LoadClient display");
+        display.setDaemon(true);
+        display.start();
+
+        Thread reader = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                FrameDecoder decoder = new FrameDecoder(LoadClient.this);
+                try
+                {
+                    int read;
+                    while ((read = decoder.readFrom(transport)) >= 0)
+                    {
+                        mBytesIn.add(read);
+                    }
+                } catch (IOException e)
+                {
+                    //closed at the end of the run
+                }
+                mRunning = false;
+            }
+        }, "LoadClient reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long last = mFramesIn.get();
+        long lastBytes = mBytesIn.get();
+        for (int second = 0; second < options.seconds && mRunning; second++)
+        {
+            Thread.sleep(1000);
+            //exercise the command path the way a wearer flicking a switch would
+            mWriter.submit("head fans", second % 2 == 0 ? "on" : "off", CommandWriter.Priority.NORMAL);
+            long frames = mFramesIn.get();
+            long bytes = mBytesIn.get();
+            System.out.printf("%3d s: %6d frames/s, %7d bytes/s, %d warnings active, clock offset %d ms%s%n",
+                    second + 1, frames - last, bytes - lastBytes, Integer.bitCount(mWarnings.getActive()),
+                    mTiming.getClock().getOffset(), mDeltas.isSynced() ? "" : ", resyncing");
+            last = frames;
+            lastBytes = bytes;
+        }
+        mRunning = false;
+        transport.close();
+        mWriter.shutdown();
+
+        System.out.printf("frames %d, dropped %d, duplicates %d%n", mTiming.getFrames(), mTiming.getDropped(), mTiming.getDuplicates());
+        print("decode ns", mDecodeTime);
+        print("sensor to decode ms", mTiming.getSensorToDecode());
+        print("decode to ui ms", mTiming.getDecodeToUi());
+        try
+        {
+            System.out.println(mMetrics.snapshot().toString(2));
+        } catch (JSONException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    private static void print(String name, Histogram histogram)
+    {
+        System.out.printf("%s: p50 %d, p99 %d, max %d over %d%n", name,
+                histogram.getPercentile(0.5), histogram.getPercentile(0.99), histogram.getMax(), histogram.getCount());
+    }
+
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            long receivedAt = System.currentTimeMillis();
+            JSONObject json = new JSONObject(new String(buffer, offset, length));
+            JSONObject timeSync = json.optJSONObject("time sync");
+            if(timeSync != null)
+            {
+                mTiming.getClock().addExchange(timeSync.getLong("t0"), timeSync.getLong("t1"), timeSync.getLong("t2"), receivedAt);
+            }
+            JSONObject warnings = json.optJSONObject("warnings");
+            if(warnings != null)
+            {
+                mWarnings.update(WarningsEngine.parse(warnings), receivedAt);
+            }
+            received(mTelemetry.publish(json), json.optBoolean("delta", false), start);
+        } catch (JSONException e)
+        {
+            mJsonErrors.increment();
+        }
+    }
+
+    @Override
+    public void onBinaryFrame(byte[] buffer, int offset, int length)
+    {
+        long start = System.nanoTime();
+        received(BinaryCodec.decode(buffer, offset, length, mTelemetry), BinaryCodec.isDelta(buffer, offset, length), start);
+    }
+
+    private void received(long updated, boolean delta, long start)
+    {
+        mTelemetry.read(mFrame);
+        if(mFrame.getSequence() < 0)
+        {
+            //a side message with only warnings or replies
+            return;
+        }
+        mFramesIn.increment();
+        if(mDeltas.onFrame(mFrame.getSequence(), delta, System.currentTimeMillis()))
+        {
+            mWriter.submit("keyframe", true, CommandWriter.Priority.CRITICAL);
+        }
+        if(mTiming.onDecoded(mFrame) && updated != 0)
+        {
+            mHistory.record(mFrame.getReceivedTime(), mFrame, updated);
+        }
+        long now = System.currentTimeMillis();
+        if(mTiming.getClock().shouldRequest(now))
+        {
+            mWriter.submit("time sync", now, CommandWriter.Priority.CRITICAL);
+        }
+        mDecodeTime.record(System.nanoTime() - start);
+    }
+}
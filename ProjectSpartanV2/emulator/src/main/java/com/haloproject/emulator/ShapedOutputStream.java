@@ -0,0 +1,75 @@
+package com.haloproject.emulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Reproduces what RFCOMM does to the suit's writes: several messages arriving in one read, or one
+ * message split over many reads. Messages are held until coalesce of them are pending, then
+ * written in random pieces of at most fragment bytes, each flushed on its own.
+ */
+public class ShapedOutputStream
+{
+    private final OutputStream mOut;
+    private final Random mRandom;
+    private final int mFragment;
+    private final int mCoalesce;
+    private byte[] mPending = new byte[4096];
+    private int mLength;
+    private int mMessages;
+    private long mWrites;
+    private long mBytes;
+
+    public ShapedOutputStream(OutputStream out, Random random, int fragment, int coalesce)
+    {
+        mOut = out;
+        mRandom = random;
+        mFragment = fragment;
+        mCoalesce = coalesce;
+    }
+
+    public void send(byte[] message, int offset, int length) throws IOException
+    {
+        if(mLength + length > mPending.length)
+        {
+            byte[] grown = new byte[Math.max(mPending.length * 2, mLength + length)];
+            System.arraycopy(mPending, 0, grown, 0, mLength);
+            mPending = grown;
+        }
+        System.arraycopy(message, offset, mPending, mLength, length);
+        mLength += length;
+        mMessages++;
+        if(mMessages >= mCoalesce)
+        {
+            flush();
+        }
+    }
+
+    public void flush() throws IOException
+    {
+        int position = 0;
+        while (position < mLength)
+        {
+            int piece = mFragment > 0 ? 1 + mRandom.nextInt(mFragment) : mLength;
+            piece = Math.min(piece, mLength - position);
+            mOut.write(mPending, position, piece);
+            mOut.flush();
+            position += piece;
+            mWrites++;
+        }
+        mBytes += mLength;
+        mLength = 0;
+        mMessages = 0;
+    }
+
+    public long getWrites()
+    {
+        return mWrites;
+    }
+
+    public long getBytes()
+    {
+        return mBytes;
+    }
+}
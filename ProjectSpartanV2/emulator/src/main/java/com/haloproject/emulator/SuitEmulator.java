@@ -0,0 +1,123 @@
+package com.haloproject.emulator;
+
+import com.haloproject.warnings.WarningKind;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+
+/**
+ * A stand-in for the BeagleBone that speaks the suit protocol over a local TCP socket, so the
+ * client side can be load tested without Bluetooth hardware. One phone is served at a time and
+ * the simulated suit keeps its state across reconnects, like the real one.
+ *
+ * Lines typed on stdin control it while it runs: a warning key from json.txt (for example
+ * "low water flow") raises that warning for thirty seconds, "drop" cuts the current connection.
+ */
+public class SuitEmulator
+{
+    private final EmulatorOptions mOptions;
+    private final SuitModel mModel;
+    private final Random mRandom;
+    private volatile Socket mCurrent;
+
+    public SuitEmulator(EmulatorOptions options)
+    {
+        mOptions = options;
+        mRandom = new Random(options.seed);
+        mModel = new SuitModel(options.seed, options.manual);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        EmulatorOptions options;
+        try
+        {
+            options = EmulatorOptions.parse(args);
+        } catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println("options: --port n --rate hz --protocol json|binary|negotiate --fragment bytes"
+                    + " --coalesce messages --disconnect seconds --warnings per-second --keyframe messages --loss chance"
+                    + " --manual --seed n");
+            System.exit(2);
+            return;
+        }
+        new SuitEmulator(options).serve();
+    }
+
+    public void serve() throws IOException
+    {
+        Thread console = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                readConsole();
+            }
+        }, "SuitEmulator console");
+        console.setDaemon(true);
+        console.start();
+
+        ServerSocket server = new ServerSocket(mOptions.port, 1, InetAddress.getByName(mOptions.host));
+        System.out.println("suit listening on " + server.getLocalSocketAddress() + " at " + mOptions.rate + " Hz");
+        try
+        {
+            while (true)
+            {
+                Socket socket = server.accept();
+                System.out.println("phone connected from " + socket.getRemoteSocketAddress());
+                mCurrent = socket;
+                try
+                {
+                    new SuitSession(socket, mModel, mOptions, mRandom).run();
+                } catch (IOException e)
+                {
+                    System.out.println("connection lost: " + e.getMessage());
+                }
+                mCurrent = null;
+            }
+        } finally
+        {
+            server.close();
+        }
+    }
+
+    private void readConsole()
+    {
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        try
+        {
+            String line;
+            while ((line = console.readLine()) != null)
+            {
+                line = line.trim();
+                WarningKind kind = WarningKind.fromKey(line);
+                if(kind != null)
+                {
+                    mModel.inject(kind, System.currentTimeMillis());
+                    System.out.println("raised " + kind.key);
+                }
+                else if("drop".equals(line))
+                {
+                    Socket socket = mCurrent;
+                    if(socket != null)
+                    {
+                        socket.close();
+                    }
+                }
+                else if(!line.isEmpty())
+                {
+                    System.out.println("unknown command, type a warning key or drop");
+                }
+            }
+        } catch (IOException e)
+        {
+            //no console, the emulator keeps running without one
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.haloproject.emulator;
+
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetrySnapshot;
+import com.haloproject.warnings.WarningKind;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * A rough simulation of the suit: the wearer heats up, the pump moves heat into the water loop,
+ * the peltier cools the water and the batteries drain. It follows the same switches, automation
+ * and warning thresholds as automation.c, so the phone sees values that react to its commands
+ * the way the real suit's would. Every method is synchronized, the sender and the command reader
+ * of a session share one model.
+ */
+public class SuitModel
+{
+    //thresholds from the suit's automation.h
+    static final double BODY_MAX_TEMP = 40.0;
+    static final double BODY_HIGH_TEMP = 37.6;
+    static final double BODY_LOW_TEMP = 29.0;
+    static final double BODY_MINIMUM_TEMP = 26.0;
+    static final double WATER_MAX_TEMP = 22.0;
+    static final double WATER_MIN_TEMP = 1.0;
+    static final double LOW_BATTERY = 15;
+    static final double NOMINAL_FLOW = 10;
+    static final double HOLD_TIME = 30;
+
+    private static final double CORE_TEMP = 38.5;
+    private static final double AMBIENT_TEMP = 25.0;
+    private static final double PELTIER_TEMP = 4.0;
+    //injected warnings hold for this long
+    static final long INJECTED_FOR = 30 * 1000;
+
+    private final Random mRandom;
+    private double mHead = 34.0;
+    private double mArmpits = 34.5;
+    private double mCrotch = 34.0;
+    private double mWater = 12.0;
+    private double mFlow;
+    private double mHeart = 75;
+    private double mBattery8ah = 100;
+    private double mBattery2ah = 100;
+    private double mHudBattery = 90;
+    private double mPhoneBattery = 90;
+    private String mLights = "auto";
+    private boolean mRedLight;
+    private boolean mWhiteLight;
+    private boolean mFans;
+    private boolean mPump = true;
+    private boolean mPeltier = true;
+    private boolean mPumpAuto = true;
+    private boolean mPeltierAuto = true;
+    //seconds left on a "hold" command
+    private double mPumpHeld;
+    private double mPeltierHeld;
+    private String mSound = "";
+    private long mSequence;
+    private final long[] mInjectedUntil = new long[WarningKind.COUNT];
+    private long mCommands;
+
+    public SuitModel(long seed, boolean manual)
+    {
+        mRandom = new Random(seed);
+        if(manual)
+        {
+            mPump = false;
+            mPeltier = false;
+            mPumpAuto = false;
+            mPeltierAuto = false;
+        }
+    }
+
+    //advances the simulation, called before every status message
+    public synchronized void step(double seconds)
+    {
+        double body = (mArmpits + mCrotch) / 2;
+        double pumping = mPump ? 1 : 0;
+        double noise = 0.02 * Math.sqrt(seconds);
+        mArmpits += ((CORE_TEMP - mArmpits) / 600 - pumping * (mArmpits - mWater) / 900) * seconds + noise * mRandom.nextGaussian();
+        mCrotch += ((CORE_TEMP - mCrotch) / 600 - pumping * (mCrotch - mWater) / 900) * seconds + noise * mRandom.nextGaussian();
+        mHead += ((CORE_TEMP - mHead) / 600 - (mFans ? (mHead - AMBIENT_TEMP) / 600 : 0)) * seconds + noise * mRandom.nextGaussian();
+        double target = mPeltier ? PELTIER_TEMP : AMBIENT_TEMP;
+        mWater += ((target - mWater) / (mPeltier ? 300 : 1800) + pumping * (body - mWater) / 1200) * seconds + noise * mRandom.nextGaussian();
+        mFlow = mPump ? Math.max(0, 14 + 0.5 * mRandom.nextGaussian()) : 0;
+        double restingHeart = 75 + (body - 36) * 10;
+        mHeart += ((restingHeart - mHeart) / 30) * seconds + 2 * Math.sqrt(seconds) * mRandom.nextGaussian();
+        //the peltiers drain the 8 AH pack in about four hours, everything else is small change
+        mBattery8ah = Math.max(0, mBattery8ah - seconds * 100 / (mPeltier ? 4 * 3600 : 32 * 3600));
+        mBattery2ah = Math.max(0, mBattery2ah - seconds * 100 / (10 * 3600));
+        mPumpHeld = Math.max(0, mPumpHeld - seconds);
+        mPeltierHeld = Math.max(0, mPeltierHeld - seconds);
+        automate();
+    }
+
+    //what automation.c would do with the current readings
+    private void automate()
+    {
+        double body = (mArmpits + mCrotch) / 2;
+        if(mWater <= WATER_MIN_TEMP)
+        {
+            mPump = false;
+            mPeltier = false;
+        }
+        else if(mWater >= WATER_MAX_TEMP)
+        {
+            mPump = false;
+            if(mPeltierAuto && mPeltierHeld == 0)
+            {
+                mPeltier = true;
+            }
+        }
+        else if(body >= BODY_HIGH_TEMP && mPumpAuto && mPumpHeld == 0)
+        {
+            mPump = true;
+        }
+        if(mBattery8ah < LOW_BATTERY)
+        {
+            mPeltier = false;
+        }
+        if(mHead >= BODY_HIGH_TEMP)
+        {
+            mFans = true;
+        }
+        else if(mHead <= BODY_LOW_TEMP)
+        {
+            mFans = false;
+        }
+    }
+
+    //applies the keys parser.c understands, anything else is ignored like the suit does
+    public synchronized void apply(JSONObject command)
+    {
+        Iterator<?> keys = command.keys();
+        while (keys.hasNext())
+        {
+            String key = (String) keys.next();
+            String value = command.optString(key);
+            mCommands++;
+            if("lights".equals(key))
+            {
+                mLights = value;
+            }
+            else if("head lights red".equals(key))
+            {
+                mRedLight = "on".equals(value);
+            }
+            else if("head lights white".equals(key))
+            {
+                mWhiteLight = "on".equals(value);
+            }
+            else if("head fans".equals(key))
+            {
+                mFans = "on".equals(value);
+            }
+            else if("water pump".equals(key))
+            {
+                boolean hold = "hold".equals(value);
+                mPumpHeld = hold ? HOLD_TIME : 0;
+                mPumpAuto = hold ? mPumpAuto : "auto".equals(value);
+                mPump = !hold && mPumpAuto;
+            }
+            else if("peltier".equals(key))
+            {
+                boolean hold = "hold".equals(value);
+                mPeltierHeld = hold ? HOLD_TIME : 0;
+                mPeltierAuto = hold ? mPeltierAuto : "auto".equals(value);
+                mPeltier = !hold && mPeltierAuto;
+            }
+            else if("hud battery".equals(key))
+            {
+                mHudBattery = command.optDouble(key, mHudBattery);
+            }
+            else if("phone battery".equals(key))
+            {
+                mPhoneBattery = command.optDouble(key, mPhoneBattery);
+            }
+            else if("play sound".equals(key))
+            {
+                mSound = value;
+            }
+            else
+            {
+                mCommands--;
+            }
+        }
+    }
+
+    public synchronized void inject(WarningKind kind, long now)
+    {
+        mInjectedUntil[kind.ordinal()] = now + INJECTED_FOR;
+    }
+
+    //starts a random warning with the given chance per second
+    public synchronized void maybeInject(double perSecond, double seconds, long now)
+    {
+        if(perSecond > 0 && mRandom.nextDouble() < perSecond * seconds)
+        {
+            inject(WarningKind.get(mRandom.nextInt(WarningKind.COUNT)), now);
+        }
+    }
+
+    public synchronized long getCommands()
+    {
+        return mCommands;
+    }
+
+    //a bit per WarningKind, from the readings plus anything injected
+    public synchronized int getWarnings(long now)
+    {
+        int warnings = 0;
+        double body = (mArmpits + mCrotch) / 2;
+        warnings |= temperatureWarning(body, WarningKind.CRITICAL_HIGH_BODY_TEMPERATURE, WarningKind.HIGH_BODY_TEMPERATURE,
+                WarningKind.LOW_BODY_TEMPERATURE, WarningKind.CRITICAL_LOW_BODY_TEMPERATURE);
+        warnings |= temperatureWarning(mHead, WarningKind.CRITICAL_HIGH_HEAD_TEMPERATURE, WarningKind.HIGH_HEAD_TEMPERATURE,
+                WarningKind.LOW_HEAD_TEMPERATURE, WarningKind.CRITICAL_LOW_HEAD_TEMPERATURE);
+        if(mWater >= WATER_MAX_TEMP)
+        {
+            warnings |= WarningKind.HIGH_WATER_TEMPERATURE.mask();
+        }
+        else if(mWater <= WATER_MIN_TEMP)
+        {
+            warnings |= WarningKind.LOW_WATER_TEMPERATURE.mask();
+        }
+        if(mPump && mFlow < NOMINAL_FLOW)
+        {
+            warnings |= WarningKind.LOW_WATER_FLOW.mask();
+        }
+        warnings |= mBattery8ah < LOW_BATTERY ? WarningKind.LOW_8AH_BATTERY.mask() : 0;
+        warnings |= mBattery2ah < LOW_BATTERY ? WarningKind.LOW_2AH_BATTERY.mask() : 0;
+        warnings |= mHudBattery < LOW_BATTERY ? WarningKind.LOW_HUD_BATTERY.mask() : 0;
+        warnings |= mPhoneBattery < LOW_BATTERY ? WarningKind.LOW_PHONE_BATTERY.mask() : 0;
+        for (int i = 0; i < WarningKind.COUNT; i++)
+        {
+            if(now < mInjectedUntil[i])
+            {
+                warnings |= 1 << i;
+            }
+        }
+        return warnings;
+    }
+
+    private static int temperatureWarning(double temperature, WarningKind criticalHigh, WarningKind high, WarningKind low, WarningKind criticalLow)
+    {
+        if(temperature >= BODY_MAX_TEMP)
+        {
+            return criticalHigh.mask();
+        }
+        if(temperature >= BODY_HIGH_TEMP)
+        {
+            return high.mask();
+        }
+        if(temperature <= BODY_MINIMUM_TEMP)
+        {
+            return criticalLow.mask();
+        }
+        if(temperature <= BODY_LOW_TEMP)
+        {
+            return low.mask();
+        }
+        return 0;
+    }
+
+    public static JSONObject warningsJson(int warnings) throws JSONException
+    {
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < WarningKind.COUNT; i++)
+        {
+            if((warnings & (1 << i)) != 0)
+            {
+                WarningKind kind = WarningKind.get(i);
+                json.put(kind.key, kind.message);
+            }
+        }
+        return json;
+    }
+
+    //a status message with every key serializer.c sends, in the same order
+    public synchronized JSONObject toJson(long now) throws JSONException
+    {
+        JSONObject json = new JSONObject();
+        json.put("seq", mSequence++);
+        json.put("time", now);
+        json.put("lights", mLights);
+        json.put("head lights white", onOff(mWhiteLight));
+        json.put("head lights red", onOff(mRedLight));
+        json.put("head fans", onOff(mFans));
+        json.put("water pump", onOff(mPump));
+        json.put("peltier", onOff(mPeltier));
+        json.put("head temperature", round(mHead));
+        json.put("armpits temperature", round(mArmpits));
+        json.put("crotch temperature", round(mCrotch));
+        json.put("water temperature", round(mWater));
+        json.put("flow rate", (int) Math.round(mFlow));
+        json.put("heart rate", (int) Math.round(mHeart));
+        json.put("play sound", mSound);
+        json.put("8 AH battery", (int) mBattery8ah);
+        json.put("2 AH battery", (int) mBattery2ah);
+        json.put("hud battery", (int) mHudBattery);
+        json.put("phone battery", (int) mPhoneBattery);
+        json.put("warnings", warningsJson(getWarnings(now)));
+        return json;
+    }
+
+    //the same readings published for BinaryCodec, warnings only travel as JSON
+    public synchronized void toSnapshot(TelemetrySnapshot snapshot, long now)
+    {
+        snapshot.beginWrite();
+        try
+        {
+            snapshot.setSource(mSequence++, now);
+            snapshot.set(TelemetryChannel.LIGHTS, TelemetryChannel.parseSwitch(mLights));
+            snapshot.set(TelemetryChannel.HEAD_LIGHTS_WHITE, mWhiteLight ? TelemetryChannel.ON : TelemetryChannel.OFF);
+            snapshot.set(TelemetryChannel.HEAD_LIGHTS_RED, mRedLight ? TelemetryChannel.ON : TelemetryChannel.OFF);
+            snapshot.set(TelemetryChannel.HEAD_FANS, mFans ? TelemetryChannel.ON : TelemetryChannel.OFF);
+            snapshot.set(TelemetryChannel.WATER_PUMP, mPump ? TelemetryChannel.ON : TelemetryChannel.OFF);
+            snapshot.set(TelemetryChannel.PELTIER, mPeltier ? TelemetryChannel.ON : TelemetryChannel.OFF);
+            snapshot.set(TelemetryChannel.HEAD_TEMPERATURE, round(mHead));
+            snapshot.set(TelemetryChannel.ARMPITS_TEMPERATURE, round(mArmpits));
+            snapshot.set(TelemetryChannel.CROTCH_TEMPERATURE, round(mCrotch));
+            snapshot.set(TelemetryChannel.WATER_TEMPERATURE, round(mWater));
+            snapshot.set(TelemetryChannel.FLOW_RATE, Math.round(mFlow));
+            snapshot.set(TelemetryChannel.HEART_RATE, Math.round(mHeart));
+            snapshot.set(TelemetryChannel.BATTERY_8AH, (int) mBattery8ah);
+            snapshot.set(TelemetryChannel.BATTERY_2AH, (int) mBattery2ah);
+            snapshot.set(TelemetryChannel.HUD_BATTERY, (int) mHudBattery);
+            snapshot.set(TelemetryChannel.PHONE_BATTERY, (int) mPhoneBattery);
+        } finally
+        {
+            snapshot.endWrite();
+        }
+    }
+
+    private static String onOff(boolean on)
+    {
+        return on ? "on" : "off";
+    }
+
+    //the suit's sensors report two decimals
+    private static double round(double value)
+    {
+        return Math.round(value * 100) / 100.0;
+    }
+}
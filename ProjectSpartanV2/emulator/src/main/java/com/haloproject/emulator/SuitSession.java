@@ -0,0 +1,260 @@
+package com.haloproject.emulator;
+
+import com.haloproject.bluetooth.BinaryCodec;
+import com.haloproject.bluetooth.FrameDecoder;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One connected phone. The calling thread sends status messages at the configured rate while a
+ * second thread decodes the phone's commands with the app's own FrameDecoder. Time sync requests
+ * are answered in the next status message like serializer.c does, and a configuration carrying
+ * the binary protocol switches telemetry over to BinaryCodec frames when negotiating. A
+ * configuration asking for deltas turns on DeltaEncoder for either protocol, and with --loss
+ * some messages are counted but never written, as if the link had lost them.
+ */
+class SuitSession implements FrameDecoder.FrameListener
+{
+    private final Socket mSocket;
+    private final SuitModel mModel;
+    private final EmulatorOptions mOptions;
+    private final Random mRandom;
+    private volatile boolean mBinary;
+    private volatile boolean mDelta;
+    private final DeltaEncoder mDeltas;
+    private final Object mReplyLock = new Object();
+    private JSONObject mConfigurationReply;
+    private boolean mTimeSyncPending;
+    private long mTimeSyncT0;
+    private long mTimeSyncT1;
+    private volatile long mCommandFrames;
+    private long mMessages;
+
+    SuitSession(Socket socket, SuitModel model, EmulatorOptions options, Random random)
+    {
+        mSocket = socket;
+        mModel = model;
+        mOptions = options;
+        mRandom = random;
+        mBinary = "binary".equals(options.protocol);
+        mDeltas = new DeltaEncoder(options.keyframe);
+    }
+
+    //returns once the phone goes away or the connection is dropped on purpose
+    void run() throws IOException
+    {
+        mSocket.setTcpNoDelay(true);
+        Thread reader = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                readCommands();
+            }
+        }, "SuitSession reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        ShapedOutputStream out = new ShapedOutputStream(mSocket.getOutputStream(), mRandom, mOptions.fragment, mOptions.coalesce);
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        TelemetryFrame frame = new TelemetryFrame();
+        byte[] binary = new byte[BinaryCodec.MAX_FRAME_SIZE];
+        long period = (long) (1e9 / mOptions.rate);
+        long start = System.nanoTime();
+        long next = start;
+        long last = start;
+        long lastSideMessage = 0;
+        long dropAt = mOptions.disconnect > 0
+                ? start + (long) (-Math.log(1 - mRandom.nextDouble()) * mOptions.disconnect * 1e9)
+                : Long.MAX_VALUE;
+        try
+        {
+            while (!mSocket.isClosed())
+            {
+                long nanos = System.nanoTime();
+                if(nanos >= dropAt)
+                {
+                    System.out.println("dropping the connection");
+                    break;
+                }
+                double seconds = (nanos - last) / 1e9;
+                last = nanos;
+                long now = System.currentTimeMillis();
+                mModel.step(seconds);
+                mModel.maybeInject(mOptions.warnings, seconds, now);
+                try
+                {
+                    boolean lost = mOptions.loss > 0 && mRandom.nextDouble() < mOptions.loss;
+                    if(mBinary)
+                    {
+                        mModel.toSnapshot(snapshot, now);
+                        snapshot.read(frame);
+                        long channels = mDelta ? mDeltas.encode(frame) : -1L;
+                        int length = BinaryCodec.encode(frame, channels, channels != -1L, binary, 0);
+                        if(!lost)
+                        {
+                            out.send(binary, 0, length);
+                        }
+                        //warnings and replies don't fit in a binary frame, they go once a second as JSON
+                        JSONObject side = takeReplies(new JSONObject());
+                        if(now - lastSideMessage >= 1000)
+                        {
+                            side.put("warnings", SuitModel.warningsJson(mModel.getWarnings(now)));
+                            lastSideMessage = now;
+                        }
+                        if(side.length() > 0)
+                        {
+                            byte[] bytes = side.toString().getBytes();
+                            out.send(bytes, 0, bytes.length);
+                        }
+                    }
+                    else
+                    {
+                        JSONObject message = mModel.toJson(now);
+                        if(mDelta)
+                        {
+                            message = mDeltas.encode(message);
+                        }
+                        if(!lost)
+                        {
+                            byte[] bytes = takeReplies(message).toString().getBytes();
+                            out.send(bytes, 0, bytes.length);
+                        }
+                    }
+                } catch (JSONException e)
+                {
+                    throw new IOException(e);
+                }
+                mMessages++;
+                next += period;
+                long wait = next - System.nanoTime();
+                if(wait > 0)
+                {
+                    LockSupport.parkNanos(wait);
+                }
+                else if(wait < -period * 10)
+                {
+                    //fell far behind, don't send a burst to catch up
+                    next = System.nanoTime();
+                }
+            }
+            out.flush();
+        } finally
+        {
+            mSocket.close();
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("session over after %.1f s: %d messages (%.0f/s), %d bytes in %d writes, %d command frames%n",
+                    elapsed, mMessages, mMessages / Math.max(elapsed, 1e-9), out.getBytes(), out.getWrites(), mCommandFrames);
+        }
+    }
+
+    private JSONObject takeReplies(JSONObject message) throws JSONException
+    {
+        synchronized (mReplyLock)
+        {
+            if(mConfigurationReply != null)
+            {
+                message.put("configuration", mConfigurationReply);
+                mConfigurationReply = null;
+            }
+            if(mTimeSyncPending)
+            {
+                JSONObject reply = new JSONObject();
+                reply.put("t0", mTimeSyncT0);
+                reply.put("t1", mTimeSyncT1);
+                //last, so t2 is as close to sending as it gets
+                reply.put("t2", System.currentTimeMillis());
+                message.put("time sync", reply);
+                mTimeSyncPending = false;
+            }
+        }
+        return message;
+    }
+
+    private void readCommands()
+    {
+        FrameDecoder decoder = new FrameDecoder(this);
+        try
+        {
+            InputStream in = mSocket.getInputStream();
+            while (decoder.readFrom(in) >= 0)
+            {
+                //commands are handled in onFrame as they complete
+            }
+        } catch (IOException e)
+        {
+            //the sender notices the closed socket on its next write
+        }
+        try
+        {
+            mSocket.close();
+        } catch (IOException e)
+        {
+            //already closed by the sender
+        }
+    }
+
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length)
+    {
+        mCommandFrames++;
+        long received = System.currentTimeMillis();
+        try
+        {
+            JSONObject command = new JSONObject(new String(buffer, offset, length));
+            if(command.has("keyframe"))
+            {
+                mDeltas.requestKeyframe();
+            }
+            if(command.has("time sync"))
+            {
+                synchronized (mReplyLock)
+                {
+                    mTimeSyncT0 = command.getLong("time sync");
+                    mTimeSyncT1 = received;
+                    mTimeSyncPending = true;
+                }
+            }
+            JSONObject configuration = command.optJSONObject("configuration");
+            if(configuration != null && configuration.has("delta"))
+            {
+                mDelta = configuration.optBoolean("delta", false) && mOptions.keyframe > 0;
+                mDeltas.requestKeyframe();
+            }
+            if(configuration != null && "negotiate".equals(mOptions.protocol))
+            {
+                boolean binary = BinaryCodec.PROTOCOL.equals(configuration.optString("protocol", null));
+                JSONObject reply = new JSONObject();
+                reply.put("protocol", binary ? BinaryCodec.PROTOCOL : "json");
+                synchronized (mReplyLock)
+                {
+                    mConfigurationReply = reply;
+                }
+                if(binary != mBinary)
+                {
+                    mDeltas.reset();
+                }
+                mBinary = binary;
+            }
+            mModel.apply(command);
+        } catch (JSONException e)
+        {
+            System.out.println("bad command: " + new String(buffer, offset, length));
+        }
+    }
+
+    @Override
+    public void onBinaryFrame(byte[] buffer, int offset, int length)
+    {
+        //the phone never sends binary frames
+    }
+}
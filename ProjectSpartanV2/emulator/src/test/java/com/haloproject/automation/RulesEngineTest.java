@@ -0,0 +1,225 @@
+package com.haloproject.automation;
+
+import com.haloproject.metrics.MetricsRegistry;
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RulesEngineTest
+{
+    private static final long SECOND = 1000;
+
+    private final List<String> mSent = new ArrayList<String>();
+    private final TelemetrySnapshot mSnapshot = new TelemetrySnapshot();
+    private final TelemetryFrame mFrame = new TelemetryFrame();
+    private RulesEngine mEngine;
+    private long mNow;
+
+    @Before
+    public void setUp()
+    {
+        mEngine = new RulesEngine(new RulesEngine.Actuator()
+        {
+            @Override
+            public boolean send(TelemetryChannel target, String command)
+            {
+                mSent.add(target.key + " " + command);
+                return true;
+            }
+        }, new MetricsRegistry());
+        //comfortable readings, every switch where the rules want it
+        set(TelemetryChannel.WATER_TEMPERATURE, 12);
+        set(TelemetryChannel.HEAD_TEMPERATURE, 34);
+        set(TelemetryChannel.ARMPITS_TEMPERATURE, 34);
+        set(TelemetryChannel.CROTCH_TEMPERATURE, 34);
+        set(TelemetryChannel.HEAD_FANS, TelemetryChannel.OFF);
+        set(TelemetryChannel.WATER_PUMP, TelemetryChannel.ON);
+        set(TelemetryChannel.PELTIER, TelemetryChannel.ON);
+    }
+
+    private void set(TelemetryChannel channel, double value)
+    {
+        mSnapshot.beginWrite();
+        mSnapshot.set(channel, value);
+        mSnapshot.endWrite();
+    }
+
+    //one suit message a second, like SERIALIZE_DELAY
+    private void run(long millis)
+    {
+        long end = mNow + millis;
+        while (mNow < end)
+        {
+            mNow += SECOND;
+            mSnapshot.read(mFrame);
+            mEngine.evaluate(mFrame, mNow);
+        }
+    }
+
+    //lets the filter settle on the current readings without the rules acting
+    private void settle()
+    {
+        mEngine.setEnabled(false);
+        run(60 * SECOND);
+        mEngine.setEnabled(true);
+    }
+
+    //the first message that matches, then HOLD more
+    private void untilHeld()
+    {
+        run(SECOND + RulesEngine.HOLD);
+    }
+
+    @Test
+    public void everyRuleTargetsASwitch()
+    {
+        for (Rule rule : RulesEngine.compile())
+        {
+            assertTrue(rule.name, rule.target.isSwitch);
+        }
+    }
+
+    @Test
+    public void nothingIsSentWhileComfortable()
+    {
+        mEngine.setEnabled(true);
+        run(60 * SECOND);
+        assertEquals(0, mSent.size());
+    }
+
+    @Test
+    public void nothingIsSentWhileDisabled()
+    {
+        set(TelemetryChannel.HEAD_TEMPERATURE, 39);
+        run(60 * SECOND);
+        assertEquals(0, mSent.size());
+    }
+
+    @Test
+    public void actsOnlyAfterTheRuleHeld()
+    {
+        set(TelemetryChannel.HEAD_TEMPERATURE, 39);
+        settle();
+        run(SECOND);
+        assertEquals(0, mSent.size());
+        run(RulesEngine.HOLD - SECOND);
+        assertEquals(0, mSent.size());
+        run(SECOND);
+        assertEquals("[head fans on]", mSent.toString());
+    }
+
+    @Test
+    public void repeatsOnlyAfterTheRetryInterval()
+    {
+        set(TelemetryChannel.HEAD_TEMPERATURE, 39);
+        settle();
+        untilHeld();
+        assertEquals(1, mSent.size());
+        run(RulesEngine.RETRY_INTERVAL - SECOND);
+        assertEquals(1, mSent.size());
+        run(SECOND);
+        assertEquals(2, mSent.size());
+    }
+
+    @Test
+    public void nothingIsSentOnceTheSuitReportsTheState()
+    {
+        set(TelemetryChannel.HEAD_TEMPERATURE, 39);
+        set(TelemetryChannel.HEAD_FANS, TelemetryChannel.ON);
+        settle();
+        run(60 * SECOND);
+        assertEquals(0, mSent.size());
+    }
+
+    @Test
+    public void aManualCommandHoldsTheRulesOff()
+    {
+        set(TelemetryChannel.HEAD_TEMPERATURE, 39);
+        settle();
+        mEngine.override(TelemetryChannel.HEAD_FANS, mNow);
+        run(RulesEngine.OVERRIDE_TIME - SECOND);
+        assertEquals(0, mSent.size());
+        run(SECOND);
+        assertEquals("[head fans on]", mSent.toString());
+    }
+
+    @Test
+    public void followsAutomationHNotTheOldConfigDefaults()
+    {
+        //28 and 32 degrees were never thresholds on the suit
+        set(TelemetryChannel.HEAD_TEMPERATURE, 33);
+        set(TelemetryChannel.ARMPITS_TEMPERATURE, 33);
+        set(TelemetryChannel.CROTCH_TEMPERATURE, 33);
+        settle();
+        run(60 * SECOND);
+        assertEquals(0, mSent.size());
+
+        set(TelemetryChannel.HEAD_TEMPERATURE, AutomationLimits.BODY_HIGH_TEMP + 0.5);
+        settle();
+        untilHeld();
+        assertEquals("[head fans on]", mSent.toString());
+    }
+
+    @Test
+    public void warmBodyRunsThePumpAndCoolBodyHoldsIt()
+    {
+        set(TelemetryChannel.WATER_PUMP, TelemetryChannel.OFF);
+        set(TelemetryChannel.ARMPITS_TEMPERATURE, 38.5);
+        set(TelemetryChannel.CROTCH_TEMPERATURE, 38);
+        settle();
+        untilHeld();
+        assertEquals("[water pump auto]", mSent.toString());
+
+        mSent.clear();
+        set(TelemetryChannel.WATER_PUMP, TelemetryChannel.ON);
+        set(TelemetryChannel.ARMPITS_TEMPERATURE, 28);
+        set(TelemetryChannel.CROTCH_TEMPERATURE, 27);
+        settle();
+        untilHeld();
+        assertEquals("[water pump hold]", mSent.toString());
+    }
+
+    @Test
+    public void warmWaterBeatsAWarmBody()
+    {
+        set(TelemetryChannel.WATER_TEMPERATURE, 25);
+        set(TelemetryChannel.PELTIER, TelemetryChannel.OFF);
+        set(TelemetryChannel.ARMPITS_TEMPERATURE, 39);
+        set(TelemetryChannel.CROTCH_TEMPERATURE, 39);
+        settle();
+        untilHeld();
+        assertTrue(mSent.toString(), mSent.contains("water pump hold"));
+        assertTrue(mSent.toString(), mSent.contains("peltier auto"));
+        assertTrue(mSent.toString(), !mSent.contains("water pump auto"));
+    }
+
+    @Test
+    public void sentinelReadingsAreIgnored()
+    {
+        settle();
+        set(TelemetryChannel.WATER_TEMPERATURE, AutomationLimits.WATER_SENSOR_DEFAULT);
+        set(TelemetryChannel.HEAD_TEMPERATURE, AutomationLimits.BODY_SENSOR_DEFAULT);
+        run(60 * SECOND);
+        assertEquals(0, mSent.size());
+    }
+
+    @Test
+    public void aSingleSpikeIsSmoothedAway()
+    {
+        settle();
+        set(TelemetryChannel.WATER_TEMPERATURE, 30);
+        run(SECOND);
+        set(TelemetryChannel.WATER_TEMPERATURE, 12);
+        run(60 * SECOND);
+        assertEquals(0, mSent.size());
+    }
+}
@@ -0,0 +1,88 @@
+package com.haloproject.bluetooth;
+
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryCodecTest
+{
+    static TelemetryFrame frame(long sequence, long sourceTime, double head, double water)
+    {
+        TelemetrySnapshot snapshot = new TelemetrySnapshot();
+        snapshot.beginWrite();
+        snapshot.set(TelemetryChannel.HEAD_TEMPERATURE, head);
+        snapshot.set(TelemetryChannel.WATER_TEMPERATURE, water);
+        snapshot.setSource(sequence, sourceTime);
+        snapshot.endWrite();
+        TelemetryFrame frame = new TelemetryFrame();
+        snapshot.read(frame);
+        return frame;
+    }
+
+    @Test
+    public void roundTripKeepsValuesSequenceAndTime()
+    {
+        long sourceTime = 1445150000123L;
+        byte[] out = new byte[BinaryCodec.MAX_FRAME_SIZE];
+        int length = BinaryCodec.encode(frame(42, sourceTime, 31.25, -4.5), -1L, out, 0);
+
+        assertEquals(length, BinaryCodec.check(out, 0, length));
+        assertFalse(BinaryCodec.isDelta(out, 0, length));
+        TelemetrySnapshot decoded = new TelemetrySnapshot();
+        long updated = BinaryCodec.decode(out, 0, length, decoded);
+        TelemetryFrame read = new TelemetryFrame();
+        decoded.read(read);
+
+        assertEquals((1L << TelemetryChannel.HEAD_TEMPERATURE.ordinal()) | (1L << TelemetryChannel.WATER_TEMPERATURE.ordinal()), updated);
+        assertEquals(31.25, read.get(TelemetryChannel.HEAD_TEMPERATURE), 0);
+        assertEquals(-4.5, read.get(TelemetryChannel.WATER_TEMPERATURE), 0);
+        assertEquals(42, read.getSequence());
+        assertEquals(sourceTime, read.getSourceTime());
+    }
+
+    @Test
+    public void deltaFrameOnlyCarriesTheChosenChannels()
+    {
+        byte[] out = new byte[BinaryCodec.MAX_FRAME_SIZE];
+        long channels = 1L << TelemetryChannel.WATER_TEMPERATURE.ordinal();
+        int length = BinaryCodec.encode(frame(7, 0, 30, 12), channels, true, out, 0);
+
+        assertTrue(BinaryCodec.isDelta(out, 0, length));
+        assertEquals(channels, BinaryCodec.decode(out, 0, length, new TelemetrySnapshot()));
+    }
+
+    @Test
+    public void checkWaitsForTheRestOfAFrame()
+    {
+        byte[] out = new byte[BinaryCodec.MAX_FRAME_SIZE];
+        int length = BinaryCodec.encode(frame(1, 0, 20, 10), -1L, out, 0);
+
+        for (int available = 0; available < length; available++)
+        {
+            assertEquals(0, BinaryCodec.check(out, 0, available));
+        }
+    }
+
+    @Test
+    public void checkRejectsAnyFlippedBit()
+    {
+        byte[] out = new byte[BinaryCodec.MAX_FRAME_SIZE];
+        int length = BinaryCodec.encode(frame(1, 0, 20, 10), -1L, out, 0);
+
+        for (int bit = 0; bit < length * 8; bit++)
+        {
+            out[bit / 8] ^= 1 << (bit % 8);
+            int checked = BinaryCodec.check(out, 0, length);
+            //a flip in the length field can also make the frame look longer than what is there
+            assertTrue("bit " + bit, checked == -1 || checked == 0);
+            out[bit / 8] ^= 1 << (bit % 8);
+        }
+        assertEquals(length, BinaryCodec.check(out, 0, length));
+    }
+}
@@ -0,0 +1,111 @@
+package com.haloproject.bluetooth;
+
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameDecoderTest
+{
+    //keeps every frame as text, binary ones as the head temperature they carried
+    private static class Recorder implements FrameDecoder.FrameListener
+    {
+        final List<String> frames = new ArrayList<String>();
+
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length)
+        {
+            frames.add(new String(buffer, offset, length));
+        }
+
+        @Override
+        public void onBinaryFrame(byte[] buffer, int offset, int length)
+        {
+            TelemetrySnapshot snapshot = new TelemetrySnapshot();
+            BinaryCodec.decode(buffer, offset, length, snapshot);
+            TelemetryFrame frame = new TelemetryFrame();
+            snapshot.read(frame);
+            frames.add("binary " + frame.get(TelemetryChannel.HEAD_TEMPERATURE));
+        }
+    }
+
+    private static byte[] binary(double head)
+    {
+        byte[] out = new byte[BinaryCodec.MAX_FRAME_SIZE];
+        int length = BinaryCodec.encode(BinaryCodecTest.frame(1, 0, head, 10), -1L, out, 0);
+        byte[] frame = new byte[length];
+        System.arraycopy(out, 0, frame, 0, length);
+        return frame;
+    }
+
+    private static byte[] stream(byte[]... parts)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+        {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void framesSplitAcrossReadsAreDeliveredWhole()
+    {
+        byte[] bytes = stream("{\"a\": \"}{\"}".getBytes(), binary(21.5), "{\"b\": {\"c\": 1}}".getBytes(), binary(22.5));
+        //every split point, including one byte per read
+        for (int chunk = 1; chunk <= bytes.length; chunk++)
+        {
+            Recorder recorder = new Recorder();
+            FrameDecoder decoder = new FrameDecoder(recorder);
+            for (int offset = 0; offset < bytes.length; offset += chunk)
+            {
+                decoder.feed(bytes, offset, Math.min(chunk, bytes.length - offset));
+            }
+            assertEquals("chunk " + chunk, 4, recorder.frames.size());
+            assertEquals("{\"a\": \"}{\"}", recorder.frames.get(0));
+            assertEquals("binary 21.5", recorder.frames.get(1));
+            assertEquals("{\"b\": {\"c\": 1}}", recorder.frames.get(2));
+            assertEquals("binary 22.5", recorder.frames.get(3));
+            assertEquals(0, decoder.getCorruptFrames());
+        }
+    }
+
+    @Test
+    public void corruptBinaryFrameIsSkippedAndTheNextOneDecodes()
+    {
+        byte[] corrupt = binary(30);
+        corrupt[BinaryCodec.HEADER_SIZE + 2] ^= 0x10;
+        byte[] bytes = stream(corrupt, binary(31), "{\"x\": 1}".getBytes());
+        Recorder recorder = new Recorder();
+        FrameDecoder decoder = new FrameDecoder(recorder);
+
+        decoder.feed(bytes, 0, bytes.length);
+
+        assertEquals(2, recorder.frames.size());
+        assertEquals("binary 31.0", recorder.frames.get(0));
+        assertEquals("{\"x\": 1}", recorder.frames.get(1));
+        assertEquals(1, decoder.getCorruptFrames());
+        assertEquals(corrupt.length, decoder.getDroppedBytes());
+    }
+
+    @Test
+    public void noiseBetweenFramesIsDropped()
+    {
+        byte[] bytes = stream("\r\n garbage ".getBytes(), binary(25), "\n".getBytes());
+        Recorder recorder = new Recorder();
+        FrameDecoder decoder = new FrameDecoder(recorder);
+
+        decoder.feed(bytes, 0, bytes.length);
+
+        assertEquals(1, recorder.frames.size());
+        assertEquals("binary 25.0", recorder.frames.get(0));
+        assertEquals(bytes.length - binary(25).length, decoder.getDroppedBytes());
+    }
+}
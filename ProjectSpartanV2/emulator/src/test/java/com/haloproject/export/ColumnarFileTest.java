@@ -0,0 +1,141 @@
+package com.haloproject.export;
+
+import com.haloproject.telemetry.TelemetryChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarFileTest
+{
+    private static final int ROWS = 5000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    //a second apart with jitter and the odd gap, so the time column needs every delta width
+    private static long[] times(Random random)
+    {
+        long[] times = new long[ROWS];
+        long time = 1400000000000L;
+        for (int row = 0; row < ROWS; row++)
+        {
+            time += row % 500 == 499 ? 3600 * 1000 : 1000 + random.nextInt(41) - 20;
+            times[row] = time;
+        }
+        return times;
+    }
+
+    //slow sensor drift, switches, missing values and the doubles that are easy to get wrong
+    private static double[][] rows(Random random)
+    {
+        double[] odd = {0.0, -0.0, Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e-300, Math.PI};
+        double[][] rows = new double[ROWS][TelemetryChannel.COUNT];
+        for (int row = 0; row < ROWS; row++)
+        {
+            for (int i = 0; i < TelemetryChannel.COUNT; i++)
+            {
+                double value;
+                if(row < i * 10 || random.nextInt(50) == 0)
+                {
+                    value = Double.NaN;
+                }
+                else if(TelemetryChannel.get(i).isSwitch)
+                {
+                    value = row / 100 % 2;
+                }
+                else if(random.nextInt(100) == 0)
+                {
+                    value = odd[random.nextInt(odd.length)];
+                }
+                else if(row > 0 && !Double.isNaN(rows[row - 1][i]) && random.nextInt(3) > 0)
+                {
+                    value = rows[row - 1][i];
+                }
+                else
+                {
+                    value = 20 + random.nextGaussian() * 5;
+                }
+                rows[row][i] = value;
+            }
+        }
+        return rows;
+    }
+
+    private static void assertBits(String message, double expected, double actual)
+    {
+        assertEquals(message, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+    }
+
+    @Test
+    public void everyRowReadsBackBitExact() throws IOException
+    {
+        Random random = new Random(5000);
+        long[] times = times(random);
+        double[][] rows = rows(random);
+        File file = mFolder.newFile("session.hsc");
+        ColumnarWriter writer = new ColumnarWriter(new FileOutputStream(file));
+        for (int row = 0; row < ROWS; row++)
+        {
+            writer.append(times[row], rows[row]);
+        }
+        assertEquals(ROWS, writer.getRowCount());
+        writer.close();
+
+        ColumnarReader reader = new ColumnarReader(file);
+        assertEquals(ROWS, reader.getRowCount());
+        assertEquals((ROWS + ColumnarWriter.BLOCK_ROWS - 1) / ColumnarWriter.BLOCK_ROWS, reader.getBlockCount());
+        int row = 0;
+        for (int block = 0; block < reader.getBlockCount(); block++)
+        {
+            ColumnarReader.Block decoded = reader.read(block, -1L);
+            assertEquals(times[row], reader.getFirstTime(block));
+            assertEquals(times[row + decoded.getRowCount() - 1], reader.getLastTime(block));
+            for (int i = 0; i < decoded.getRowCount(); i++, row++)
+            {
+                assertEquals("time of row " + row, times[row], decoded.getTime(i));
+                for (TelemetryChannel channel : TelemetryChannel.values())
+                {
+                    assertBits(channel.key + " in row " + row, rows[row][channel.ordinal()], decoded.get(channel, i));
+                }
+            }
+        }
+        assertEquals(ROWS, row);
+        reader.close();
+    }
+
+    @Test
+    public void onlyTheChannelsAskedForAreDecoded() throws IOException
+    {
+        Random random = new Random(1);
+        long[] times = times(random);
+        double[][] rows = rows(random);
+        File file = mFolder.newFile("session.hsc");
+        ColumnarWriter writer = new ColumnarWriter(new FileOutputStream(file));
+        for (int row = 0; row < ROWS; row++)
+        {
+            writer.append(times[row], rows[row]);
+        }
+        writer.close();
+
+        ColumnarReader reader = new ColumnarReader(file);
+        ColumnarReader.Block decoded = reader.read(1, 1L << TelemetryChannel.WATER_TEMPERATURE.ordinal());
+        int first = ColumnarWriter.BLOCK_ROWS;
+        for (int i = 0; i < decoded.getRowCount(); i++)
+        {
+            assertBits("row " + (first + i), rows[first + i][TelemetryChannel.WATER_TEMPERATURE.ordinal()],
+                    decoded.get(TelemetryChannel.WATER_TEMPERATURE, i));
+            assertTrue(Double.isNaN(decoded.get(TelemetryChannel.HEAD_TEMPERATURE, i)));
+        }
+        reader.close();
+    }
+}
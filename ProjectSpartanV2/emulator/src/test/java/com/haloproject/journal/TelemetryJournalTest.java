@@ -0,0 +1,195 @@
+package com.haloproject.journal;
+
+import com.haloproject.metrics.Counter;
+import com.haloproject.metrics.MetricsRegistry;
+import com.haloproject.telemetry.TelemetryChannel;
+import com.haloproject.telemetry.TelemetryFrame;
+import com.haloproject.telemetry.TelemetrySnapshot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryJournalTest
+{
+    private static final long HEAD = 1L << TelemetryChannel.HEAD_TEMPERATURE.ordinal();
+    private static final long WATER = 1L << TelemetryChannel.WATER_TEMPERATURE.ordinal();
+    private static final long HEART = 1L << TelemetryChannel.HEART_RATE.ordinal();
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final TelemetrySnapshot mSnapshot = new TelemetrySnapshot();
+    private final TelemetryFrame mFrame = new TelemetryFrame();
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mDirectory = mFolder.newFolder("journal");
+    }
+
+    //the head every frame, the water every 7th and the heart rate every 13th, all exact in hundredths
+    private static long updatedBy(long sequence)
+    {
+        long updated = HEAD;
+        if(sequence % 7 == 0)
+        {
+            updated |= WATER;
+        }
+        if(sequence % 13 == 0)
+        {
+            updated |= HEART;
+        }
+        return updated;
+    }
+
+    private static double head(long sequence)
+    {
+        return (sequence % 4000) / 100.0;
+    }
+
+    private static double water(long sequence)
+    {
+        return (sequence / 7 % 2000) / 100.0;
+    }
+
+    private static double heart(long sequence)
+    {
+        return sequence / 13 % 200;
+    }
+
+    //appends frames first to last - 1 and waits until the writer has taken every one
+    private void write(long first, long last) throws InterruptedException
+    {
+        MetricsRegistry metrics = new MetricsRegistry();
+        Counter written = metrics.counter("journal frames");
+        TelemetryJournal journal = new TelemetryJournal(mDirectory, metrics);
+        for (long sequence = first; sequence < last; sequence++)
+        {
+            mSnapshot.beginWrite();
+            mSnapshot.setSource(sequence, sequence * 1000);
+            mSnapshot.set(TelemetryChannel.HEAD_TEMPERATURE, head(sequence));
+            mSnapshot.set(TelemetryChannel.WATER_TEMPERATURE, water(sequence));
+            mSnapshot.set(TelemetryChannel.HEART_RATE, heart(sequence));
+            mSnapshot.endWrite();
+            mSnapshot.read(mFrame);
+            //the queue is full while the writer catches up
+            while (!journal.append(mFrame, updatedBy(sequence)))
+            {
+                Thread.yield();
+            }
+        }
+        while (written.get() < last - first)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(0, metrics.counter("journal errors").get());
+        journal.shutdown();
+        journal.join();
+    }
+
+    //reads the whole journal back, a restart forgets the channels until they are journaled again
+    private void assertJournal(long[] sequences, long[] restarts) throws IOException
+    {
+        JournalReader reader = new JournalReader(mDirectory);
+        long lastTime = 0;
+        long water = -1;
+        long heart = -1;
+        int restart = 0;
+        for (long sequence : sequences)
+        {
+            if(restart < restarts.length && sequence >= restarts[restart])
+            {
+                water = -1;
+                heart = -1;
+                restart++;
+            }
+            if((updatedBy(sequence) & WATER) != 0)
+            {
+                water = sequence;
+            }
+            if((updatedBy(sequence) & HEART) != 0)
+            {
+                heart = sequence;
+            }
+            assertTrue("frame " + sequence, reader.next());
+            assertEquals(sequence, reader.getSequence());
+            assertEquals(sequence * 1000, reader.getSourceTime());
+            //a keyframe carries every channel known so far
+            assertEquals(updatedBy(sequence), reader.getUpdated() & updatedBy(sequence));
+            assertTrue(reader.getTime() >= lastTime);
+            lastTime = reader.getTime();
+            assertEquals(head(sequence), reader.get(TelemetryChannel.HEAD_TEMPERATURE), 0);
+            assertEquals(water < 0 ? Double.NaN : water(water), reader.get(TelemetryChannel.WATER_TEMPERATURE), 0);
+            assertEquals(heart < 0 ? Double.NaN : heart(heart), reader.get(TelemetryChannel.HEART_RATE), 0);
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    private static long[] range(long first, long last)
+    {
+        long[] sequences = new long[(int) (last - first)];
+        for (int i = 0; i < sequences.length; i++)
+        {
+            sequences[i] = first + i;
+        }
+        return sequences;
+    }
+
+    private static long[] concat(long[] a, long[] b)
+    {
+        long[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+
+    @Test(timeout = 120 * 1000)
+    public void everyFrameReadsBackAcrossRotationsAndRestarts() throws Exception
+    {
+        write(0, 40000);
+        write(40000, 80000);
+        write(80000, 120000);
+
+        assertTrue(JournalSegment.list(mDirectory).length > 1);
+        assertJournal(range(0, 120000), new long[]{40000, 80000});
+    }
+
+    @Test(timeout = 60 * 1000)
+    public void aDamagedTailEndsTheJournalAtTheLastGoodRecord() throws Exception
+    {
+        write(0, 1000);
+        File[] segments = JournalSegment.list(mDirectory);
+        assertEquals(1, segments.length);
+
+        //the segment is zeros after its records, so the last nonzero byte is in the last record
+        RandomAccessFile file = new RandomAccessFile(segments[0], "rw");
+        long position = file.length() - 1;
+        file.seek(position);
+        int value = file.read();
+        while (value == 0)
+        {
+            file.seek(--position);
+            value = file.read();
+        }
+        file.seek(position);
+        file.write(value ^ 1);
+        file.close();
+        assertJournal(range(0, 999), new long[0]);
+
+        //reopening cuts the damaged record off and carries on behind the last good one
+        write(1000, 1010);
+        assertJournal(concat(range(0, 999), range(1000, 1010)), new long[]{1000});
+    }
+}
@@ -53,6 +53,8 @@ static char glass_mac_addr[MAX_BUF_SIZE] = { 0 };
 static bool android_configured;
 static bool glass_configured;
 
+static void (*android_on_connect)(void) = NULL;
+
 //consider converting to macro
 static void set_bluetooth_mode(uint32_t mode)
 {
@@ -142,6 +144,9 @@ static void beagleblue_connect(int *sock, int *client, uint8_t channel)
 static void *android_connect_thread()
 {
 	beagleblue_connect(&android_sock, &android_client, ANDROID_PORT);
+	if (android_on_connect != NULL) {
+		android_on_connect();
+	}
 	android_is_connected = true;
 	if (glass_is_connected) {
 		set_bluetooth_mode(SCAN_DISABLED);
@@ -259,6 +264,11 @@ static void *glass_send_thread()
 	return NULL;
 }
 
+void beagleblue_on_android_connect(void (*on_connect)(void))
+{
+	android_on_connect = on_connect;
+}
+
 void beagleblue_init(void (*on_receive)(char *))
 {
 	beagleblue_is_done = false;
@@ -49,13 +49,16 @@ static int adjustedFlowRate = 0;
 
 static time_t peltier_timein = 0;
 static time_t pump_timein = 0;
+static time_t peltier_held_until = 0;
+static time_t pump_held_until = 0;
 
 // controlls the peltier cycle
 static void peltier_automation()
 {
     time_t current_time = time(NULL);
 
-    if (difftime(current_time, peltier_timein) >= PELTIER_TIMEOUT && !peltierLocked && peltierAuto) {
+    if (difftime(current_time, peltier_timein) >= PELTIER_TIMEOUT && !peltierLocked && peltierAuto
+        && current_time >= peltier_held_until) {
         int peltierState;
         // peltierState will be a 1 if it's on and a 0 if off
         if (halosuit_relay_value(PELTIER, &peltierState)) { 
@@ -85,7 +88,7 @@ static void pump_automation()
 {
     time_t current_time = time(NULL);
 
-    if (difftime(current_time, pump_timein) >= PUMP_TIMEOUT && pumpAuto) {
+    if (difftime(current_time, pump_timein) >= PUMP_TIMEOUT && pumpAuto && current_time >= pump_held_until) {
         int pumpState;
         if (halosuit_relay_value(WATER_PUMP, &pumpState)) {
             logger_log("ERROR: WATER_PUMP READ FAILURE");
@@ -147,7 +150,7 @@ static void waterTempLogic()
         // turn off pump turn on peltier
         pumpLocked = true;
         waterTempWarning = HIGH_TEMP_WARNING;
-        if (peltierAuto) {
+        if (peltierAuto && time(NULL) >= peltier_held_until) {
             if (halosuit_relay_switch(PELTIER, HIGH)) {
                 logger_log("ERROR: PELTIER READ FAILURE");
             }
@@ -241,7 +244,7 @@ static void checkBodyTemperature(double temp)
         // and will warm up the water to start pumping again
         // if water is too warm well pumping it will not help
         // may need to add a warning here to notify the user of lack of coolant
-        if (!pumpLocked && pumpAuto) {
+        if (!pumpLocked && pumpAuto && time(NULL) >= pump_held_until) {
             if (halosuit_relay_switch(WATER_PUMP, HIGH)) {
                 logger_log("ERROR: WATER_PUMP READ FAILURE");
             }
@@ -460,9 +463,18 @@ void automation_peltier_auto()
         logger_log("ERROR: PELTIER READ FAILURE");
     }
     peltier_timein = time(NULL);
+    peltier_held_until = 0;
     peltierAuto = true;
 }
 
+void automation_peltier_hold()
+{
+    if (halosuit_relay_switch(PELTIER, LOW)) {
+        logger_log("ERROR: PELTIER READ FAILURE");
+    }
+    peltier_held_until = time(NULL) + HOLD_TIME;
+}
+
 void automation_pump_off()
 {
     if (halosuit_relay_switch(WATER_PUMP, LOW)) {
@@ -477,9 +489,18 @@ void automation_pump_auto()
         logger_log("ERROR: WATER_PUMP READ FAILURE");
     }
     pump_timein = time(NULL);
+    pump_held_until = 0;
     pumpAuto = true; 
 }
 
+void automation_pump_hold()
+{
+    if (halosuit_relay_switch(WATER_PUMP, LOW)) {
+        logger_log("ERROR: WATER_PUMP READ FAILURE");
+    }
+    pump_held_until = time(NULL) + HOLD_TIME;
+}
+
 char automation_getHeadTempWarning()
 {
     return headTempWarning;
@@ -11,6 +11,7 @@
 int beagleblue_glass_send(char *); //sends char buffer with int specifying the number of characters returns the number of bytes sent
 int beagleblue_android_send(char *);
 void beagleblue_init(void (*on_receive)(char *)); //takes callback function as value which gets performed when something is received
+void beagleblue_on_android_connect(void (*on_connect)(void)); //called for every new phone connection before anything is read from it, set before init
 void beagleblue_exit(); //stops threads
 void beagleblue_join(); //waits for threads to join
 
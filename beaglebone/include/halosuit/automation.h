@@ -18,6 +18,7 @@
 #define PELTIER_TIMEOUT 1200            // 1200 seconds = 20 minutes time for peltier to run
 #define PUMP_TIMEOUT 1200
 #define PUMP_STARTUP_TIME 5             // 5 seconds for flow to adjust to normal levels
+#define HOLD_TIME 30                    // 30 seconds a "hold" from the phone keeps a relay off
 
 #define TEMP_VARIANCE 5.00              // degree of difference between two readings for it to be ignored
 
@@ -53,6 +54,11 @@ void automation_pump_off();
 
 void automation_pump_auto();
 
+// switch off until HOLD_TIME passes without another hold, automation stays on
+void automation_peltier_hold();
+
+void automation_pump_hold();
+
 /* The functions below get character values that correspond to 
    various warnings if the temperature is out of nominal ranges.
    the return values are as follows:
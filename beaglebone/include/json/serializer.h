@@ -6,8 +6,31 @@
 #ifndef SERIALIZER
 #define SERIALIZER
 
-void serializer_serialize(char *buf);
+#include <stdint.h>
+#include <stdbool.h>
+
+// samples the suit once and builds both status messages from the same readings: the full one the
+// glass gets, and the phone's, only the values that changed once it has asked for deltas
+void serializer_serialize(char *glass_buf, char *android_buf);
+
+// switched on by the phone's configuration message, off again when it deconfigures
+void serializer_set_delta(bool enabled);
+
+// forgets the previous phone's delta mode and pending replies, called on every phone connection
+void serializer_android_connected(void);
+
+// the next phone message carries every value, the phone asks after missing a delta
+void serializer_request_keyframe(void);
+
+// the phone offered a telemetry protocol, the next phone message says which one the suit sends
+void serializer_answer_protocol(void);
 
 void serializer_save_sound(char *buf);
 
+// milliseconds since the epoch, the timestamp used in status messages
+int64_t serializer_time_millis(void);
+
+// remembers a time sync request, the reply goes out with the next status message
+void serializer_time_sync(int64_t t0);
+
 #endif
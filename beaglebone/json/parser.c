@@ -111,6 +111,9 @@ void parser_parse(char* json_text)
             else if (strcmp(object->u.object.values[i].value->u.string.ptr, "off") == 0) {
                 automation_pump_off();
             }
+            else if (strcmp(object->u.object.values[i].value->u.string.ptr, "hold") == 0) {
+                automation_pump_hold();
+            }
         }
         else if (strcmp(object->u.object.values[i].name, "peltier") == 0) {
             if (strcmp(object->u.object.values[i].value->u.string.ptr, "auto") == 0) {
@@ -119,6 +122,9 @@ void parser_parse(char* json_text)
             else if (strcmp(object->u.object.values[i].value->u.string.ptr, "off") == 0) {
                 automation_peltier_off();
             }
+            else if (strcmp(object->u.object.values[i].value->u.string.ptr, "hold") == 0) {
+                automation_peltier_hold();
+            }
         }
 
         else if (strcmp (object->u.object.values[i].name, "hud battery") == 0) {
@@ -129,6 +135,14 @@ void parser_parse(char* json_text)
             soc_setcharge(PHONE_BATTERY, object->u.object.values[i].value->u.integer);
         }
 
+        else if (strcmp(object->u.object.values[i].name, "time sync") == 0) {
+            serializer_time_sync(object->u.object.values[i].value->u.integer);
+        }
+
+        else if (strcmp(object->u.object.values[i].name, "keyframe") == 0) {
+            serializer_request_keyframe();
+        }
+
         else if (strcmp(object->u.object.values[i].name, "play sound") == 0) {
             serializer_save_sound(object->u.object.values[i].value->u.string.ptr);
         }
@@ -140,9 +154,15 @@ void parser_parse(char* json_text)
                 if (strcmp(config->u.object.values[j].name, "android") == 0) {
                     if (strcmp(address, "delete") == 0) {
                         config_remove_key("Bluetooth", "android");
+                        serializer_set_delta(false);
                     } else {
                         config_set_string("Bluetooth", "android", address);
                     }
+                } else if (strcmp(config->u.object.values[j].name, "protocol") == 0) {
+                    serializer_answer_protocol();
+                } else if (strcmp(config->u.object.values[j].name, "delta") == 0) {
+                    json_value* delta = config->u.object.values[j].value;
+                    serializer_set_delta(delta->type == json_boolean && delta->u.boolean);
                 } else if (strcmp(config->u.object.values[j].name, "glass") == 0) {
                     if (strcmp(address, "delete") == 0) {
                         config_remove_key("Bluetooth", "glass");
@@ -5,6 +5,10 @@
 #include <stdlib.h>
 #include <stdio.h> 
 #include <string.h>
+#include <stdint.h>
+#include <stdbool.h>
+#include <pthread.h>
+#include <time.h>
 
 #include <json/serializer.h>
 #include <json.h>
@@ -22,14 +26,221 @@
 
 #define BUFFER_SIZE 1024
 
+// the only telemetry protocol the suit sends, beagleblue writes nul terminated strings so binary frames can't go out
+#define PROTOCOL "json"
+
+// a delta stream sends everything again this often, so a lost message can't leave a value stale for long
+#define KEYFRAME_INTERVAL 30
+#define MAX_SENT_VALUES 32
+
+enum message_kind {
+    GLASS_MESSAGE,      // every value, no sequence number or time sync reply of its own
+    FULL_MESSAGE,       // every value, for a phone that has not asked for deltas
+    KEYFRAME_MESSAGE,   // every value, starts a new delta baseline
+    DELTA_MESSAGE       // only the values that changed since the previous phone message
+};
+
+// one reading of every sensor and relay, both status messages of a tick are built from it
+struct status {
+    int64_t time;
+    const char *lights;                     // ON, AUTO or OFF
+    // 1 on, 0 off, -1 when the relay could not be read
+    int head_lights_white;
+    int head_lights_red;
+    int head_fans;
+    int water_pump;
+    int peltier;
+    // indexed by HEAD, ARMPITS, CROTCH and WATER
+    bool temperature_ok[WATER + 1];
+    double temperature[WATER + 1];
+    bool flow_ok;
+    int flow;
+    bool heartrate_ok;
+    int heartrate;
+    // indexed by battery id
+    int charge[PHONE_BATTERY + 1];
+    char battery_warning[PHONE_BATTERY + 1];
+    char head_warning;
+    char body_warning;
+    char water_warning;
+    char flow_warning;
+};
+
+// last value sent to the phone per key, as json text
+struct sent_value {
+    const char *name;
+    char *json;
+};
+
 static char* sound_buffer = NULL;
 
-static void get_warnings(json_value *object)
+static int64_t sequence = 0;
+
+// delta mode is switched by the phone's configuration message, keyframes can also be asked for
+static pthread_mutex_t delta_mutex = PTHREAD_MUTEX_INITIALIZER;
+static bool delta_enabled = false;
+static bool keyframe_requested = false;
+static int messages_since_keyframe = 0;
+static struct sent_value sent_values[MAX_SENT_VALUES];
+static int sent_value_count = 0;
+
+// pending time sync request from the phone, answered in the next status message
+static pthread_mutex_t time_sync_mutex = PTHREAD_MUTEX_INITIALIZER;
+static bool time_sync_pending = false;
+static int64_t time_sync_t0 = 0;
+static int64_t time_sync_t1 = 0;
+
+// the phone offers a protocol when it connects, the answer goes out with the next status message
+static pthread_mutex_t protocol_mutex = PTHREAD_MUTEX_INITIALIZER;
+static bool protocol_reply_pending = false;
+
+int64_t serializer_time_millis(void)
+{
+    struct timespec now;
+    clock_gettime(CLOCK_REALTIME, &now);
+    return (int64_t) now.tv_sec * 1000 + now.tv_nsec / 1000000;
+}
+
+void serializer_time_sync(int64_t t0)
+{
+    int64_t t1 = serializer_time_millis();
+    pthread_mutex_lock(&time_sync_mutex);
+    time_sync_t0 = t0;
+    time_sync_t1 = t1;
+    time_sync_pending = true;
+    pthread_mutex_unlock(&time_sync_mutex);
+}
+
+void serializer_set_delta(bool enabled)
+{
+    pthread_mutex_lock(&delta_mutex);
+    delta_enabled = enabled;
+    // a phone that just switched on has no baseline yet
+    keyframe_requested = true;
+    pthread_mutex_unlock(&delta_mutex);
+}
+
+void serializer_android_connected(void)
+{
+    // a new phone starts on full messages until its own configuration asks for deltas
+    pthread_mutex_lock(&delta_mutex);
+    delta_enabled = false;
+    keyframe_requested = false;
+    messages_since_keyframe = 0;
+    pthread_mutex_unlock(&delta_mutex);
+
+    // replies meant for the previous connection
+    pthread_mutex_lock(&time_sync_mutex);
+    time_sync_pending = false;
+    pthread_mutex_unlock(&time_sync_mutex);
+    pthread_mutex_lock(&protocol_mutex);
+    protocol_reply_pending = false;
+    pthread_mutex_unlock(&protocol_mutex);
+}
+
+void serializer_request_keyframe(void)
+{
+    pthread_mutex_lock(&delta_mutex);
+    keyframe_requested = true;
+    pthread_mutex_unlock(&delta_mutex);
+}
+
+static enum message_kind next_android_kind(void)
+{
+    enum message_kind kind;
+    pthread_mutex_lock(&delta_mutex);
+    if (!delta_enabled) {
+        kind = FULL_MESSAGE;
+    }
+    else if (keyframe_requested || messages_since_keyframe >= KEYFRAME_INTERVAL - 1) {
+        kind = KEYFRAME_MESSAGE;
+        keyframe_requested = false;
+        messages_since_keyframe = 0;
+    }
+    else {
+        kind = DELTA_MESSAGE;
+        messages_since_keyframe++;
+    }
+    pthread_mutex_unlock(&delta_mutex);
+    return kind;
+}
+
+static struct sent_value *find_sent_value(const char *name)
+{
+    for (int i = 0; i < sent_value_count; i++) {
+        if (strcmp(sent_values[i].name, name) == 0) {
+            return &sent_values[i];
+        }
+    }
+    if (sent_value_count == MAX_SENT_VALUES) {
+        return NULL;
+    }
+    sent_values[sent_value_count].name = name;
+    sent_values[sent_value_count].json = NULL;
+    return &sent_values[sent_value_count++];
+}
+
+// pushes a status value, a delta message leaves it out if the phone already has it
+static void push_value(json_value *object, enum message_kind kind, const char *name, json_value *value)
+{
+    if (kind == KEYFRAME_MESSAGE || kind == DELTA_MESSAGE) {
+        char *json = malloc(json_measure(value));
+        json_serialize(json, value);
+        struct sent_value *sent = find_sent_value(name);
+        if (sent == NULL) {
+            free(json);
+        }
+        else if (kind == DELTA_MESSAGE && sent->json != NULL && strcmp(sent->json, json) == 0) {
+            free(json);
+            json_builder_free(value);
+            return;
+        }
+        else {
+            free(sent->json);
+            sent->json = json;
+        }
+    }
+    json_object_push(object, name, value);
+}
+
+static void get_time_sync(json_value *object)
+{
+    pthread_mutex_lock(&time_sync_mutex);
+    if (time_sync_pending) {
+        json_value *reply = json_object_new(0);
+        json_object_push(reply, "t0", json_integer_new(time_sync_t0));
+        json_object_push(reply, "t1", json_integer_new(time_sync_t1));
+        json_object_push(reply, "t2", json_integer_new(serializer_time_millis()));
+        json_object_push(object, "time sync", reply);
+        time_sync_pending = false;
+    }
+    pthread_mutex_unlock(&time_sync_mutex);
+}
+
+void serializer_answer_protocol(void)
+{
+    pthread_mutex_lock(&protocol_mutex);
+    protocol_reply_pending = true;
+    pthread_mutex_unlock(&protocol_mutex);
+}
+
+static void get_configuration_reply(json_value *object)
+{
+    pthread_mutex_lock(&protocol_mutex);
+    if (protocol_reply_pending) {
+        json_value *reply = json_object_new(0);
+        json_object_push(reply, "protocol", json_string_new(PROTOCOL));
+        json_object_push(object, "configuration", reply);
+        protocol_reply_pending = false;
+    }
+    pthread_mutex_unlock(&protocol_mutex);
+}
+
+static void get_warnings(json_value *object, const struct status *status)
 {
     json_value *warnings = json_object_new(0);
     
-    char headtempwarning = automation_getHeadTempWarning();
-    switch (headtempwarning) {
+    switch (status->head_warning) {
         case CRITICAL_HIGH_TEMP_WARNING :
             json_object_push(warnings, "critical high head temperature", 
                 json_string_new("HEAD TEMPERATURE CRITICALLY HIGH")); 
@@ -52,8 +263,7 @@ static void get_warnings(json_value *object)
            logger_log("ERROR: HEAD TEMPERATURE WARNING UNDEFINED");
     } 
 
-    char bodytempwarning = automation_getBodyTempWarning();
-    switch (bodytempwarning) {
+    switch (status->body_warning) {
         case CRITICAL_HIGH_TEMP_WARNING :
             json_object_push(warnings, "critical high body temperature", 
                 json_string_new("BODY TEMPERATURE CRITICALLY HIGH")); 
@@ -76,8 +286,7 @@ static void get_warnings(json_value *object)
            logger_log("ERROR: BODY TEMPERATURE WARNING UNDEFINED");
     } 
 
-    char watertempwarning = automation_getWaterTempWarning();
-    switch (watertempwarning) {
+    switch (status->water_warning) {
         case HIGH_TEMP_WARNING :
             json_object_push(warnings, "high water temperature", 
                 json_string_new("WATER TEMPERATURE HIGH")); 
@@ -92,8 +301,7 @@ static void get_warnings(json_value *object)
             logger_log("ERROR: WATER TEMPERATURE WARNING UNDEFINED");
     }
 
-    char flowwarning = automation_getWaterFlowWarning();
-    switch (flowwarning) {
+    switch (status->flow_warning) {
         case LOW_FLOW :
             json_object_push(warnings, "low water flow", json_string_new("LOW WATER FLOW, POSSIBLE LEAK"));
             break;
@@ -103,8 +311,7 @@ static void get_warnings(json_value *object)
             logger_log("ERROR: WATER FLOW WARNING UNDEFINED");
     } 
 
-    char turnigy_8AH_warning = automation_getBatteryWarning(TURNIGY_8_AH);
-    switch (turnigy_8AH_warning) {
+    switch (status->battery_warning[TURNIGY_8_AH]) {
         case LOW_SOC:
             json_object_push(warnings, "low 8AH battery warning", json_string_new("TURNIGY 8 AH LOW BATTERY"));
             break;
@@ -114,8 +321,7 @@ static void get_warnings(json_value *object)
             logger_log("ERROR: TURNIGY 8AH BATTERY WARNING UNDEFINED");
     }
 
-    char turnigy_2AH_warning = automation_getBatteryWarning(TURNIGY_2_AH);
-    switch (turnigy_2AH_warning) {
+    switch (status->battery_warning[TURNIGY_2_AH]) {
         case LOW_SOC:
             json_object_push(warnings, "low 2AH battery warning", json_string_new("TURNIGY 2 AH LOW BATTERY"));
             break;
@@ -125,8 +331,7 @@ static void get_warnings(json_value *object)
             logger_log("ERROR: TURNIGY 2AH BATTERY WARNING UNDEFINED");
     }
 
-    char glass_battery_warning = automation_getBatteryWarning(GLASS_BATTERY);
-    switch (glass_battery_warning) {
+    switch (status->battery_warning[GLASS_BATTERY]) {
         case LOW_SOC:
             json_object_push(warnings, "low hud battery warning", json_string_new("GOOGLE GLASS LOW BATTERY"));
             break;
@@ -136,8 +341,7 @@ static void get_warnings(json_value *object)
             logger_log("ERROR: GLASS BATTERY WARNING UNDEFINED");
     }
 
-    char phone_battery_warning = automation_getBatteryWarning(PHONE_BATTERY);
-    switch (phone_battery_warning) {
+    switch (status->battery_warning[PHONE_BATTERY]) {
         case LOW_SOC:
             json_object_push(warnings, "low phone battery warning", json_string_new("PHONE LOW BATTERY"));
             break;
@@ -151,161 +355,164 @@ static void get_warnings(json_value *object)
 
 
 
-static void serializer_buildjson(json_value *object)
+static int read_relay(unsigned int relay, const char *name)
+{
+    int value;
+    if (halosuit_relay_value(relay, &value) != 0) {
+        char error[64];
+        snprintf(error, sizeof(error), "ERROR: %s READ VALUE FAILURE\n", name);
+        logger_log(error);
+        return -1;
+    }
+    return value;
+}
+
+static void read_temperature(struct status *status, unsigned int location, const char *name)
+{
+    status->temperature_ok[location] = halosuit_temperature_value(location, &status->temperature[location]) == 0;
+    if (!status->temperature_ok[location]) {
+        char error[64];
+        snprintf(error, sizeof(error), "ERROR: %s TEMPERATURE READ FAILURE\n", name);
+        logger_log(error);
+    }
+}
+
+// reads every sensor, relay and warning once
+static void sample(struct status *status)
 {
-    int value = 0;
+    status->time = serializer_time_millis();
+
     // lights
-    if (halosuit_relay_value(LIGHTS, &value) != 0) {
-	    logger_log("ERROR: LIGHTS READ VALUE FAILURE\n");
-    }	
-    if (value == 1) {
-	    json_object_push(object, "lights", json_string_new(ON));
+    if (read_relay(LIGHTS, "LIGHTS") == 1) {
+        status->lights = ON;
     }
     // auto lights
-    else if (halosuit_relay_value(LIGHTS_AUTO, &value) != 0) {
-	    logger_log("ERROR: LIGHTS_AUTO READ VALUE FAILURE\n");
-    }	
-    else if (value == 1) {
-	    json_object_push(object, "lights", json_string_new(AUTO));
+    else if (read_relay(LIGHTS_AUTO, "LIGHTS_AUTO") == 1) {
+        status->lights = AUTO;
     }
     else {
-	    json_object_push(object, "lights", json_string_new(OFF));
-    }
-    
-    
-    // head lights white
-    if (halosuit_relay_value(HEADLIGHTS_WHITE, &value) != 0) {
-	    logger_log("ERROR: HEADLIGHTS_WHITE READ VALUE FAILURE\n");
-    }	
-    if (value == 1) {
-	    json_object_push(object, "head lights white", json_string_new(ON));
-    }
-    else if (value == 0) {
-	    json_object_push(object, "head lights white", json_string_new(OFF));
+        status->lights = OFF;
     }
+    status->head_lights_white = read_relay(HEADLIGHTS_WHITE, "HEADLIGHTS_WHITE");
+    status->head_lights_red = read_relay(HEADLIGHTS_RED, "HEADLIGHTS RED");
+    status->head_fans = read_relay(HEAD_FANS, "HEAD_FANS");
+    status->water_pump = read_relay(WATER_PUMP, "WATER_PUMP");
+    status->peltier = read_relay(PELTIER, "PELTIER");
 
-    // head lights red
-    if (halosuit_relay_value(HEADLIGHTS_RED, &value) != 0) {
-	    logger_log("ERROR: HEADLIGHTS RED READ VALUE FAILURE\n");
-    }	
-    if (value == 1) {
-	    json_object_push(object, "head lights red", json_string_new(ON));
-    }
-    else if (value == 0) {
-	    json_object_push(object, "head lights red", json_string_new(OFF));
-    }
-    
-    // head fans
-    if (halosuit_relay_value(HEAD_FANS, &value) != 0) {
-	    logger_log("ERROR: HEAD_FANS READ VALUE FAILURE\n");
-    }	
-    if (value == 1) {
-	    json_object_push(object, "head fans", json_string_new(ON));
-    }
-    else if (value == 0) {
-	    json_object_push(object, "head fans", json_string_new(OFF));
+    // temperature readings
+    read_temperature(status, HEAD, "HEAD");
+    read_temperature(status, ARMPITS, "ARMPITS");
+    read_temperature(status, CROTCH, "CROTCH");
+    read_temperature(status, WATER, "WATER");
+
+    // water flow
+    status->flow_ok = halosuit_flowrate(&status->flow) == 0;
+    if (!status->flow_ok) {
+        logger_log("ERROR: FLOW RATE READ FAILURE\n");
     }
-    
-    // water pump
-    if (halosuit_relay_value(WATER_PUMP, &value) != 0) {
-	    logger_log("ERROR: WATER_PUMP READ VALUE FAILURE\n");
-    }	
-    if (value == 1) {
-	    json_object_push(object, "water pump", json_string_new(ON));
+
+    // heartrate
+    status->heartrate_ok = halosuit_heartrate(&status->heartrate) == 0;
+    if (!status->heartrate_ok) {
+        logger_log("ERROR: HEART RATE READ FAILURE\n");
     }
-    else if (value == 0) {
-	    json_object_push(object, "water pump", json_string_new(OFF));
+
+    // state of charge
+    for (int battery = TURNIGY_8_AH; battery <= PHONE_BATTERY; battery++) {
+        status->charge[battery] = soc_getcharge(battery);
+        status->battery_warning[battery] = automation_getBatteryWarning(battery);
     }
 
-    // peltier
-    if (halosuit_relay_value(PELTIER, &value) != 0) {
-	    logger_log("ERROR: PELTIER READ VALUE FAILURE\n");
-    }	
+    status->head_warning = automation_getHeadTempWarning();
+    status->body_warning = automation_getBodyTempWarning();
+    status->water_warning = automation_getWaterTempWarning();
+    status->flow_warning = automation_getWaterFlowWarning();
+}
+
+static void push_relay(json_value *object, enum message_kind kind, const char *name, int value)
+{
     if (value == 1) {
-	    json_object_push(object, "peltier", json_string_new(ON));
+        push_value(object, kind, name, json_string_new(ON));
     }
     else if (value == 0) {
-	    json_object_push(object, "peltier", json_string_new(OFF));
-    }
-
-    // temperature readings 
-    double temperature = 0;
-    
-    // head temperature
-    if (halosuit_temperature_value(HEAD, &temperature) != 0) {
-	    logger_log("ERROR: HEAD TEMPERATURE READ FAILURE\n");
-    }
-    else {
-        json_object_push(object, "head temperature", json_double_new(temperature)); 
+        push_value(object, kind, name, json_string_new(OFF));
     }
+}
 
-    // armpits temperature 
-    if (halosuit_temperature_value(ARMPITS, &temperature) != 0) {
-	    logger_log("ERROR: ARMPITS TEMPERATURE READ FAILURE\n");
-    }
-    else {
-        json_object_push(object, "armpits temperature", json_double_new(temperature));
+static void push_temperature(json_value *object, enum message_kind kind, const char *name,
+    const struct status *status, unsigned int location)
+{
+    if (status->temperature_ok[location]) {
+        push_value(object, kind, name, json_double_new(status->temperature[location]));
     }
+}
 
-    // crotch temperature 
-    if (halosuit_temperature_value(CROTCH, &temperature) != 0) {
-	    logger_log("ERROR: CROTCH TEMPERATURE READ FAILURE\n");
-    }
-    else {
-        json_object_push(object, "crotch temperature", json_double_new(temperature));
+static void serializer_buildjson(json_value *object, enum message_kind kind, const struct status *status)
+{
+    // frame counter and timestamp so the phone can spot dropped frames and measure age
+    json_object_push(object, "seq", json_integer_new(kind == GLASS_MESSAGE ? sequence : sequence++));
+    json_object_push(object, "time", json_integer_new(status->time));
+    if (kind == DELTA_MESSAGE) {
+        json_object_push(object, "delta", json_boolean_new(1));
     }
 
-    // water temperature 
-    if (halosuit_temperature_value(WATER, &temperature) != 0) {
-	    logger_log("ERROR: WATER TEMPERATURE READ FAILURE\n");
-    }
-    else {
-        json_object_push(object, "water temperature", json_double_new(temperature));
-    }
+    push_value(object, kind, "lights", json_string_new(status->lights));
+    push_relay(object, kind, "head lights white", status->head_lights_white);
+    push_relay(object, kind, "head lights red", status->head_lights_red);
+    push_relay(object, kind, "head fans", status->head_fans);
+    push_relay(object, kind, "water pump", status->water_pump);
+    push_relay(object, kind, "peltier", status->peltier);
 
-    // water flow
-    int flow;
-    if (halosuit_flowrate(&flow)) {
-        logger_log("ERROR: FLOW RATE READ FAILURE\n");
-    }
-    else {
-        json_object_push(object, "flow rate", json_integer_new(flow));
-    }
+    push_temperature(object, kind, "head temperature", status, HEAD);
+    push_temperature(object, kind, "armpits temperature", status, ARMPITS);
+    push_temperature(object, kind, "crotch temperature", status, CROTCH);
+    push_temperature(object, kind, "water temperature", status, WATER);
 
-    // heartrate
-    int heartrate;
-    if (halosuit_heartrate(&heartrate)) {
-        logger_log("ERROR: HEART RATE READ FAILURE\n");
+    if (status->flow_ok) {
+        push_value(object, kind, "flow rate", json_integer_new(status->flow));
     }
-    else {
-        json_object_push(object, "heart rate", json_integer_new(heartrate));
+    if (status->heartrate_ok) {
+        push_value(object, kind, "heart rate", json_integer_new(status->heartrate));
     }
 
-    json_object_push(object, "play sound", json_string_new(sound_buffer));
+    push_value(object, kind, "play sound", json_string_new(sound_buffer));
 
-    
     // state of charge
-    json_object_push(object, "8 AH battery", json_integer_new(soc_getcharge(TURNIGY_8_AH)));
-    json_object_push(object, "2 AH battery", json_integer_new(soc_getcharge(TURNIGY_2_AH)));
-    json_object_push(object, "hud battery", json_integer_new(soc_getcharge(GLASS_BATTERY)));
-    json_object_push(object, "phone battery", json_integer_new(soc_getcharge(PHONE_BATTERY)));
+    push_value(object, kind, "8 AH battery", json_integer_new(status->charge[TURNIGY_8_AH]));
+    push_value(object, kind, "2 AH battery", json_integer_new(status->charge[TURNIGY_2_AH]));
+    push_value(object, kind, "hud battery", json_integer_new(status->charge[GLASS_BATTERY]));
+    push_value(object, kind, "phone battery", json_integer_new(status->charge[PHONE_BATTERY]));
 
-    // Warnings 
-    get_warnings(object);
-    
+    // Warnings, in deltas too since the phone only clears a warning when it hears it has gone
+    get_warnings(object, status);
+
+    // replies to the phone, the time sync last so t2 is as close to sending as possible
+    if (kind != GLASS_MESSAGE) {
+        get_configuration_reply(object);
+        get_time_sync(object);
+    }
 } 
-void serializer_serialize(char *buf)
-{ 
+
+static void serialize(char *buf, enum message_kind kind, const struct status *status)
+{
     json_value *object = json_object_new(0);
 
     // push suit status values into object
-    serializer_buildjson(object);
+    serializer_buildjson(object, kind, status);
 
     json_serialize(buf, object);
    // logger_log(buf);
     json_builder_free(object);
 }
 
+void serializer_serialize(char *glass_buf, char *android_buf)
+{ 
+    struct status status;
+    sample(&status);
+    serialize(glass_buf, GLASS_MESSAGE, &status);
+    serialize(android_buf, next_android_kind(), &status);
+}
+
 void serializer_save_sound(char *buf)
 {
     if (sound_buffer == NULL) {
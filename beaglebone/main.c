@@ -47,7 +47,9 @@ int main(int argc, char* argv[])
     logger_startup();
 
     char buf[1024];
+    char android_buf[1024];
     config_init("/root/beaglebone.conf");
+    beagleblue_on_android_connect(&serializer_android_connected);
     beagleblue_init(&parser_parse);    
     halosuit_init();  
     automation_init();
@@ -57,8 +59,8 @@ int main(int argc, char* argv[])
     // if loop takes longer than 45 secs watchdog will reboot the system
     while (1) {	
 	    // sends status information to android phone and google glass
-        serializer_serialize(buf);
-        beagleblue_android_send(buf);
+        serializer_serialize(buf, android_buf);
+        beagleblue_android_send(android_buf);
         beagleblue_glass_send(buf);
 
         if (!watchdog_disabled) {
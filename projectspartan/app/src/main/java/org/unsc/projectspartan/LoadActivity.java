@@ -3,20 +3,31 @@ package org.unsc.projectspartan;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Bundle;
-import android.os.Handler;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.Window;
 
-import java.io.File;
-import java.util.Set;
 
 
 public class LoadActivity extends Activity {
     private BluetoothAdapter mAdapter;
-    private Set<BluetoothDevice> mPairedDevices;
+    private boolean mWaitingForAdapter;
+
+    // bonded devices are only listed once the adapter is on
+    private final BroadcastReceiver mStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR) == BluetoothAdapter.STATE_ON) {
+                stopWaiting();
+                openSuit();
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -25,25 +36,45 @@ public class LoadActivity extends Activity {
 
         mAdapter = BluetoothAdapter.getDefaultAdapter();
         mAdapter.enable();
-        mPairedDevices = mAdapter.getBondedDevices();
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        Handler handler = new Handler();
-        handler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                for (BluetoothDevice mDevice : mPairedDevices) {
-                    if (mDevice.getName().contains("beagle")) {
-                        Intent intent = new Intent(getApplicationContext(), MainActivity.class);
-                        intent.putExtra(BluetoothDevice.EXTRA_DEVICE, mDevice);
-                        startActivity(intent);
-                    }
-                }
+        // registered before the check so a STATE_ON in between isn't lost
+        registerReceiver(mStateReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+        mWaitingForAdapter = true;
+        // go straight to the suit when bluetooth is already on, instead of a fixed wait
+        if (mAdapter.isEnabled()) {
+            stopWaiting();
+            openSuit();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        stopWaiting();
+        super.onStop();
+    }
+
+    private void stopWaiting() {
+        if (mWaitingForAdapter) {
+            unregisterReceiver(mStateReceiver);
+            mWaitingForAdapter = false;
+        }
+    }
+
+    // opens the first bonded beaglebone, once
+    private void openSuit() {
+        for (BluetoothDevice device : mAdapter.getBondedDevices()) {
+            String name = device.getName();
+            if (name != null && name.contains("beagle")) {
+                Intent intent = new Intent(getApplicationContext(), MainActivity.class);
+                intent.putExtra(BluetoothDevice.EXTRA_DEVICE, device);
+                startActivity(intent);
+                return;
             }
-        }, 1000);
+        }
     }
 
     @Override